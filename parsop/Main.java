@@ -1,14 +1,57 @@
 package parsop;
 
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
+import parsop.flow.Batch;
+import parsop.fuzz.Differential;
+import parsop.fuzz.Soak;
+import parsop.grammar.FastPathBenchmark;
+import parsop.jfr.JfrSummary;
+import parsop.parser.ASTDiff;
+import parsop.parser.OffHeapBenchmark;
 import parsop.parser.ParseException;
 import parsop.parser.Parser;
+import parsop.plan.PlanBenchmark;
+import parsop.server.LoadGenerator;
+import parsop.server.ParseServer;
 
 public class Main {
 
-	public static void main(String[] args) throws ParseException {
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("server")) {
+			ParseServer.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("batch")) {
+			Batch.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("jfr")) {
+			JfrSummary.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("fuzz")) {
+			Differential.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("soak")) {
+			Soak.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("bench")) {
+			bench(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("diff")) {
+			ASTDiff.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
+		if (args.length > 0 && args[0].equals("load")) {
+			LoadGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		Parser parser = Parser.fromCommandLineArguments(args);
 		Scanner stdin = new Scanner(System.in);
 		System.out.println("Enter an expression to parse:");
@@ -23,4 +66,22 @@ public class Main {
 		System.out.println("Goodbye!");
 		stdin.close();
 	}
+
+	/**
+	 * Runs the benchmark named by the first argument, which lives next to the
+	 * code it measures
+	 */
+	private static void bench(String[] args) throws Exception {
+		String[] rest = args.length > 0 ? Arrays.copyOfRange(args, 1, args.length) : args;
+		if (args.length > 0 && args[0].equals("plan"))
+			PlanBenchmark.main(rest);
+		else if (args.length > 0 && args[0].equals("offheap"))
+			OffHeapBenchmark.main(rest);
+		else if (args.length > 0 && args[0].equals("fastpath"))
+			FastPathBenchmark.main(rest);
+		else {
+			System.err.println("Usage: bench plan|offheap|fastpath arguments...");
+			System.exit(2);
+		}
+	}
 }
@@ -0,0 +1,352 @@
+package parsop.flow;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+import javax.management.JMException;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+import parsop.grammar.ParseEngine;
+import parsop.grammar.SymbolTable;
+import parsop.parser.ASTPrinter;
+import parsop.parser.BinaryASTWriter;
+import parsop.metrics.Histogram;
+import parsop.metrics.MetricsSink;
+import parsop.metrics.ParseMetrics;
+import parsop.parser.Parser;
+
+/**
+ * Parses every line of a file, or of stdin, on all cores, and writes one
+ * result per line to stdout, in the order of the input. A summary goes to
+ * stderr at the end.
+ *
+ * The formats are:
+ *
+ *    text   : the tree in braces, or "error: " and the message
+ *    json   : {"line":1,"ok":true,"tree":"..."} or
+ *             {"line":1,"ok":false,"error":"...","report":"..."}
+ *    binary : frames as in server.Protocol responses: a 4 byte length, a
+ *             status byte (0 for a tree, 1 for an error), then the tree as
+ *             written by BinaryASTWriter, or the error report in UTF-8
+ *
+ * A blank line is not skipped but reported as an error, like any other line
+ * which is not an expression, so each result stays on the line of its input.
+ *
+ * Lines are read by the calling thread and fed to a ParseProcessor, whose
+ * bounded buffers keep a slow output from piling up parsed trees. The workers
+ * share one SymbolTable, so every occurrence of a name in the batch has the
+ * same id and string.
+ *
+ * @author aozdemir
+ *
+ */
+public class Batch {
+
+	public enum Format {
+		Text, Json, Binary
+	}
+
+	private static final int BUFFER = 1 << 16;
+
+	private Grammar grammar;
+	private ParseEngine engine;
+	private Format format;
+	private int parallelism;
+	private MetricsSink metrics;
+	private SymbolTable symbols;
+
+	public Batch(Grammar grammar, ParseEngine engine, Format format, int parallelism) {
+		this.grammar = grammar;
+		this.engine = engine;
+		this.format = format;
+		this.parallelism = parallelism;
+		this.symbols = new SymbolTable();
+	}
+
+	/**
+	 * Measures every parse of later runs into the sink
+	 */
+	public void setMetrics(MetricsSink metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Counts and parse times of one run. The times go in a Histogram, so the
+	 * summary takes the same memory however many lines there are, and its
+	 * percentiles are within about 3%.
+	 */
+	public static class Summary {
+		long lines;
+		long errors;
+		int names;
+		long elapsed;
+		Histogram latencies = new Histogram();
+
+		void add(ParseResult result) {
+			lines++;
+			latencies.record(result.nanos());
+			if (!result.isOK())
+				errors++;
+		}
+
+		public long percentile(double p) {
+			return latencies.percentile(p);
+		}
+
+		public String toString() {
+			double seconds = elapsed / 1e9;
+			return String.format("%d lines, %d errors in %.3f s: %.0f lines/s\n"
+					+ "parse us: p50 %.1f  p90 %.1f  p99 %.1f  max %.1f\n%d distinct names", lines,
+					errors, seconds, lines / seconds, percentile(50) / 1e3, percentile(90) / 1e3,
+					percentile(99) / 1e3, percentile(100) / 1e3, names);
+		}
+	}
+
+	/**
+	 * Parses every line of in and writes the results to out
+	 */
+	public Summary run(InputStream in, DataOutputStream out) throws IOException,
+			InterruptedException {
+		Summary summary = new Summary();
+		ExecutorService workers = Executors.newFixedThreadPool(parallelism, task -> {
+			Thread thread = new Thread(task, "batch-parse");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ParseProcessor processor = new ParseProcessor(() -> {
+			Parser parser = new Parser(() -> grammar, false);
+			parser.setEngine(engine);
+			parser.setMetrics(metrics);
+			parser.setSymbolTable(symbols);
+			return parser;
+		}, parallelism, ParseProcessor.DEFAULT_CAPACITY * parallelism, true, workers);
+		Output output = new Output(out, summary);
+		processor.subscribe(output);
+
+		long start = System.nanoTime();
+		try (SubmissionPublisher<String> publisher = new SubmissionPublisher<String>(ForkJoinPool
+				.commonPool(), BUFFER)) {
+			publisher.subscribe(processor);
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+					StandardCharsets.UTF_8), BUFFER);
+			String line;
+			while ((line = reader.readLine()) != null && output.failure == null)
+				publisher.submit(line);
+		}
+		output.end.await();
+		workers.shutdown();
+		out.flush();
+		summary.elapsed = System.nanoTime() - start;
+		summary.names = symbols.size();
+		if (output.failure != null)
+			throw new IOException("Batch failed", output.failure);
+		return summary;
+	}
+
+	/**
+	 * Writes the results as they arrive, which is in order
+	 */
+	private class Output implements Flow.Subscriber<ParseResult> {
+
+		DataOutputStream out;
+		Writer text;
+		BinaryASTWriter binary;
+		Summary summary;
+		Flow.Subscription subscription;
+		CountDownLatch end = new CountDownLatch(1);
+		volatile Throwable failure;
+		int outstanding;
+
+		Output(DataOutputStream out, Summary summary) {
+			this.out = out;
+			this.text = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+			this.binary = new BinaryASTWriter();
+			this.summary = summary;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			outstanding = BUFFER;
+			subscription.request(outstanding);
+		}
+
+		@Override
+		public void onNext(ParseResult result) {
+			summary.add(result);
+			try {
+				write(result);
+			} catch (IOException e) {
+				failure = e;
+				subscription.cancel();
+				end.countDown();
+				return;
+			}
+			if (--outstanding == BUFFER / 2) {
+				outstanding = BUFFER;
+				subscription.request(BUFFER / 2);
+			}
+		}
+
+		private void write(ParseResult result) throws IOException {
+			switch (format) {
+			case Text:
+				if (result.isOK())
+					ASTPrinter.printBraces(result.tree(), text);
+				else
+					text.append("error: ").append(result.error().getMessage());
+				text.append('\n');
+				break;
+			case Json:
+				text.append("{\"line\":").append(Long.toString(result.index() + 1));
+				if (result.isOK()) {
+					text.append(",\"ok\":true,\"tree\":");
+					quote(ASTPrinter.toBraces(result.tree()), text);
+				} else {
+					text.append(",\"ok\":false,\"error\":");
+					quote(result.error().getMessage(), text);
+					text.append(",\"report\":");
+					quote(result.error().report(), text);
+				}
+				text.append("}\n");
+				break;
+			case Binary:
+				byte[] body = result.isOK() ? binary.encode(result.tree()) : result.error()
+						.report().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(1 + body.length);
+				out.writeByte(result.isOK() ? 0 : 1);
+				out.write(body);
+				break;
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			failure = throwable;
+			end.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			try {
+				text.flush();
+			} catch (IOException e) {
+				failure = e;
+			}
+			end.countDown();
+		}
+	}
+
+	/**
+	 * Appends s as a JSON string
+	 */
+	static void quote(String s, Appendable out) throws IOException {
+		out.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.append("\\\"");
+				break;
+			case '\\':
+				out.append("\\\\");
+				break;
+			case '\n':
+				out.append("\\n");
+				break;
+			case '\r':
+				out.append("\\r");
+				break;
+			case '\t':
+				out.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					out.append(String.format("\\u%04x", (int) c));
+				else
+					out.append(c);
+			}
+		}
+		out.append('"');
+	}
+
+	/**
+	 * Usage: [-f text|json|binary] [-j threads] [-p] [-m] grammar [input_file]
+	 * 
+	 * -m measures the stages of every parse, prints them with the summary, and
+	 * shows them to JMX clients while the batch runs.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		Format format = Format.Text;
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		ParseEngine engine = null;
+		ParseMetrics metrics = null;
+		int i = 0;
+		try {
+			for (; i < args.length && args[i].startsWith("-"); i++)
+				if (args[i].equals("-f"))
+					format = Format.valueOf(Character.toUpperCase(args[++i].charAt(0))
+							+ args[i].substring(1).toLowerCase());
+				else if (args[i].equals("-j"))
+					parallelism = Integer.parseInt(args[++i]);
+				else if (args[i].equals("-p"))
+					engine = ParseEngine.Pratt;
+				else if (args[i].equals("-m"))
+					metrics = new ParseMetrics();
+				else
+					throw new IllegalArgumentException(args[i]);
+		} catch (RuntimeException e) {
+			i = args.length;
+		}
+		if (i >= args.length || parallelism < 1) {
+			System.err.println("Usage: batch [-f text|json|binary] [-j threads] [-p] [-m] "
+					+ "path_to_grammar_spec [input_file]");
+			System.exit(2);
+		}
+		Grammar grammar;
+		try {
+			grammar = Grammar.fromFile(args[i]);
+		} catch (GrammarException e) {
+			e.printStackTrace();
+			System.exit(1);
+			return;
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(FileDescriptor.out), BUFFER));
+		Batch batch = new Batch(grammar, engine, format, parallelism);
+		if (metrics != null)
+			try {
+				batch.setMetrics(metrics);
+				metrics.register("batch");
+			} catch (JMException e) {
+				e.printStackTrace();
+			}
+		Summary summary;
+		if (i + 1 < args.length)
+			try (InputStream in = new FileInputStream(args[i + 1])) {
+				summary = batch.run(in, out);
+			}
+		else
+			summary = batch.run(System.in, out);
+		System.err.println(summary);
+		if (metrics != null)
+			System.err.println(metrics.report());
+	}
+}
@@ -0,0 +1,335 @@
+package parsop.flow;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+
+/**
+ * A Flow.Processor which parses the expressions it subscribes to, and
+ * publishes a ParseResult for each of them to one subscriber.
+ *
+ * At most capacity expressions are requested from upstream beyond those
+ * already delivered downstream, so the buffers are bounded and a slow
+ * subscriber slows the publisher instead of filling memory. Up to parallelism
+ * expressions are parsed at once on the executor, each worker with its own
+ * Parser from the supplier, since Parsers are not thread-safe.
+ *
+ * If ordered, results are published in the order of their inputs, held in a
+ * window of capacity slots until their predecessors are done. Otherwise each
+ * result is published as soon as it is ready.
+ *
+ * Syntax errors are results like any other, and so is an expression which
+ * overflows the call stack of the Parser. An upstream error is passed on
+ * once the expressions received before it are published. Any other exception
+ * or error thrown by a Parser cancels upstream and is passed on at once.
+ *
+ * @author aozdemir
+ *
+ */
+public class ParseProcessor implements Flow.Processor<String, ParseResult> {
+
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private Supplier<Parser> parserFactory;
+	private int parallelism;
+	private int capacity;
+	private boolean ordered;
+	private Executor executor;
+
+	private Flow.Subscription upstream;
+	private volatile Flow.Subscriber<? super ParseResult> downstream;
+
+	/**
+	 * Expressions waiting for a worker
+	 */
+	private Queue<ParseResult> inputs = new ConcurrentLinkedQueue<ParseResult>();
+	/**
+	 * Parsers of workers which have stopped, for the next workers to start
+	 */
+	private Queue<Parser> idleParsers = new ConcurrentLinkedQueue<Parser>();
+	private AtomicInteger workers = new AtomicInteger();
+
+	/**
+	 * Finished results when unordered
+	 */
+	private Queue<ParseResult> results;
+	/**
+	 * Finished results when ordered, in slot index % capacity
+	 */
+	private AtomicReferenceArray<ParseResult> window;
+
+	/**
+	 * Written only by onNext
+	 */
+	private volatile long received;
+	/**
+	 * Written only by the drain loop
+	 */
+	private volatile long delivered;
+	private AtomicLong demand = new AtomicLong();
+	/**
+	 * Serializes the drain loop: non-zero while some thread is in it
+	 */
+	private AtomicInteger drains = new AtomicInteger();
+
+	private volatile boolean done;
+	private volatile Throwable failure;
+	private volatile boolean cancelled;
+	/**
+	 * Set on errors which drop the results in flight
+	 */
+	private volatile boolean aborted;
+	private boolean terminated;
+
+	/**
+	 * Parses on the common ForkJoinPool
+	 */
+	public ParseProcessor(Supplier<Parser> parserFactory, int parallelism, int capacity,
+			boolean ordered) {
+		this(parserFactory, parallelism, capacity, ordered, ForkJoinPool.commonPool());
+	}
+
+	public ParseProcessor(Supplier<Parser> parserFactory, int parallelism, int capacity,
+			boolean ordered, Executor executor) {
+		if (parallelism < 1 || capacity < 1)
+			throw new IllegalArgumentException("Parallelism and capacity must be positive");
+		this.parserFactory = parserFactory;
+		this.parallelism = parallelism;
+		this.capacity = capacity;
+		this.ordered = ordered;
+		this.executor = executor;
+		if (ordered)
+			this.window = new AtomicReferenceArray<ParseResult>(capacity);
+		else
+			this.results = new ConcurrentLinkedQueue<ParseResult>();
+	}
+
+	// Subscriber side
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (upstream != null || cancelled) {
+			subscription.cancel();
+			return;
+		}
+		upstream = subscription;
+		subscription.request(capacity);
+	}
+
+	@Override
+	public void onNext(String expression) {
+		if (expression == null)
+			throw new NullPointerException();
+		if (done || cancelled)
+			return;
+		if (received - delivered >= capacity) {
+			abort(new IllegalStateException("Received more expressions than requested"));
+			return;
+		}
+		inputs.offer(new ParseResult(received, expression, null, null));
+		received++;
+		startWorker();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		if (done)
+			return;
+		failure = throwable;
+		done = true;
+		drain();
+	}
+
+	@Override
+	public void onComplete() {
+		done = true;
+		drain();
+	}
+
+	// Publisher side
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super ParseResult> subscriber) {
+		synchronized (this) {
+			if (downstream == null) {
+				downstream = subscriber;
+				subscriber.onSubscribe(new Subscription());
+				drain();
+				return;
+			}
+		}
+		subscriber.onSubscribe(new Flow.Subscription() {
+			public void request(long n) {
+			}
+
+			public void cancel() {
+			}
+		});
+		subscriber.onError(new IllegalStateException("ParseProcessor has a subscriber already"));
+	}
+
+	private class Subscription implements Flow.Subscription {
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				abort(new IllegalArgumentException("Non-positive request " + n));
+				return;
+			}
+			long current, next;
+			do {
+				current = demand.get();
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!demand.compareAndSet(current, next));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			Flow.Subscription subscription = upstream;
+			if (subscription != null)
+				subscription.cancel();
+			inputs.clear();
+		}
+	}
+
+	// Workers
+
+	/**
+	 * Starts a worker if there is input waiting and fewer than parallelism
+	 * workers are running
+	 */
+	private void startWorker() {
+		while (true) {
+			int running = workers.get();
+			if (running >= parallelism || inputs.isEmpty())
+				return;
+			if (workers.compareAndSet(running, running + 1)) {
+				executor.execute(this::work);
+				return;
+			}
+		}
+	}
+
+	private void work() {
+		Parser parser = idleParsers.poll();
+		try {
+			if (parser == null) {
+				parser = parserFactory.get();
+				parser.setPrintErrors(false);
+			}
+			ParseResult result;
+			while (!cancelled && (result = inputs.poll()) != null) {
+				long start = System.nanoTime();
+				try {
+					result.tree = parser.parse(result.input);
+				} catch (ParseException e) {
+					result.error = e;
+				} catch (StackOverflowError e) {
+					result.error = new ParseException("Syntax Error: expression nested too deeply",
+							e);
+				}
+				result.nanos = System.nanoTime() - start;
+				finish(result);
+			}
+		} catch (Throwable e) {
+			// Caught whatever it is, since no one else would complete the batch
+			abort(e);
+		} finally {
+			if (parser != null)
+				idleParsers.offer(parser);
+			workers.decrementAndGet();
+		}
+		// Input may have arrived while this worker was stopping
+		startWorker();
+	}
+
+	private void finish(ParseResult result) {
+		if (ordered)
+			window.set((int) (result.index % capacity), result);
+		else
+			results.offer(result);
+		drain();
+	}
+
+	/**
+	 * Cancels upstream, drops the work in flight, and passes on the error
+	 */
+	private void abort(Throwable throwable) {
+		aborted = true;
+		Flow.Subscription subscription = upstream;
+		if (subscription != null)
+			subscription.cancel();
+		inputs.clear();
+		failure = throwable;
+		done = true;
+		drain();
+	}
+
+	// Delivery
+
+	private ParseResult poll(long next) {
+		if (!ordered)
+			return results.poll();
+		int slot = (int) (next % capacity);
+		ParseResult result = window.get(slot);
+		if (result == null || result.index != next)
+			return null;
+		window.set(slot, null);
+		return result;
+	}
+
+	/**
+	 * Publishes as many finished results as the subscriber has asked for,
+	 * replenishes upstream by as many, and signals the end once everything
+	 * received has been published. Only one thread runs the loop at a time;
+	 * calls made meanwhile make it go around again.
+	 */
+	private void drain() {
+		if (drains.getAndIncrement() != 0)
+			return;
+		int missed = 1;
+		do {
+			Flow.Subscriber<? super ParseResult> subscriber = downstream;
+			if (subscriber != null && !terminated) {
+				long requested = demand.get();
+				long emitted = 0;
+				while (emitted != requested && !cancelled) {
+					ParseResult result = poll(delivered + emitted);
+					if (result == null)
+						break;
+					subscriber.onNext(result);
+					emitted++;
+				}
+				if (emitted > 0) {
+					delivered += emitted;
+					if (requested != Long.MAX_VALUE)
+						demand.addAndGet(-emitted);
+					if (!done && !cancelled)
+						upstream.request(emitted);
+				}
+				boolean finished = done;
+				if (cancelled) {
+					terminated = true;
+				} else if (finished && (aborted || delivered == received)) {
+					terminated = true;
+					if (failure != null)
+						subscriber.onError(failure);
+					else
+						subscriber.onComplete();
+				}
+			}
+			missed = drains.addAndGet(-missed);
+		} while (missed != 0);
+	}
+}
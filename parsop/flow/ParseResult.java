@@ -0,0 +1,67 @@
+package parsop.flow;
+
+import parsop.parser.AST;
+import parsop.parser.ParseException;
+
+/**
+ * The outcome of parsing one expression in a stream: either a tree or the
+ * syntax error which stopped the parse.
+ *
+ * @author aozdemir
+ *
+ */
+public class ParseResult {
+
+	long index;
+	String input;
+	AST tree;
+	ParseException error;
+	long nanos;
+
+	ParseResult(long index, String input, AST tree, ParseException error) {
+		this.index = index;
+		this.input = input;
+		this.tree = tree;
+		this.error = error;
+	}
+
+	/**
+	 * @return The position of the input in the stream, counting from 0
+	 */
+	public long index() {
+		return index;
+	}
+
+	public String input() {
+		return input;
+	}
+
+	public boolean isOK() {
+		return error == null;
+	}
+
+	/**
+	 * @return The tree, or null if the parse failed
+	 */
+	public AST tree() {
+		return tree;
+	}
+
+	/**
+	 * @return The syntax error, or null if the parse succeeded
+	 */
+	public ParseException error() {
+		return error;
+	}
+
+	/**
+	 * @return The time the parse took, in nanoseconds
+	 */
+	public long nanos() {
+		return nanos;
+	}
+
+	public String toString() {
+		return isOK() ? tree.toString() : error.report();
+	}
+}
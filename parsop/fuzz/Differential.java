@@ -0,0 +1,305 @@
+package parsop.fuzz;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+import parsop.grammar.ParseEngine;
+import parsop.grammar.tokens.CloseGroup;
+import parsop.grammar.tokens.Identifier;
+import parsop.grammar.tokens.OpenGroup;
+import parsop.parser.AST;
+import parsop.parser.ASTArena;
+import parsop.parser.ASTPrinter;
+import parsop.parser.BinaryASTReader;
+import parsop.parser.BinaryASTWriter;
+import parsop.parser.ParseCheckpoint;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+import parsop.rewrite.Rewriter;
+import parsop.rewrite.Rules;
+import parsop.util.Pair;
+
+/**
+ * Checks properties of the parser on generated expressions:
+ *
+ *    - both engines produce the same tree, or the same error report
+ *    - so does a parser with the FastPaths of the grammar turned off
+ *    - a parse handing out ParseCheckpoints produces it too, and so does
+ *      resuming from each of them, in turn as they were handed out and
+ *      written out and read back
+ *    - every valid expression parses
+ *    - a tree printed in infix notation parses back to the same tree, up
+ *      to groups, since the printer may add parentheses the input did not
+ *      have
+ *    - a tree written by BinaryASTWriter reads back as the same tree, with
+ *      the same token classes on its identifiers
+ *    - a tree built in an ASTArena reads back as the same tree, with the
+ *      same token classes and token indices
+ *
+ * After the random expressions, each kind of operation of the grammar is
+ * checked nested NESTING times, which must not overflow the call stack of
+ * either engine or of the checks.
+ *
+ * An exception other than a ParseException, or a StackOverflowError, thrown
+ * anywhere in a check is a failure, even if both engines throw it alike.
+ * Failures are printed with the input that caused them, and the generator
+ * seed reproduces the run.
+ *
+ * @author aozdemir
+ *
+ */
+public class Differential {
+
+	private static final int SHOWN = 10;
+	private static final int NESTING = 20000;
+	// About how many checkpoints to take of each input
+	private static final int CHECKPOINTS = 16;
+
+	private Grammar grammar;
+	private Parser shunting;
+	private Parser pratt;
+	private Parser checkpointed;
+	private Parser general;
+	private ASTPrinter printer;
+	private BinaryASTWriter writer;
+	private ASTArena arena;
+	private Rewriter ungroup;
+	private PrintStream log;
+
+	int inputs;
+	int parsed;
+	int failures;
+
+	public Differential(Grammar grammar, PrintStream log) {
+		this.grammar = grammar;
+		this.shunting = new Parser(() -> grammar, false);
+		this.shunting.setEngine(ParseEngine.ShuntingYard);
+		this.shunting.setPrintErrors(false);
+		this.pratt = new Parser(() -> grammar, false);
+		this.pratt.setEngine(ParseEngine.Pratt);
+		this.pratt.setPrintErrors(false);
+		this.checkpointed = new Parser(() -> grammar, false);
+		this.checkpointed.setPrintErrors(false);
+		this.general = new Parser(() -> grammar, false);
+		this.general.setEngine(ParseEngine.ShuntingYard);
+		this.general.setFastPaths(false);
+		this.general.setPrintErrors(false);
+		this.printer = new ASTPrinter(grammar);
+		this.writer = new BinaryASTWriter();
+		this.arena = new ASTArena();
+		this.ungroup = new Rewriter();
+		for (Pair<OpenGroup, CloseGroup> pair : grammar.groupers())
+			ungroup.add(Rules.ungroup(pair.first));
+		ungroup.setStepLimit(Integer.MAX_VALUE);
+		this.log = log;
+	}
+
+	/**
+	 * Checks one expression
+	 * 
+	 * @param valid
+	 *            - Whether the expression is known to be valid
+	 */
+	public void check(String input, boolean valid) {
+		inputs++;
+		try {
+			compare(input, valid);
+		} catch (RuntimeException | StackOverflowError e) {
+			fail(input, "crashed with " + e);
+		}
+	}
+
+	private void compare(String input, boolean valid) {
+		String first = outcome(shunting, input);
+		String second = outcome(pratt, input);
+		if (!first.equals(second))
+			fail(input, "engines differ:\n  shunting: " + first + "\n  pratt:    " + second);
+		String slow = outcome(general, input);
+		if (!first.equals(slow))
+			fail(input, "fast paths differ:\n  fast:    " + first + "\n  general: " + slow);
+		checkpoints(input, first);
+		AST tree;
+		try {
+			tree = shunting.parse(input);
+		} catch (ParseException e) {
+			if (valid)
+				fail(input, "valid expression rejected: " + e.getMessage());
+			return;
+		}
+		parsed++;
+		String braces = ASTPrinter.toBraces(tree);
+		String infix = printer.toInfix(tree);
+		try {
+			AST reparsed = ungroup.rewrite(shunting.parse(infix));
+			if (!ASTPrinter.toBraces(reparsed).equals(ASTPrinter.toBraces(ungroup.rewrite(tree))))
+				fail(input, "infix " + infix + " parses to " + reparsed + " instead of " + braces);
+		} catch (ParseException e) {
+			fail(input, "infix " + infix + " does not parse: " + e.getMessage());
+		}
+		ungroup.clear();
+		AST decoded = new BinaryASTReader(writer.encode(tree)).toAST(grammar);
+		if (!ASTPrinter.toBraces(decoded).equals(braces))
+			fail(input, "binary encoding reads back as " + decoded + " instead of " + braces);
+		else if (!tokenClasses(decoded).equals(tokenClasses(tree)))
+			fail(input, "binary encoding reads back with token classes "
+					+ tokenClasses(decoded) + " instead of " + tokenClasses(tree));
+		arena.clear();
+		AST stored;
+		try {
+			stored = shunting.parse(input, arena).toAST();
+		} catch (ParseException e) {
+			fail(input, "does not parse into an arena: " + e.getMessage());
+			return;
+		}
+		if (!ASTPrinter.toBraces(stored).equals(braces))
+			fail(input, "arena reads back as " + stored + " instead of " + braces);
+		else if (!tokenClasses(stored).equals(tokenClasses(tree)))
+			fail(input, "arena reads back with token classes " + tokenClasses(stored)
+					+ " instead of " + tokenClasses(tree));
+		else if (!indices(stored).equals(indices(tree)))
+			fail(input, "arena reads back with token indices " + indices(stored)
+					+ " instead of " + indices(tree));
+	}
+
+	/**
+	 * @return The token classes of the identifiers of the tree, in preorder
+	 */
+	private static List<String> tokenClasses(AST tree) {
+		List<String> classes = new ArrayList<String>();
+		List<AST> pending = new ArrayList<AST>();
+		pending.add(tree);
+		while (!pending.isEmpty()) {
+			AST node = pending.remove(pending.size() - 1);
+			if (node.getNode() instanceof Identifier)
+				classes.add(((Identifier) node.getNode()).tokenClass());
+			for (int i = node.getOperands().size() - 1; i >= 0; i--)
+				pending.add(node.getOperands().get(i));
+		}
+		return classes;
+	}
+
+	/**
+	 * @return The token indices of the nodes of the tree, in preorder
+	 */
+	private static List<Integer> indices(AST tree) {
+		List<Integer> indices = new ArrayList<Integer>();
+		List<AST> pending = new ArrayList<AST>();
+		pending.add(tree);
+		while (!pending.isEmpty()) {
+			AST node = pending.remove(pending.size() - 1);
+			indices.add(node.getNode().getIndex());
+			for (int i = node.getOperands().size() - 1; i >= 0; i--)
+				pending.add(node.getOperands().get(i));
+		}
+		return indices;
+	}
+
+	/**
+	 * Parses with a checkpoint every few tokens, and then resumes from each
+	 * checkpoint, expecting the outcome of the shunting engine every time
+	 */
+	private void checkpoints(String input, String expected) {
+		int interval = Math.max(1, input.length() / CHECKPOINTS);
+		List<ParseCheckpoint> saved = new ArrayList<ParseCheckpoint>();
+		String whole = resume(input, null, interval, saved);
+		if (!whole.equals(expected)) {
+			fail(input, "checkpointing every " + interval + " tokens gives " + whole
+					+ " instead of " + expected);
+			return;
+		}
+		for (int i = 0; i < saved.size(); i++) {
+			ParseCheckpoint checkpoint = saved.get(i);
+			String resumed = resume(input, i % 2 == 0 ? checkpoint : copy(checkpoint), interval,
+					null);
+			if (!resumed.equals(expected)) {
+				fail(input, "resuming from " + checkpoint + " gives " + resumed + " instead of "
+						+ expected);
+				return;
+			}
+		}
+	}
+
+	private String resume(String input, ParseCheckpoint from, int interval,
+			List<ParseCheckpoint> saved) {
+		try {
+			return ASTPrinter.toBraces(checkpointed.parse(input, from, interval,
+					saved == null ? null : saved::add));
+		} catch (ParseException e) {
+			return "error " + e.report();
+		}
+	}
+
+	/**
+	 * @return The checkpoint written out and read back
+	 */
+	private static ParseCheckpoint copy(ParseCheckpoint checkpoint) {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			checkpoint.write(out);
+			return ParseCheckpoint.read(new ByteArrayInputStream(out.toByteArray()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static String outcome(Parser parser, String input) {
+		try {
+			return ASTPrinter.toBraces(parser.parse(input));
+		} catch (ParseException e) {
+			return "error " + e.report();
+		}
+	}
+
+	private void fail(String input, String problem) {
+		if (failures++ < SHOWN)
+			log.println("FAIL on <" + input + ">: " + problem);
+	}
+
+	public String toString() {
+		return String.format("%d inputs, %d parsed, %d failures", inputs, parsed, failures);
+	}
+
+	/**
+	 * Usage: grammar [count] [seed] [size]
+	 */
+	public static void main(String[] args) throws IOException, GrammarException {
+		if (args.length < 1) {
+			System.err.println("Usage: fuzz path_to_grammar_spec [count] [seed] [size]");
+			System.exit(2);
+		}
+		Grammar grammar = Grammar.fromFile(args[0]);
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+		ExpressionGenerator generator = new ExpressionGenerator(grammar, seed);
+		if (args.length > 3)
+			generator.setSize(Integer.parseInt(args[3]));
+		System.out.println("seed " + seed);
+
+		Differential differential = new Differential(grammar, System.out);
+		// Parsers print nothing, but keep stray diagnostics out of the report
+		PrintStream err = System.err;
+		System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			for (int i = 0; i < count; i++)
+				if (i % 2 == 0)
+					differential.check(generator.valid(), true);
+				else
+					differential.check(generator.invalid(), false);
+			for (String input : generator.nested(NESTING))
+				differential.check(input, true);
+		} finally {
+			System.setErr(err);
+		}
+		System.out.println(differential);
+		if (differential.failures > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,381 @@
+package parsop.fuzz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+import parsop.grammar.TokenClass;
+import parsop.grammar.lexer.DFA;
+import parsop.grammar.tokens.CallOpen;
+import parsop.grammar.tokens.CloseGroup;
+import parsop.grammar.tokens.OpenGroup;
+import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.TernaryOperation;
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+import parsop.util.Pair;
+
+/**
+ * Generates random expressions in the language of a Grammar, for fuzzing and
+ * load testing.
+ *
+ * Valid expressions are grown as trees from the grammar's operations, groups,
+ * calls and ternary operations, and written out with a space between tokens.
+ * Identifiers are drawn from a pool sampled from the token classes of the
+ * grammar, so they lex back as identifiers, or are short words when the
+ * grammar has no token classes.
+ *
+ * Invalid expressions are valid ones with a few tokens deleted, duplicated,
+ * swapped or replaced by a random symbol. A mutation can happen to leave the
+ * expression valid, so they are only mostly invalid.
+ *
+ * The shape is controlled by:
+ *
+ *    size    : the number of operations to aim for
+ *    depth   : the greatest depth of the generated tree
+ *    nesting : the greatest number of groups and calls inside each other
+ *    weights : how often each kind of node (Identifier, UnaryOperation,
+ *              BinaryOperation, PostfixOperation, OpenGroup, CallOpen and
+ *              TernaryOperation) is chosen when more than one fits
+ *
+ * @author aozdemir
+ *
+ */
+public class ExpressionGenerator {
+
+	private static final TokenType[] KINDS = { TokenType.Identifier, TokenType.UnaryOperation,
+			TokenType.BinaryOperation, TokenType.PostfixOperation, TokenType.OpenGroup,
+			TokenType.CallOpen, TokenType.TernaryOperation };
+
+	private Random random;
+	private Map<TokenType, List<Token>> tokens;
+	private List<Pair<OpenGroup, CloseGroup>> groupers;
+	private List<String> identifiers;
+	private List<String> symbols;
+
+	private int size = 8;
+	private int depth = 12;
+	private int nesting = 4;
+	private Map<TokenType, Double> weights;
+
+	/**
+	 * Generates the same expressions for the same grammar and seed
+	 */
+	public ExpressionGenerator(Grammar grammar, long seed) throws GrammarException {
+		this.random = new Random(seed);
+		this.tokens = new EnumMap<TokenType, List<Token>>(TokenType.class);
+		for (TokenType kind : KINDS)
+			if (kind != TokenType.Identifier)
+				tokens.put(kind, new ArrayList<Token>());
+		for (Set<Operation> precedenceClass : grammar.precedenceClasses())
+			for (Operation o : precedenceClass)
+				tokens.get(o.type()).add(o);
+		this.groupers = grammar.groupers();
+		for (Pair<OpenGroup, CloseGroup> pair : groupers)
+			tokens.get(TokenType.OpenGroup).add(pair.first);
+		this.symbols = new ArrayList<String>(grammar.specialSymbols());
+		Collections.sort(symbols);
+		this.identifiers = identifiers(grammar);
+
+		this.weights = new EnumMap<TokenType, Double>(TokenType.class);
+		weights.put(TokenType.Identifier, 1.0);
+		weights.put(TokenType.UnaryOperation, 1.0);
+		weights.put(TokenType.BinaryOperation, 4.0);
+		weights.put(TokenType.PostfixOperation, 1.0);
+		weights.put(TokenType.OpenGroup, 1.0);
+		weights.put(TokenType.CallOpen, 1.0);
+		weights.put(TokenType.TernaryOperation, 0.5);
+	}
+
+	/**
+	 * Samples 32 identifiers from each token class, keeping those which the
+	 * lexer reads back whole as identifiers
+	 */
+	private List<String> identifiers(Grammar grammar) throws GrammarException {
+		List<String> result = new ArrayList<String>();
+		if (!grammar.hasTokenClasses()) {
+			for (int i = 0; result.size() < 32 && i < 1000; i++) {
+				String word = Character.toString('a' + random.nextInt(26));
+				if (random.nextBoolean())
+					word += (char) ('a' + random.nextInt(26));
+				if (!result.contains(word) && !containsSymbol(grammar, word))
+					result.add(word);
+			}
+		} else
+			for (TokenClass tokenClass : grammar.tokenClasses()) {
+				DFA.Builder builder = new DFA.Builder();
+				builder.addPattern(tokenClass.regex());
+				DFA dfa = builder.build();
+				for (int i = 0; i < 32; i++) {
+					String sample = dfa.sample(random, 0.4, 6);
+					if (sample != null && lexesAsIdentifier(grammar, sample))
+						result.add(sample);
+				}
+			}
+		if (result.isEmpty())
+			throw new GrammarException("Could not generate identifiers for the grammar");
+		return result;
+	}
+
+	private static boolean containsSymbol(Grammar grammar, String word) {
+		for (String symbol : grammar.specialSymbols())
+			if (word.contains(symbol))
+				return true;
+		return false;
+	}
+
+	private static boolean lexesAsIdentifier(Grammar grammar, String sample) {
+		long match = grammar.lexer().match(sample, 0);
+		if (match < 0 || DFA.end(match) != sample.length())
+			return false;
+		Token t = grammar.lexerToken(DFA.rule(match), sample, 0, sample.length(), 0, true);
+		return t.type() == TokenType.Identifier;
+	}
+
+	public void setSize(int size) {
+		this.size = size;
+	}
+
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+	public void setNesting(int nesting) {
+		this.nesting = nesting;
+	}
+
+	/**
+	 * @param kind
+	 *            - Identifier or one of the kinds of operation
+	 * @param weight
+	 *            - 0 to never choose it
+	 */
+	public void setWeight(TokenType kind, double weight) {
+		weights.put(kind, weight);
+	}
+
+	/**
+	 * @return A syntactically valid expression
+	 */
+	public String valid() {
+		List<String> out = new ArrayList<String>();
+		expression(out, size, depth, nesting);
+		return String.join(" ", out);
+	}
+
+	/**
+	 * @return A valid expression with 1 to 3 mutations
+	 */
+	public String invalid() {
+		List<String> out = new ArrayList<String>();
+		expression(out, size, depth, nesting);
+		int mutations = 1 + random.nextInt(3);
+		for (int m = 0; m < mutations; m++)
+			mutate(out);
+		return String.join(" ", out);
+	}
+
+	/**
+	 * @return For each kind of operation in the grammar, a valid expression
+	 *         nesting it depth times, like "- - - a" or "f ( f ( f ( a ) ) )",
+	 *         to check that deep input does not overflow the call stack
+	 */
+	public List<String> nested(int depth) {
+		List<String> result = new ArrayList<String>();
+		for (TokenType kind : KINDS) {
+			if (kind == TokenType.Identifier || tokens.get(kind).isEmpty())
+				continue;
+			List<Token> choices = tokens.get(kind);
+			List<String> out = new ArrayList<String>();
+			String identifier = identifiers.get(random.nextInt(identifiers.size()));
+			switch (kind) {
+			case UnaryOperation: {
+				String symbol = symbol(choices);
+				for (int i = 0; i < depth; i++)
+					out.add(symbol);
+				out.add(identifier);
+				break;
+			}
+			case BinaryOperation: {
+				String symbol = symbol(choices);
+				out.add(identifier);
+				for (int i = 0; i < depth; i++) {
+					out.add(symbol);
+					out.add(identifier);
+				}
+				break;
+			}
+			case PostfixOperation: {
+				String symbol = symbol(choices);
+				out.add(identifier);
+				for (int i = 0; i < depth; i++)
+					out.add(symbol);
+				break;
+			}
+			case OpenGroup: {
+				Pair<OpenGroup, CloseGroup> pair = groupers.get(random.nextInt(groupers.size()));
+				for (int i = 0; i < depth; i++)
+					out.add(pair.first.symbol());
+				out.add(identifier);
+				for (int i = 0; i < depth; i++)
+					out.add(pair.second.symbol());
+				break;
+			}
+			case CallOpen: {
+				CallOpen open = (CallOpen) choices.get(random.nextInt(choices.size()));
+				for (int i = 0; i < depth; i++) {
+					out.add(identifier);
+					out.add(open.symbol());
+				}
+				out.add(identifier);
+				for (int i = 0; i < depth; i++)
+					out.add(open.close().symbol());
+				break;
+			}
+			default: {
+				TernaryOperation ternary = (TernaryOperation) choices.get(random.nextInt(choices
+						.size()));
+				// Nested in the middle operands
+				for (int i = 0; i < depth; i++) {
+					out.add(identifier);
+					out.add(ternary.open().symbol());
+				}
+				out.add(identifier);
+				for (int i = 0; i < depth; i++) {
+					out.add(ternary.symbol());
+					out.add(identifier);
+				}
+			}
+			}
+			result.add(String.join(" ", out));
+		}
+		return result;
+	}
+
+	/**
+	 * @param invalidShare
+	 *            - The chance that the expression is invalid
+	 */
+	public String next(double invalidShare) {
+		return random.nextDouble() < invalidShare ? invalid() : valid();
+	}
+
+	/**
+	 * Writes the tokens of an expression of about budget operations
+	 */
+	private void expression(List<String> out, int budget, int depth, int nesting) {
+		TokenType kind = budget <= 0 || depth <= 0 ? TokenType.Identifier : choose(nesting);
+		List<Token> choices = tokens.get(kind);
+		switch (kind) {
+		case UnaryOperation: {
+			out.add(symbol(choices));
+			expression(out, budget - 1, depth - 1, nesting);
+			break;
+		}
+		case BinaryOperation: {
+			int left = random.nextInt(budget);
+			expression(out, left, depth - 1, nesting);
+			out.add(symbol(choices));
+			expression(out, budget - 1 - left, depth - 1, nesting);
+			break;
+		}
+		case PostfixOperation: {
+			expression(out, budget - 1, depth - 1, nesting);
+			out.add(symbol(choices));
+			break;
+		}
+		case OpenGroup: {
+			Pair<OpenGroup, CloseGroup> pair = groupers.get(random.nextInt(groupers.size()));
+			out.add(pair.first.symbol());
+			expression(out, budget - 1, depth - 1, nesting - 1);
+			out.add(pair.second.symbol());
+			break;
+		}
+		case CallOpen: {
+			CallOpen open = (CallOpen) choices.get(random.nextInt(choices.size()));
+			int arguments = open.separator() == null ? random.nextInt(2) : random.nextInt(4);
+			int share = (budget - 1) / (arguments + 1);
+			expression(out, share, depth - 1, nesting);
+			out.add(open.symbol());
+			for (int i = 0; i < arguments; i++) {
+				if (i > 0)
+					out.add(open.separator().symbol());
+				expression(out, share, depth - 1, nesting - 1);
+			}
+			out.add(open.close().symbol());
+			break;
+		}
+		case TernaryOperation: {
+			TernaryOperation ternary = (TernaryOperation) choices.get(random.nextInt(choices
+					.size()));
+			int share = (budget - 1) / 3;
+			expression(out, share, depth - 1, nesting);
+			out.add(ternary.open().symbol());
+			expression(out, share, depth - 1, nesting - 1);
+			out.add(ternary.symbol());
+			expression(out, budget - 1 - 2 * share, depth - 1, nesting);
+			break;
+		}
+		default:
+			out.add(identifiers.get(random.nextInt(identifiers.size())));
+		}
+	}
+
+	/**
+	 * Picks the kind of the next node by weight, among those the grammar has
+	 * and the nesting allows
+	 */
+	private TokenType choose(int nesting) {
+		double total = 0;
+		for (TokenType kind : KINDS)
+			total += weight(kind, nesting);
+		if (total == 0)
+			return TokenType.Identifier;
+		double pick = random.nextDouble() * total;
+		for (TokenType kind : KINDS) {
+			pick -= weight(kind, nesting);
+			if (pick < 0)
+				return kind;
+		}
+		return KINDS[KINDS.length - 1];
+	}
+
+	private double weight(TokenType kind, int nesting) {
+		if (kind == TokenType.Identifier)
+			return weights.get(kind);
+		if (tokens.get(kind).isEmpty())
+			return 0;
+		boolean nests = kind == TokenType.OpenGroup || kind == TokenType.CallOpen
+				|| kind == TokenType.TernaryOperation;
+		return nests && nesting <= 0 ? 0 : weights.get(kind);
+	}
+
+	private String symbol(List<Token> choices) {
+		return ((Operation) choices.get(random.nextInt(choices.size()))).symbol();
+	}
+
+	private void mutate(List<String> out) {
+		int i = random.nextInt(out.size());
+		switch (random.nextInt(4)) {
+		case 0:
+			if (out.size() > 1)
+				out.remove(i);
+			break;
+		case 1:
+			out.add(i, out.get(i));
+			break;
+		case 2:
+			if (i + 1 < out.size())
+				Collections.swap(out, i, i + 1);
+			break;
+		default:
+			out.set(i, symbols.get(random.nextInt(symbols.size())));
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package parsop.fuzz;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+
+/**
+ * Parses generated expressions for a length of time, and reports throughput,
+ * garbage collection and heap use every interval, so that slowdowns and leaks
+ * over millions of parses show up.
+ *
+ * The expressions are generated before the clock starts, and parsed in turn
+ * by one Parser, so the run measures the parser alone.
+ *
+ * @author aozdemir
+ *
+ */
+public class Soak {
+
+	private Parser parser;
+	private String[] corpus;
+
+	public Soak(Grammar grammar, ExpressionGenerator generator, int corpusSize,
+			double invalidShare) {
+		this.parser = new Parser(() -> grammar, false);
+		this.parser.setPrintErrors(false);
+		this.corpus = new String[corpusSize];
+		for (int i = 0; i < corpusSize; i++)
+			corpus[i] = generator.next(invalidShare);
+	}
+
+	/**
+	 * Parses until the time is up, printing a line per interval
+	 */
+	public void run(long seconds, long intervalMillis) {
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		System.out.println(String.format("%8s %12s %12s %8s %8s %10s", "seconds", "parses",
+				"parses/s", "gcs", "gc ms", "heap MB"));
+
+		long start = System.nanoTime();
+		long end = start + seconds * 1000000000L;
+		long intervalNanos = intervalMillis * 1000000L;
+		long parses = 0, errors = 0;
+		long lastParses = 0, lastTime = start;
+		long lastGcs = gcCount(collectors), lastGcMillis = gcMillis(collectors);
+		long firstGcs = lastGcs, firstGcMillis = lastGcMillis;
+		long maxHeap = 0;
+		int next = 0;
+		while (true) {
+			// Check the clock every batch of parses rather than every parse
+			for (int i = 0; i < 1000; i++) {
+				try {
+					parser.parse(corpus[next]);
+				} catch (ParseException e) {
+					errors++;
+				}
+				if (++next == corpus.length)
+					next = 0;
+			}
+			parses += 1000;
+			long now = System.nanoTime();
+			if (now - lastTime < intervalNanos && now < end)
+				continue;
+			long gcs = gcCount(collectors), gcMillis = gcMillis(collectors);
+			long heap = memory.getHeapMemoryUsage().getUsed();
+			maxHeap = Math.max(maxHeap, heap);
+			System.out.println(String.format("%8.1f %12d %12.0f %8d %8d %10.1f", (now - start) / 1e9,
+					parses, (parses - lastParses) * 1e9 / (now - lastTime), gcs - lastGcs, gcMillis
+							- lastGcMillis, heap / 1e6));
+			lastParses = parses;
+			lastTime = now;
+			lastGcs = gcs;
+			lastGcMillis = gcMillis;
+			if (now >= end)
+				break;
+		}
+		double elapsed = (lastTime - start) / 1e9;
+		System.out.println(String.format(
+				"%d parses (%d errors) in %.1f s: %.0f parses/s, %d gcs taking %d ms, max heap %.1f MB",
+				parses, errors, elapsed, parses / elapsed, lastGcs - firstGcs, lastGcMillis
+						- firstGcMillis, maxHeap / 1e6));
+	}
+
+	private static long gcCount(List<GarbageCollectorMXBean> collectors) {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : collectors)
+			count += Math.max(0, collector.getCollectionCount());
+		return count;
+	}
+
+	private static long gcMillis(List<GarbageCollectorMXBean> collectors) {
+		long millis = 0;
+		for (GarbageCollectorMXBean collector : collectors)
+			millis += Math.max(0, collector.getCollectionTime());
+		return millis;
+	}
+
+	/**
+	 * Usage: grammar [seconds] [size] [seed]
+	 */
+	public static void main(String[] args) throws IOException, GrammarException {
+		if (args.length < 1) {
+			System.err.println("Usage: soak path_to_grammar_spec [seconds] [size] [seed]");
+			System.exit(2);
+		}
+		Grammar grammar = Grammar.fromFile(args[0]);
+		long seconds = args.length > 1 ? Long.parseLong(args[1]) : 60;
+		long seed = args.length > 3 ? Long.parseLong(args[3]) : 42;
+		ExpressionGenerator generator = new ExpressionGenerator(grammar, seed);
+		if (args.length > 2)
+			generator.setSize(Integer.parseInt(args[2]));
+		new Soak(grammar, generator, 10000, 0.1).run(seconds, 5000);
+	}
+}
@@ -0,0 +1,50 @@
+package parsop.grammar;
+
+import parsop.grammar.tokens.Token;
+
+/**
+ * The special symbols of a grammar whose symbols are all single ASCII
+ * characters, as two arrays indexed by the character: the token meant where
+ * an operand is expected, and the token meant after one. It answers exactly
+ * as SymbolTrie.longestMatch() would for such a grammar.
+ *
+ * @author aozdemir
+ *
+ */
+public class CharSymbols {
+
+	private Token[] operandExpected;
+	private Token[] operatorExpected;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             - if a symbol is longer than one character or not ASCII
+	 */
+	CharSymbols(Iterable<String> symbols, SymbolTrie trie) {
+		this.operandExpected = new Token[128];
+		this.operatorExpected = new Token[128];
+		for (String symbol : symbols) {
+			if (symbol.length() != 1 || symbol.charAt(0) >= 128)
+				throw new IllegalArgumentException("Not a single ASCII character: " + symbol);
+			char c = symbol.charAt(0);
+			operandExpected[c] = trie.get(symbol, true);
+			operatorExpected[c] = trie.get(symbol, false);
+		}
+	}
+
+	/**
+	 * @return The token whose symbol is c, or null if there is none
+	 */
+	public Token get(char c, boolean operandExpected) {
+		if (c >= 128)
+			return null;
+		return operandExpected ? this.operandExpected[c] : this.operatorExpected[c];
+	}
+
+	/**
+	 * @return Whether c is a symbol, in either meaning
+	 */
+	public boolean contains(char c) {
+		return c < 128 && operatorExpected[c] != null;
+	}
+}
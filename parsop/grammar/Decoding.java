@@ -0,0 +1,30 @@
+package parsop.grammar;
+
+/**
+ * How the text of a token class is turned into a value at scan time.
+ */
+enum Decoding {
+	None,
+	Integer,
+	Real;
+
+	public static Decoding fromString(String encoding) throws GrammarException {
+		encoding = encoding.toLowerCase();
+		if (encoding.equals("integer")) return Integer;
+		else if (encoding.equals("real")) return Real;
+		else throw new GrammarException("Encoding of decoding not recognized: " + encoding);
+	}
+
+	public String toString() {
+		switch (this) {
+		case None:
+			return "";
+		case Integer:
+			return "integer";
+		case Real:
+			return "real";
+		default:
+			throw new Error("Decoding Enumeration is broken");
+		}
+	}
+}
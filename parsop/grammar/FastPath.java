@@ -0,0 +1,26 @@
+package parsop.grammar;
+
+/**
+ * The specialized ways of tokenizing and checking which a GrammarProfile may
+ * choose for a simple grammar. Each gives the same tokens and errors as the
+ * general way, which Parser.setFastPaths(false) forces for comparison.
+ */
+public enum FastPath {
+	/**
+	 * Every special symbol is one ASCII character and there are no token
+	 * classes, so the tokenizer looks symbols up in a table indexed by the
+	 * character instead of walking the SymbolTrie
+	 */
+	CharTable,
+	/**
+	 * No symbol has both a prefix and an infix meaning, so the tokenizer does
+	 * not track whether an operand is expected
+	 */
+	NoOperandTracking,
+	/**
+	 * There is one pair of groupers and no calls or ternary operations, so
+	 * any closing grouper matches the open one on top of the stack, and the
+	 * SyntaxChecker need not look the pair up in the grammar
+	 */
+	SimpleGroupers
+}
@@ -0,0 +1,133 @@
+package parsop.grammar;
+
+import java.io.IOException;
+
+import parsop.fuzz.ExpressionGenerator;
+import parsop.parser.AST;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+import parsop.parser.Tokenizer;
+
+/**
+ * Measures what the FastPaths of each grammar save. For every grammar given,
+ * it prints the GrammarProfile, and then the time per token to tokenize and
+ * to parse a generated corpus with the fast paths on and off.
+ *
+ * Passing grammars of each kind (Binary, Unary and Rich) shows how much the
+ * simple ones gain, and that the rich ones, which get fewer fast paths, lose
+ * nothing. The trees of both ways are checked to be equal.
+ *
+ * @author aozdemir
+ *
+ */
+public class FastPathBenchmark {
+
+	private Grammar grammar;
+	private String[] corpus;
+	private long tokens;
+
+	public FastPathBenchmark(Grammar grammar, ExpressionGenerator generator, int corpusSize) {
+		this.grammar = grammar;
+		this.corpus = new String[corpusSize];
+		Tokenizer tokenizer = new Tokenizer(grammar);
+		for (int i = 0; i < corpusSize; i++) {
+			corpus[i] = generator.valid();
+			tokens += tokenizer.tokenize(corpus[i]).size();
+		}
+	}
+
+	/**
+	 * @return The nanoseconds taken to tokenize the corpus
+	 */
+	private long tokenize(Tokenizer tokenizer) {
+		long start = System.nanoTime();
+		for (String input : corpus) {
+			tokenizer.reset(input);
+			while (tokenizer.hasNext())
+				tokenizer.next();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * @return The nanoseconds taken to parse the corpus
+	 */
+	private long parse(Parser parser) throws ParseException {
+		long start = System.nanoTime();
+		for (String input : corpus)
+			parser.parse(input);
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             - if the fast paths change a tree
+	 */
+	public void check() throws ParseException {
+		Parser fast = new Parser(() -> grammar, false);
+		Parser general = new Parser(() -> grammar, false);
+		general.setFastPaths(false);
+		for (String input : corpus) {
+			AST tree = fast.parse(input);
+			if (!tree.equals(general.parse(input)))
+				throw new IllegalStateException("The fast paths change the tree of " + input);
+		}
+	}
+
+	/**
+	 * Alternates the two ways round by round, so that both see the same state
+	 * of the JIT and the heap, and keeps the fastest round of each
+	 */
+	public String run(int rounds) throws ParseException {
+		check();
+		Tokenizer fastTokenizer = new Tokenizer(grammar);
+		Tokenizer generalTokenizer = new Tokenizer(grammar);
+		generalTokenizer.setFastPaths(false);
+		Parser fastParser = new Parser(() -> grammar, false);
+		Parser generalParser = new Parser(() -> grammar, false);
+		generalParser.setFastPaths(false);
+		long[] best = { Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE };
+		// The first rounds warm up both ways and are not counted
+		for (int round = -2; round < rounds; round++) {
+			long[] nanos = { tokenize(fastTokenizer), tokenize(generalTokenizer),
+					parse(fastParser), parse(generalParser) };
+			for (int k = 0; round >= 0 && k < best.length; k++)
+				best[k] = Math.min(best[k], nanos[k]);
+		}
+		double[] perToken = new double[best.length];
+		for (int k = 0; k < best.length; k++)
+			perToken[k] = (double) best[k] / tokens;
+		return String.format("%s\n%s\n%d tokens\ntokenize: %6.1f ns/token fast, %6.1f general "
+				+ "(%.2fx)\nparse   : %6.1f ns/token fast, %6.1f general (%.2fx)", grammar.path(),
+				grammar.profile(), tokens, perToken[0], perToken[1], perToken[1] / perToken[0],
+				perToken[2], perToken[3], perToken[3] / perToken[2]);
+	}
+
+	/**
+	 * Usage: [-n corpus_size] [-s expression_size] grammar...
+	 */
+	public static void main(String[] args) throws IOException, GrammarException, ParseException {
+		int corpusSize = 20000;
+		int size = 32;
+		int i = 0;
+		for (; i + 1 < args.length && args[i].startsWith("-"); i += 2)
+			if (args[i].equals("-n"))
+				corpusSize = Integer.parseInt(args[i + 1]);
+			else if (args[i].equals("-s"))
+				size = Integer.parseInt(args[i + 1]);
+			else
+				break;
+		if (i == args.length) {
+			System.err.println("Usage: bench fastpath [-n corpus_size] [-s expression_size] "
+					+ "path_to_grammar_spec...");
+			System.exit(2);
+		}
+		for (; i < args.length; i++) {
+			Grammar grammar = Grammar.fromFile(args[i]);
+			ExpressionGenerator generator = new ExpressionGenerator(grammar, 42);
+			generator.setSize(size);
+			System.out.println(new FastPathBenchmark(grammar, generator, corpusSize).run(10));
+			System.out.println();
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,11 +12,18 @@ import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import parsop.grammar.lexer.DFA;
+import parsop.grammar.tokens.CallOpen;
 import parsop.grammar.tokens.CloseGroup;
 import parsop.grammar.tokens.OpenGroup;
 import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.Separator;
+import parsop.grammar.tokens.TernaryOpen;
+import parsop.grammar.tokens.TernaryOperation;
 import parsop.grammar.tokens.Token;
+import parsop.jfr.GrammarLoadEvent;
 import parsop.util.Pair;
 
 public class Grammar {
@@ -28,14 +36,33 @@ public class Grammar {
 
 	Map<Token, Integer> precedenceTable;
 	Map<Operation, Associativity> associativityTable;
+	Map<Token, Integer> ordinalTable;
 
 	Map<String, Operation> symbolTable;
+	Map<String, Token> nameTable;
 	Set<String> specialSymbols;
+	SymbolTrie symbolTrie;
 
 	Map<String, OpenGroup> openGroupTable;
 	Map<String, CloseGroup> closeGroupTable;
 	HashMap<CloseGroup, OpenGroup> closeToOpenTable;
 
+	List<TokenClass> tokenClasses;
+	List<String> lexerSymbols;
+	Token[] lexerPrefixTokens;
+	Token[] lexerInfixTokens;
+	DFA lexer;
+
+	GrammarProfile profile;
+	CharSymbols charSymbols;
+
+	ParseEngine engine;
+
+	String path;
+	int loadId;
+	long fingerprint;
+	private static AtomicInteger loads = new AtomicInteger();
+
 	/**
 	 * Given a list of operator precedence classes and the associativity of each
 	 * class, constructs an Operator Grammar
@@ -46,35 +73,58 @@ public class Grammar {
 	 *            - Indices must correspond to that of the precedence list.
 	 * @param groupers
 	 *            - Pairs of grouping symbols
+	 * @param tokenClasses
+	 *            - Identifier classes, in order of priority. May be empty.
+	 * @param engine
+	 *            - The algorithm parsers should use by default
 	 * @throws GrammarException
-	 *             - If the precedences and associativities do not line up.
+	 *             - If the precedences and associativities do not line up, a
+	 *             symbol is ambiguous, or a token class is malformed.
 	 */
 	private Grammar(List<Set<Operation>> precedences, List<Associativity> associativities,
-			List<Pair<OpenGroup, CloseGroup>> groupers) throws GrammarException {
+			List<Pair<OpenGroup, CloseGroup>> groupers, List<TokenClass> tokenClasses,
+			ParseEngine engine) throws GrammarException {
 		if (precedences.size() != associativities.size())
 			throw new GrammarException(
 					"Must be an equal number of precedences and associativities!");
 		this.precedences = precedences;
 		this.associativities = associativities;
 		this.groupers = groupers;
+		this.tokenClasses = tokenClasses;
+		this.engine = engine;
 		this.precedenceTable = new HashMap<Token, Integer>();
 		this.associativityTable = new HashMap<Operation, Associativity>();
 		this.symbolTable = new HashMap<String, Operation>();
+		this.nameTable = new HashMap<String, Token>();
 		this.openGroupTable = new HashMap<String, OpenGroup>();
 		this.closeGroupTable = new HashMap<String, CloseGroup>();
 		this.closeToOpenTable = new HashMap<CloseGroup, OpenGroup>();
 		this.specialSymbols = new HashSet<String>();
+		this.symbolTrie = new SymbolTrie();
 		for (int i = 0; i < precedences.size(); i++) {
 			Associativity assoc = associativities.get(i);
 			for (Operation o : precedences.get(i)) {
+				this.symbolTrie.insert(o);
 				this.associativityTable.put(o, assoc);
 				this.precedenceTable.put(o, i);
 				this.symbolTable.put(o.symbol(), o);
+				this.nameTable.put(o.toString(), o);
+				if (o instanceof CallOpen)
+					addCallSymbols((CallOpen) o);
+				if (o instanceof TernaryOperation) {
+					TernaryOpen open = ((TernaryOperation) o).open();
+					this.symbolTrie.insert(open);
+					this.precedenceTable.put(open, i);
+					this.specialSymbols.add(open.symbol());
+				}
 			}
 		}
 
 		for (Pair<OpenGroup, CloseGroup> p : groupers) {
+			this.symbolTrie.insert(p.first);
+			this.symbolTrie.insert(p.second);
 			this.openGroupTable.put(p.first.symbol(), p.first);
+			this.nameTable.put(p.first.toString(), p.first);
 			this.precedenceTable.put(p.first, GROUP_PRECEDENCE);
 			this.closeGroupTable.put(p.second.symbol(), p.second);
 			this.precedenceTable.put(p.second, GROUP_PRECEDENCE);
@@ -87,6 +137,101 @@ public class Grammar {
 
 		this.precedenceTable.put(Operation.START, Integer.MAX_VALUE);
 		this.precedenceTable.put(Operation.END, Integer.MAX_VALUE);
+		buildOrdinals();
+
+		if (!tokenClasses.isEmpty())
+			buildLexer();
+
+		this.profile = new GrammarProfile(precedences, associativities, groupers,
+				specialSymbols, symbolTrie, !tokenClasses.isEmpty());
+		if (profile.uses(FastPath.CharTable))
+			this.charSymbols = new CharSymbols(specialSymbols, symbolTrie);
+		this.fingerprint = computeFingerprint();
+	}
+
+	/**
+	 * Hashes a description of the precedence classes, groupers and token
+	 * classes. Operations are described in sorted order, since a precedence
+	 * class is a HashSet whose order may differ from run to run.
+	 */
+	private long computeFingerprint() {
+		StringBuilder spec = new StringBuilder();
+		for (int i = 0; i < this.precedences.size(); i++) {
+			List<String> operations = new ArrayList<String>();
+			for (Operation o : this.precedences.get(i)) {
+				String operation = o.type() + " " + o;
+				if (o instanceof CallOpen && ((CallOpen) o).separator() != null)
+					operation += " " + ((CallOpen) o).separator().symbol();
+				operations.add(operation);
+			}
+			Collections.sort(operations);
+			spec.append(this.associativities.get(i)).append(operations).append('\n');
+		}
+		for (Pair<OpenGroup, CloseGroup> p : this.groupers)
+			spec.append("group ").append(p.first.symbol()).append(' ').append(p.second.symbol())
+					.append('\n');
+		for (TokenClass c : this.tokenClasses)
+			spec.append(c).append('\n');
+		long hash = 0;
+		for (int i = 0; i < spec.length(); i++)
+			hash = hash * 31 + spec.charAt(i);
+		return hash;
+	}
+
+	/**
+	 * Packs the precedence and associativity of each token into one int, so
+	 * that parsers can compare tokens without looking them up again.
+	 */
+	private void buildOrdinals() {
+		this.ordinalTable = new HashMap<Token, Integer>();
+		for (Map.Entry<Token, Integer> entry : this.precedenceTable.entrySet()) {
+			// Groups, then START and END, sort after every precedence class
+			int precedence = entry.getValue();
+			if (precedence == GROUP_PRECEDENCE)
+				precedence = this.precedences.size();
+			else if (precedence == Integer.MAX_VALUE)
+				precedence = this.precedences.size() + 1;
+			boolean right = this.associativityTable.get(entry.getKey()) == Associativity.Right;
+			this.ordinalTable.put(entry.getKey(), precedence << 1 | (right ? 1 : 0));
+		}
+	}
+
+	/**
+	 * Registers the closing symbol and separator of a call, which need not be
+	 * declared elsewhere
+	 */
+	private void addCallSymbols(CallOpen call) throws GrammarException {
+		this.symbolTrie.insert(call.close());
+		this.closeGroupTable.put(call.close().symbol(), call.close());
+		this.precedenceTable.put(call.close(), GROUP_PRECEDENCE);
+		if (call.separator() != null) {
+			this.symbolTrie.insert(call.separator());
+			this.specialSymbols.add(call.separator().symbol());
+		}
+	}
+
+	/**
+	 * Compiles the special symbols and the token classes into a single DFA.
+	 * Special symbols are added first so that they win ties with token
+	 * classes, as keywords do.
+	 */
+	private void buildLexer() throws GrammarException {
+		DFA.Builder builder = new DFA.Builder();
+		this.lexerSymbols = new ArrayList<String>();
+		for (String symbol : this.specialSymbols) {
+			builder.addLiteral(symbol);
+			this.lexerSymbols.add(symbol);
+		}
+		// The tokens of each symbol's rule, so that a match needs no lookup
+		this.lexerPrefixTokens = new Token[lexerSymbols.size()];
+		this.lexerInfixTokens = new Token[lexerSymbols.size()];
+		for (int rule = 0; rule < lexerSymbols.size(); rule++) {
+			lexerPrefixTokens[rule] = symbolTrie.get(lexerSymbols.get(rule), true);
+			lexerInfixTokens[rule] = symbolTrie.get(lexerSymbols.get(rule), false);
+		}
+		for (TokenClass tokenClass : this.tokenClasses)
+			builder.addPattern(tokenClass.regex());
+		this.lexer = builder.build();
 	}
 
 	/**
@@ -98,7 +243,36 @@ public class Grammar {
 	 * operator, followed by the whitespace-free symbol for the operator.
 	 * 
 	 * Unary operators are assumed to be prefix, and binary operators are
-	 * assumed to be infix.
+	 * assumed to be infix. An arity of P declares a postfix unary operator.
+	 * 
+	 * A line of format [group] [open] [close] declares a pair of grouping
+	 * symbols.
+	 * 
+	 * A line of format [call] [open] [close] [separator]? declares a call or
+	 * index, such as f(a, b) or a[i], which applies to the operand before it.
+	 * Without a separator, the call takes exactly one argument. A line of
+	 * format [ternary] [first] [second] declares a right-associative ternary
+	 * operation such as c ? x : y. Both kinds of line are precedence classes
+	 * of their own, in the order they appear.
+	 * 
+	 * A symbol may be used both for a prefix meaning (unary operation or open
+	 * group) and for an infix or postfix meaning, such as - or (. Which one is
+	 * meant is decided by whether an operand is expected.
+	 * 
+	 * A line of format [token] [name] [regex] [integer|real]? declares a class
+	 * of identifiers matched by the whitespace-free regular expression. The
+	 * optional decoding turns matches into NumericLiterals when they are
+	 * scanned, and should only be used with expressions whose matches are
+	 * numbers. Classes declared earlier win ties. If any token class is
+	 * declared, the input is scanned by a DFA and every identifier must match
+	 * some class. Otherwise identifiers are the runs of input between
+	 * whitespace and special symbols.
+	 * 
+	 * Symbols may overlap (such as < and <=); the input is always matched
+	 * longest first, so no whitespace is needed between tokens.
+	 * 
+	 * A line of format [engine] [shunting|pratt] chooses the algorithm that
+	 * parsers use for this grammar. The default is shunting.
 	 * 
 	 * @param filepath
 	 *            - the location of the file
@@ -109,9 +283,44 @@ public class Grammar {
 	 *             if the file cannot be read for some reason.
 	 */
 	public static Grammar fromFile(String filepath) throws GrammarException, IOException {
+		return fromFile(filepath, new TokenPool());
+	}
+
+	/**
+	 * Parses a grammar from a file, as fromFile(filepath), sharing symbols and
+	 * tokens with other grammars loaded from the same pool.
+	 */
+	public static Grammar fromFile(String filepath, TokenPool pool) throws GrammarException,
+			IOException {
+		GrammarLoadEvent event = new GrammarLoadEvent();
+		event.begin();
+		event.path = filepath;
+		event.loadId = loads.incrementAndGet();
+		try {
+			Grammar grammar = read(filepath, pool, event);
+			grammar.path = filepath;
+			grammar.loadId = event.loadId;
+			event.precedences = grammar.precedences.size();
+			event.kind = grammar.profile.kind().toString();
+			event.fastPaths = grammar.profile.fastPaths().toString();
+			event.succeeded = true;
+			return grammar;
+		} catch (GrammarException | IOException | RuntimeException e) {
+			event.message = e.toString();
+			throw e;
+		} finally {
+			event.commit();
+		}
+	}
+
+	private static Grammar read(String filepath, TokenPool pool, GrammarLoadEvent event)
+			throws GrammarException, IOException {
+		long start = System.nanoTime();
 		List<Set<Operation>> precedences = new ArrayList<Set<Operation>>();
 		List<Associativity> associativities = new ArrayList<Associativity>();
 		List<Pair<OpenGroup, CloseGroup>> groupers = new ArrayList<Pair<OpenGroup, CloseGroup>>();
+		List<TokenClass> tokenClasses = new ArrayList<TokenClass>();
+		ParseEngine engine = ParseEngine.ShuntingYard;
 		BufferedReader fin = new BufferedReader(new FileReader(filepath));
 		String line;
 		while ((line = fin.readLine()) != null) {
@@ -121,8 +330,8 @@ public class Grammar {
 			Scanner in = new Scanner(line);
 			String first = in.next();
 			if (first.toLowerCase().equals("group")) {
-				OpenGroup open = new OpenGroup(in.next());
-				CloseGroup close = new CloseGroup(in.next());
+				OpenGroup open = pool.token(new OpenGroup(pool.symbol(in.next())));
+				CloseGroup close = pool.token(new CloseGroup(pool.symbol(in.next())));
 				groupers.add(new Pair<OpenGroup, CloseGroup>(open, close));
 				try {
 					String extraToken = in.next();
@@ -134,15 +343,59 @@ public class Grammar {
 				} finally {
 					in.close();
 				}
+			} else if (first.toLowerCase().equals("call")) {
+				try {
+					String open = pool.symbol(in.next());
+					CloseGroup close = pool.token(new CloseGroup(pool.symbol(in.next())));
+					Separator separator = in.hasNext() ? pool.token(new Separator(pool.symbol(in
+							.next()))) : null;
+					precedenceClass.add(pool.token(new CallOpen(open, close, separator)));
+				} catch (NoSuchElementException e) {
+					throw new GrammarException("Calls need an open and a close symbol: " + line);
+				} finally {
+					in.close();
+				}
+				associativities.add(Associativity.Left);
+				precedences.add(precedenceClass);
+			} else if (first.toLowerCase().equals("ternary")) {
+				try {
+					TernaryOpen open = pool.token(new TernaryOpen(pool.symbol(in.next())));
+					String symbol = pool.symbol(in.next());
+					precedenceClass.add(pool.token(new TernaryOperation(open, symbol)));
+				} catch (NoSuchElementException e) {
+					throw new GrammarException("Ternary operations need two symbols: " + line);
+				} finally {
+					in.close();
+				}
+				associativities.add(Associativity.Right);
+				precedences.add(precedenceClass);
+			} else if (first.toLowerCase().equals("token")) {
+				try {
+					String name = pool.symbol(in.next());
+					String regex = pool.symbol(in.next());
+					Decoding decoding = in.hasNext() ? Decoding.fromString(in.next()) : Decoding.None;
+					tokenClasses.add(new TokenClass(name, regex, decoding));
+				} catch (NoSuchElementException e) {
+					throw new GrammarException("Token classes need a name and a regex: " + line);
+				} finally {
+					in.close();
+				}
+			} else if (first.toLowerCase().equals("engine")) {
+				try {
+					engine = ParseEngine.fromString(in.next());
+				} catch (NoSuchElementException e) {
+					throw new GrammarException("Engines need a name: " + line);
+				} finally {
+					in.close();
+				}
 			} else {
 				try {
 					associativities.add(Associativity.fromString(first));
 					String operation;
 					try {
 						while ((operation = in.next()) != null) {
-							Operation op = Operation.fromString(operation);
-							checkOverlappingOperations(precedences, precedenceClass, op);
-							precedenceClass.add(op);
+							precedenceClass.add(pool.token(Operation.fromString(operation,
+									pool::symbol)));
 						}
 					} catch (NoSuchElementException e) {
 					}
@@ -155,23 +408,37 @@ public class Grammar {
 			}
 		}
 		fin.close();
-		return new Grammar(precedences, associativities, groupers);
+		long compile = System.nanoTime();
+		event.read = compile - start;
+		try {
+			return new Grammar(precedences, associativities, groupers, tokenClasses, engine);
+		} finally {
+			event.compile = System.nanoTime() - compile;
+		}
 	}
 
-	private static void checkOverlappingOperations(List<Set<Operation>> precedences,
-			Set<Operation> precedenceClass, Operation op) throws GrammarException {
-		for (Set<Operation> precClass : precedences)
-			for (Operation otherOp : precClass)
-				reportOverlappingOperations(op, otherOp);
-		for (Operation otherOp : precedenceClass)
-			reportOverlappingOperations(op, otherOp);
+	/**
+	 * @return The file the grammar was read from
+	 */
+	public String path() {
+		return path;
 	}
 
-	private static void reportOverlappingOperations(Operation op, Operation otherOp)
-			throws GrammarException {
-		if (op.symbol().indexOf(otherOp.symbol()) != -1
-				|| otherOp.symbol().indexOf(op.symbol()) != -1)
-			throw new GrammarException(String.format("Operations %s and %s overlap", otherOp, op));
+	/**
+	 * @return A number which is different for every grammar loaded, even
+	 *         from the same file
+	 */
+	public int loadId() {
+		return loadId;
+	}
+
+	/**
+	 * @return A hash of the precedences, groupers and token classes, which is
+	 *         the same for the same grammar in any process, and changes when
+	 *         any of them does
+	 */
+	public long fingerprint() {
+		return fingerprint;
 	}
 
 	public String toString() {
@@ -189,13 +456,93 @@ public class Grammar {
 			result.append(p.second);
 			result.append('\n');
 		}
+		for (TokenClass tokenClass : tokenClasses)
+			result.append(tokenClass).append('\n');
+		if (engine != ParseEngine.ShuntingYard)
+			result.append("engine ").append(engine).append('\n');
 		return result.toString();
 	}
 
+	/**
+	 * @return The precedence classes, tightest first
+	 */
+	public List<Set<Operation>> precedenceClasses() {
+		return Collections.unmodifiableList(precedences);
+	}
+
+	/**
+	 * @return The pairs of grouping symbols
+	 */
+	public List<Pair<OpenGroup, CloseGroup>> groupers() {
+		return Collections.unmodifiableList(groupers);
+	}
+
+	/**
+	 * @return The identifier classes, in order of priority
+	 */
+	public List<TokenClass> tokenClasses() {
+		return Collections.unmodifiableList(tokenClasses);
+	}
+
+	/**
+	 * @return The algorithm parsers use for this grammar, unless told
+	 *         otherwise
+	 */
+	public ParseEngine engine() {
+		return engine;
+	}
+
 	public OpenGroup openGroup(CloseGroup close) {
 		return this.closeToOpenTable.get(close);
 	}
 
+	/**
+	 * @return The closing grouper paired with open, or null
+	 */
+	public CloseGroup closeGroup(OpenGroup open) {
+		for (Pair<OpenGroup, CloseGroup> p : groupers)
+			if (p.first.equals(open))
+				return p.second;
+		return null;
+	}
+
+	/**
+	 * @return The precedence class of an operation, where 0 binds most
+	 *         tightly, or -1 if the token is not an operation of this grammar
+	 */
+	public int precedence(Token t) {
+		Integer precedence = t instanceof Operation ? this.precedenceTable.get(t) : null;
+		return precedence == null ? -1 : precedence;
+	}
+
+	/**
+	 * @return Whether the operation belongs to a right associative class
+	 */
+	public boolean isRightAssociative(Token t) {
+		return this.associativityTable.get(t) == Associativity.Right;
+	}
+
+	/**
+	 * Determines whether close is the closing token for open, where open is an
+	 * OpenGroup, CallOpen or TernaryOpen.
+	 */
+	public boolean closes(Token open, Token close) {
+		if (open instanceof CallOpen)
+			return ((CallOpen) open).close().equals(close);
+		else if (open instanceof TernaryOpen)
+			return close instanceof TernaryOperation
+					&& ((TernaryOperation) close).open().equals(open);
+		else
+			return close instanceof CloseGroup && open.equals(openGroup((CloseGroup) close));
+	}
+
+	/**
+	 * Determines whether separator may separate arguments of open
+	 */
+	public boolean separates(Token open, Token separator) {
+		return open instanceof CallOpen && separator.equals(((CallOpen) open).separator());
+	}
+
 	/**
 	 * @return Returns the set of operation and group symbols in this grammar
 	 */
@@ -203,6 +550,78 @@ public class Grammar {
 		return specialSymbols;
 	}
 
+	/**
+	 * @return The trie of operation and group symbols in this grammar
+	 */
+	public SymbolTrie symbolTrie() {
+		return symbolTrie;
+	}
+
+	/**
+	 * @return What the grammar is made of, and the fast paths chosen for it
+	 */
+	public GrammarProfile profile() {
+		return profile;
+	}
+
+	/**
+	 * @return The table of single character symbols, or null unless the
+	 *         profile uses FastPath.CharTable
+	 */
+	public CharSymbols charSymbols() {
+		return charSymbols;
+	}
+
+	/**
+	 * @return Whether identifiers are defined by token classes and scanned by
+	 *         the DFA
+	 */
+	public boolean hasTokenClasses() {
+		return this.lexer != null;
+	}
+
+	/**
+	 * @return The combined automaton for special symbols and token classes, or
+	 *         null if there are no token classes
+	 */
+	public DFA lexer() {
+		return this.lexer;
+	}
+
+	/**
+	 * Builds the token for a match of the lexer
+	 * 
+	 * @param rule
+	 *            - The rule of the lexer which matched input[start, end)
+	 * @param operandExpected
+	 *            - Whether the previous token expects an operand
+	 */
+	public Token lexerToken(int rule, String input, int start, int end, int index,
+			boolean operandExpected) {
+		return lexerToken(rule, input, start, end, index, operandExpected, null);
+	}
+
+	/**
+	 * Builds the token for a match of the lexer, interning identifiers in
+	 * symbols as TokenClass.build does
+	 */
+	public Token lexerToken(int rule, String input, int start, int end, int index,
+			boolean operandExpected, SymbolTable symbols) {
+		if (rule < this.lexerSymbols.size())
+			return (operandExpected ? this.lexerPrefixTokens : this.lexerInfixTokens)[rule]
+					.cloneWithIndex(index);
+		else
+			return this.tokenClasses.get(rule - this.lexerSymbols.size()).build(input, start, end,
+					index, symbols);
+	}
+
+	/**
+	 * @return The operation or group token whose toString() is name, or null
+	 */
+	public Token tokenNamed(String name) {
+		return this.nameTable.get(name);
+	}
+
 	/**
 	 * Determines if the string is an operation symbol in this grammar
 	 */
@@ -211,20 +630,14 @@ public class Grammar {
 	}
 
 	/**
-	 * Gets an Operation object given a symbol
+	 * Gets an Operation object given a symbol. If the symbol has both a prefix
+	 * and an infix meaning, the infix one is returned.
 	 */
 	public Token getToken(String s) {
-		if (this.symbolTable.containsKey(s))
-			return this.symbolTable.get(s);
-		else if (this.openGroupTable.containsKey(s))
-			return this.openGroupTable.get(s);
-		else if (this.closeGroupTable.containsKey(s))
-			return this.closeGroupTable.get(s);
-		else {
+		Token t = this.symbolTrie.get(s, false);
+		if (t == null)
 			System.err.println("OH GOD NO");
-			return null;
-		}
-
+		return t;
 	}
 
 	/**
@@ -244,33 +657,32 @@ public class Grammar {
 	 *             rules
 	 */
 	public boolean leftIsTighter(Token left, Token right) throws GrammarException {
+		int leftOrdinal = ordinal(left);
+		int rightOrdinal = ordinal(right);
+		if (leftOrdinal < 0 || rightOrdinal < 0)
+			throw new GrammarException(String.format(
+					"The following tokens do not have precedence rules: <%s> <%s>.", left, right));
+		return leftIsTighter(leftOrdinal, rightOrdinal);
+	}
 
-		Integer leftPrecedence = this.precedenceTable.get(left);
-		Integer rightPrecedence = this.precedenceTable.get(right);
-
-		String error = String.format(
-				"The following tokens do not have precedence rules: <%s> <%s>.", left, right);
-
-		if (leftPrecedence == null || rightPrecedence == null)
-			throw new GrammarException(error);
-
-		// Handle equal precedence
-		if (leftPrecedence == rightPrecedence) {
-			Associativity assoc = this.associativityTable.get(left);
-			if (assoc == null)
-				throw new GrammarException(error);
-			switch (assoc) {
-			case Left:
-				return true;
-			case Right:
-				return false;
-			default:
-				throw new Error("Associativity Enumeration is broken");
-			}
-		}
-		// Lower precedence is tighter precedence
-		else
-			return leftPrecedence < rightPrecedence;
+	/**
+	 * @return The precedence and associativity of the token packed into an
+	 *         int, for leftIsTighter(int, int), or -1 if the token has no
+	 *         precedence rules
+	 */
+	public int ordinal(Token t) {
+		Integer ordinal = this.ordinalTable.get(t);
+		return ordinal == null ? -1 : ordinal;
+	}
 
+	/**
+	 * Compares two tokens by their ordinals, as leftIsTighter(Token, Token)
+	 */
+	public static boolean leftIsTighter(int leftOrdinal, int rightOrdinal) {
+		// Equal precedence is broken by the associativity of the left token
+		if (leftOrdinal >> 1 == rightOrdinal >> 1)
+			return (leftOrdinal & 1) == 0;
+		// Lower precedence is tighter precedence
+		return leftOrdinal < rightOrdinal;
 	}
 }
@@ -0,0 +1,163 @@
+package parsop.grammar;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import parsop.grammar.tokens.CloseGroup;
+import parsop.grammar.tokens.OpenGroup;
+import parsop.grammar.tokens.Operation;
+import parsop.util.Pair;
+
+/**
+ * What a Grammar is made of, found when it is constructed, and the FastPaths
+ * this allows.
+ *
+ * Grammars fall in three kinds: Binary ones have only binary operations and
+ * groups, Unary ones add prefix or postfix operations, and Rich ones have
+ * calls or ternary operations. The fast paths depend on finer facts, such as
+ * the length of the symbols, and are chosen independently of the kind.
+ *
+ * @author aozdemir
+ *
+ */
+public class GrammarProfile {
+
+	public enum Kind {
+		Binary, Unary, Rich
+	}
+
+	int binary;
+	int prefix;
+	int postfix;
+	int calls;
+	int ternaries;
+	int groups;
+	int leftClasses;
+	int rightClasses;
+	int maxSymbolLength;
+	boolean asciiSymbols;
+	boolean ambiguousSymbols;
+	boolean tokenClasses;
+	Set<FastPath> fastPaths;
+
+	GrammarProfile(List<Set<Operation>> precedences, List<Associativity> associativities,
+			List<Pair<OpenGroup, CloseGroup>> groupers, Set<String> symbols, SymbolTrie trie,
+			boolean tokenClasses) {
+		for (Set<Operation> precedenceClass : precedences)
+			for (Operation o : precedenceClass)
+				switch (o.type()) {
+				case UnaryOperation:
+					prefix++;
+					break;
+				case PostfixOperation:
+					postfix++;
+					break;
+				case CallOpen:
+					calls++;
+					break;
+				case TernaryOperation:
+					ternaries++;
+					break;
+				default:
+					binary++;
+				}
+		for (Associativity associativity : associativities)
+			if (associativity == Associativity.Left)
+				leftClasses++;
+			else
+				rightClasses++;
+		this.groups = groupers.size();
+		this.tokenClasses = tokenClasses;
+		this.asciiSymbols = true;
+		for (String symbol : symbols) {
+			maxSymbolLength = Math.max(maxSymbolLength, symbol.length());
+			for (int i = 0; i < symbol.length(); i++)
+				asciiSymbols &= symbol.charAt(i) < 128;
+			// A symbol with two meanings answers differently to the two
+			ambiguousSymbols |= trie.get(symbol, true) != trie.get(symbol, false);
+		}
+
+		this.fastPaths = EnumSet.noneOf(FastPath.class);
+		if (maxSymbolLength <= 1 && asciiSymbols && !tokenClasses)
+			fastPaths.add(FastPath.CharTable);
+		if (!ambiguousSymbols)
+			fastPaths.add(FastPath.NoOperandTracking);
+		if (groups <= 1 && calls == 0 && ternaries == 0)
+			fastPaths.add(FastPath.SimpleGroupers);
+	}
+
+	public Kind kind() {
+		if (calls > 0 || ternaries > 0)
+			return Kind.Rich;
+		if (prefix > 0 || postfix > 0)
+			return Kind.Unary;
+		return Kind.Binary;
+	}
+
+	/**
+	 * @return The fast paths which parsers use for the grammar, unless told
+	 *         otherwise
+	 */
+	public Set<FastPath> fastPaths() {
+		return Collections.unmodifiableSet(fastPaths);
+	}
+
+	public boolean uses(FastPath path) {
+		return fastPaths.contains(path);
+	}
+
+	public int binaryOperations() {
+		return binary;
+	}
+
+	public int prefixOperations() {
+		return prefix;
+	}
+
+	public int postfixOperations() {
+		return postfix;
+	}
+
+	public int calls() {
+		return calls;
+	}
+
+	public int ternaryOperations() {
+		return ternaries;
+	}
+
+	public int groups() {
+		return groups;
+	}
+
+	/**
+	 * @return Whether every precedence class associates to the left
+	 */
+	public boolean leftAssociative() {
+		return rightClasses == 0;
+	}
+
+	/**
+	 * @return The length of the longest special symbol
+	 */
+	public int maxSymbolLength() {
+		return maxSymbolLength;
+	}
+
+	/**
+	 * @return Like "Binary: 4 binary, 0 prefix, 0 postfix, 0 calls, 0
+	 *         ternary, 1 groups; 2 left and 0 right classes; symbols of up to
+	 *         1 ASCII chars; fast paths [CharTable, NoOperandTracking,
+	 *         SimpleGroupers]"
+	 */
+	public String toString() {
+		return String.format("%s: %d binary, %d prefix, %d postfix, %d calls, %d ternary, "
+				+ "%d groups; %d left and %d right classes; symbols of up to %d %s chars%s%s; "
+				+ "fast paths %s", kind(), binary, prefix, postfix, calls, ternaries, groups,
+				leftClasses, rightClasses, maxSymbolLength, asciiSymbols ? "ASCII" : "Unicode",
+				ambiguousSymbols ? ", some with two meanings" : "",
+				tokenClasses ? ", token classes" : "", fastPaths);
+	}
+}
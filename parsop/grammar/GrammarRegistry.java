@@ -0,0 +1,195 @@
+package parsop.grammar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the current version of several grammar files, and reloads them when
+ * they change on disk.
+ *
+ * Each registered file gets a dense id, which stays the same across reloads,
+ * so that a parse can be dispatched to its grammar by an array lookup. All
+ * grammars are loaded with one TokenPool, so dialects share their symbol
+ * strings and token objects.
+ *
+ * Each file is watched with a WatchService. When it changes, the new version
+ * is read and compiled on the watcher thread, and then swapped in atomically.
+ * If the new version does not compile, the old one stays in place. Parsers
+ * obtain the grammar through a Supplier, which they query once at the start
+ * of each parse, so parses in flight finish on the version they started with
+ * and new parses never wait for a reload.
+ *
+ * @author aozdemir
+ *
+ */
+public class GrammarRegistry implements Closeable {
+
+	private Map<Path, AtomicReference<Grammar>> grammars;
+	private Map<Path, Integer> ids;
+	private volatile AtomicReference<Grammar>[] byId;
+	private TokenPool pool;
+	private Set<Path> watchedDirectories;
+	private WatchService watcher;
+	private Thread watcherThread;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public GrammarRegistry() throws IOException {
+		this.grammars = new ConcurrentHashMap<Path, AtomicReference<Grammar>>();
+		this.ids = new ConcurrentHashMap<Path, Integer>();
+		this.byId = new AtomicReference[0];
+		this.pool = new TokenPool();
+		this.watchedDirectories = new HashSet<Path>();
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.watcherThread = new Thread(this::watch, "grammar-watcher");
+		this.watcherThread.setDaemon(true);
+		this.watcherThread.start();
+	}
+
+	/**
+	 * Loads the grammar and starts watching its file
+	 *
+	 * @return A supplier of the current version of the grammar
+	 * @throws GrammarException
+	 *             if the file is improperly formatted.
+	 * @throws IOException
+	 *             if the file cannot be read or watched.
+	 */
+	public synchronized Supplier<Grammar> register(String filepath) throws GrammarException,
+			IOException {
+		Path path = normalize(filepath);
+		AtomicReference<Grammar> current = grammars.get(path);
+		if (current == null) {
+			current = new AtomicReference<Grammar>(Grammar.fromFile(path.toString(), pool));
+			watchDirectory(path.getParent());
+			AtomicReference<Grammar>[] grown = Arrays.copyOf(byId, byId.length + 1);
+			grown[byId.length] = current;
+			ids.put(path, byId.length);
+			grammars.put(path, current);
+			byId = grown;
+		}
+		return current::get;
+	}
+
+	/**
+	 * @return The id of a registered grammar, or -1 if it is not registered
+	 */
+	public int id(String filepath) {
+		Integer id = ids.get(normalize(filepath));
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return The current version of the grammar with the id
+	 */
+	public Grammar get(int id) {
+		return byId[id].get();
+	}
+
+	/**
+	 * @return A supplier of the current version of the grammar with the id
+	 */
+	public Supplier<Grammar> source(int id) {
+		return byId[id]::get;
+	}
+
+	/**
+	 * @return The number of registered grammars. Their ids are 0 up to this.
+	 */
+	public int size() {
+		return byId.length;
+	}
+
+	/**
+	 * @return A summary of the symbols and tokens shared between the grammars
+	 */
+	public String memoryReport() {
+		return pool.report();
+	}
+
+	/**
+	 * @return The current version of a registered grammar, or null if it is not
+	 *         registered
+	 */
+	public Grammar get(String filepath) {
+		AtomicReference<Grammar> current = grammars.get(normalize(filepath));
+		return current == null ? null : current.get();
+	}
+
+	/**
+	 * Reads and compiles the grammar again, replacing the current version if
+	 * that succeeds
+	 *
+	 * @return Whether the grammar was replaced
+	 */
+	public boolean reload(String filepath) {
+		return reload(normalize(filepath));
+	}
+
+	private boolean reload(Path path) {
+		AtomicReference<Grammar> current = grammars.get(path);
+		if (current == null)
+			return false;
+		try {
+			current.set(Grammar.fromFile(path.toString(), pool));
+			return true;
+		} catch (GrammarException | IOException | RuntimeException e) {
+			System.err.println("Keeping the previous version of " + path);
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private synchronized void watchDirectory(Path directory) throws IOException {
+		if (watchedDirectories.add(directory))
+			directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY);
+	}
+
+	private void watch() {
+		try {
+			while (true) {
+				WatchKey key = watcher.take();
+				Path directory = (Path) key.watchable();
+				Set<Path> changed = new HashSet<Path>();
+				for (WatchEvent<?> event : key.pollEvents())
+					if (event.kind() != StandardWatchEventKinds.OVERFLOW)
+						changed.add(directory.resolve((Path) event.context()));
+					else
+						changed.addAll(grammars.keySet());
+				key.reset();
+				for (Path path : changed)
+					reload(path);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Closed
+		}
+	}
+
+	private static Path normalize(String filepath) {
+		return Paths.get(filepath).toAbsolutePath().normalize();
+	}
+
+	/**
+	 * Stops watching. The registered grammars stay available.
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+		watcherThread.interrupt();
+	}
+}
@@ -0,0 +1,36 @@
+package parsop.grammar;
+
+/**
+ * The algorithms a Parser can use. Both produce the same trees and report the
+ * same errors.
+ */
+public enum ParseEngine {
+	/**
+	 * Translates the input to reverse Polish notation with two stacks, and
+	 * then builds the tree from it
+	 */
+	ShuntingYard,
+	/**
+	 * Builds the tree directly by precedence climbing, with a stack of frames
+	 * for the pending operations
+	 */
+	Pratt;
+
+	public static ParseEngine fromString(String encoding) throws GrammarException {
+		encoding = encoding.toLowerCase();
+		if (encoding.equals("shunting")) return ShuntingYard;
+		else if (encoding.equals("pratt")) return Pratt;
+		else throw new GrammarException("Encoding of engine not recognized: " + encoding);
+	}
+
+	public String toString() {
+		switch (this) {
+		case ShuntingYard:
+			return "shunting";
+		case Pratt:
+			return "pratt";
+		default:
+			throw new Error("ParseEngine Enumeration is broken");
+		}
+	}
+}
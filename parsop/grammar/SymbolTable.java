@@ -0,0 +1,171 @@
+package parsop.grammar;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Interns identifier names as dense int ids, 0, 1, 2 and so on in the order
+ * they are first seen, so that what comes after parsing can keep per-name data
+ * in arrays indexed by id instead of maps keyed by string.
+ *
+ * Lookups probe an open-addressing table straight from the input, comparing
+ * characters in place, so a name seen before costs no allocation. Only a new
+ * name takes a lock and allocates its String. Any number of threads, such as
+ * the workers of a batch, may share one table.
+ *
+ * Readers take no lock: a new name's string is written before the volatile
+ * write of its slot, and a table is replaced as a whole when it grows, so a
+ * reader of a full table finds the name in the new table under the lock.
+ *
+ * @author aozdemir
+ *
+ */
+public class SymbolTable {
+
+	private static class Table {
+		/**
+		 * id + 1 of the name in each slot, or 0 if the slot is empty
+		 */
+		final AtomicIntegerArray slots;
+		final String[] names;
+		final int mask;
+
+		Table(int capacity) {
+			this.names = new String[capacity];
+			this.slots = new AtomicIntegerArray(2 * capacity);
+			this.mask = 2 * capacity - 1;
+		}
+	}
+
+	private volatile Table table;
+	private volatile int size;
+
+	public SymbolTable() {
+		this(1024);
+	}
+
+	/**
+	 * @param capacity
+	 *            - The number of names to hold before growing, rounded up to
+	 *            a power of two
+	 */
+	public SymbolTable(int capacity) {
+		this.table = new Table(Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1);
+	}
+
+	/**
+	 * @return The id of input[start, end), assigning the next id if the name
+	 *         is new
+	 */
+	public int intern(CharSequence input, int start, int end) {
+		int hash = hash(input, start, end);
+		int id = find(table, input, start, end, hash);
+		return id >= 0 ? id : add(input, start, end, hash);
+	}
+
+	public int intern(String name) {
+		return intern(name, 0, name.length());
+	}
+
+	/**
+	 * @return The id of input[start, end), or -1 if it has none
+	 */
+	public int lookup(CharSequence input, int start, int end) {
+		int hash = hash(input, start, end);
+		int id = find(table, input, start, end, hash);
+		if (id >= 0)
+			return id;
+		// It may have been added to a newer table
+		synchronized (this) {
+			return find(table, input, start, end, hash);
+		}
+	}
+
+	/**
+	 * @return The name with the id
+	 */
+	public String name(int id) {
+		if (id < 0 || id >= size)
+			throw new IndexOutOfBoundsException("No symbol " + id);
+		return table.names[id];
+	}
+
+	/**
+	 * @return The number of names, which is one more than the largest id
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static int find(Table table, CharSequence input, int start, int end, int hash) {
+		for (int slot = hash & table.mask;; slot = (slot + 1) & table.mask) {
+			int entry = table.slots.get(slot);
+			if (entry == 0)
+				return -1;
+			if (matches(table.names[entry - 1], input, start, end))
+				return entry - 1;
+		}
+	}
+
+	private synchronized int add(CharSequence input, int start, int end, int hash) {
+		Table current = table;
+		int id = find(current, input, start, end, hash);
+		if (id >= 0)
+			return id;
+		id = size;
+		if (id == current.names.length)
+			current = grow(current);
+		String name = input.subSequence(start, end).toString();
+		current.names[id] = name;
+		size = id + 1;
+		insert(current, id, hash);
+		return id;
+	}
+
+	/**
+	 * Copies the names into a table twice as large and publishes it
+	 */
+	private Table grow(Table old) {
+		Table bigger = new Table(old.names.length * 2);
+		System.arraycopy(old.names, 0, bigger.names, 0, old.names.length);
+		for (int id = 0; id < old.names.length; id++) {
+			String name = bigger.names[id];
+			insert(bigger, id, hash(name, 0, name.length()));
+		}
+		table = bigger;
+		return bigger;
+	}
+
+	private static void insert(Table table, int id, int hash) {
+		int slot = hash & table.mask;
+		while (table.slots.get(slot) != 0)
+			slot = (slot + 1) & table.mask;
+		table.slots.set(slot, id + 1);
+	}
+
+	private static boolean matches(String name, CharSequence input, int start, int end) {
+		if (name.length() != end - start)
+			return false;
+		for (int i = 0; i < name.length(); i++)
+			if (name.charAt(i) != input.charAt(start + i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * String.hashCode() of input[start, end), with its bits spread so that
+	 * names differing in their last characters do not crowd one run of slots
+	 */
+	private static int hash(CharSequence input, int start, int end) {
+		int h = 0;
+		for (int i = start; i < end; i++)
+			h = 31 * h + input.charAt(i);
+		return h ^ (h >>> 16) ^ (h >>> 7);
+	}
+
+	public String toString() {
+		int n = size;
+		return String.format("%d symbols %s", n, Arrays.toString(Arrays.copyOf(table.names, Math
+				.min(n, 16))));
+	}
+}
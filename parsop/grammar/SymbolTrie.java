@@ -0,0 +1,119 @@
+package parsop.grammar;
+
+import java.util.Arrays;
+
+import parsop.grammar.tokens.Token;
+
+/**
+ * A trie of the special symbols of a grammar.
+ * 
+ * Symbols may overlap freely (such as < and <=), since input is matched
+ * longest first. A symbol may have two meanings: one where an operand is
+ * expected (a prefix operation or open group, such as unary -) and one where
+ * an operator is expected (such as binary - or a call's open parenthesis).
+ * Declaring a symbol twice in the same position, however, is ambiguous and
+ * rejected when the symbol is inserted.
+ * 
+ * @author aozdemir
+ *
+ */
+public class SymbolTrie {
+
+	private char[] keys;
+	private SymbolTrie[] children;
+	private int size;
+	private Token prefixToken;
+	private Token infixToken;
+
+	public SymbolTrie() {
+		this.keys = new char[0];
+		this.children = new SymbolTrie[0];
+		this.size = 0;
+	}
+
+	/**
+	 * Adds the symbol of the token to the trie
+	 * 
+	 * @throws GrammarException
+	 *             - if the symbol is empty, contains whitespace, or already
+	 *             belongs to a different token in the same position
+	 */
+	public void insert(Token t) throws GrammarException {
+		String symbol = t.symbol();
+		if (symbol.isEmpty())
+			throw new GrammarException(String.format("Token <%s> has an empty symbol", t));
+		SymbolTrie node = this;
+		for (int i = 0; i < symbol.length(); i++) {
+			char c = symbol.charAt(i);
+			if (Character.isWhitespace(c))
+				throw new GrammarException(String.format("Symbol <%s> contains whitespace", symbol));
+			node = node.childOrCreate(c);
+		}
+		boolean prefix = t.type().beginsOperand();
+		Token existing = prefix ? node.prefixToken : node.infixToken;
+		if (existing != null && !existing.equals(t))
+			throw new GrammarException(String.format("Symbol <%s> is ambiguous: both %s and %s",
+					symbol, existing, t));
+		if (prefix)
+			node.prefixToken = t;
+		else
+			node.infixToken = t;
+	}
+
+	/**
+	 * @param operandExpected
+	 *            - Whether the previous token expects an operand to follow.
+	 *            Decides between the two meanings of a symbol, if it has both.
+	 * @return The token with the longest symbol that starts input at from, or
+	 *         null if there is none
+	 */
+	public Token longestMatch(CharSequence input, int from, boolean operandExpected) {
+		Token match = null;
+		SymbolTrie node = this;
+		for (int i = from; i < input.length() && node != null; i++) {
+			node = node.child(input.charAt(i));
+			if (node != null && node.token(operandExpected) != null)
+				match = node.token(operandExpected);
+		}
+		return match;
+	}
+
+	/**
+	 * @return The token whose symbol is exactly s, or null if there is none
+	 */
+	public Token get(String s, boolean operandExpected) {
+		SymbolTrie node = this;
+		for (int i = 0; i < s.length() && node != null; i++)
+			node = node.child(s.charAt(i));
+		return node == null ? null : node.token(operandExpected);
+	}
+
+	private Token token(boolean operandExpected) {
+		if (operandExpected)
+			return prefixToken != null ? prefixToken : infixToken;
+		else
+			return infixToken != null ? infixToken : prefixToken;
+	}
+
+	private SymbolTrie child(char c) {
+		int i = Arrays.binarySearch(keys, 0, size, c);
+		return i >= 0 ? children[i] : null;
+	}
+
+	private SymbolTrie childOrCreate(char c) {
+		int i = Arrays.binarySearch(keys, 0, size, c);
+		if (i >= 0)
+			return children[i];
+		i = -i - 1;
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, Math.max(2, size * 2));
+			children = Arrays.copyOf(children, keys.length);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(children, i, children, i + 1, size - i);
+		keys[i] = c;
+		children[i] = new SymbolTrie();
+		size++;
+		return children[i];
+	}
+}
@@ -0,0 +1,88 @@
+package parsop.grammar;
+
+import java.math.BigInteger;
+
+import parsop.grammar.tokens.Identifier;
+import parsop.grammar.tokens.NumericLiteral;
+import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.Token;
+
+/**
+ * A named class of identifiers, such as names or numbers, defined by a regular
+ * expression in the grammar file.
+ *
+ * @author aozdemir
+ *
+ */
+public class TokenClass {
+
+	String name;
+	String regex;
+	Decoding decoding;
+
+	TokenClass(String name, String regex, Decoding decoding) {
+		this.name = name;
+		this.regex = regex;
+		this.decoding = decoding;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public String regex() {
+		return regex;
+	}
+
+	/**
+	 * Builds the token for the match input[start, end), decoding numeric
+	 * literals. A match which the decoding cannot read, such as "0x1f" for an
+	 * integer class, becomes an Invalid token, which the SyntaxChecker
+	 * rejects.
+	 */
+	public Token build(String input, int start, int end, int index) {
+		return build(input, start, end, index, null);
+	}
+
+	/**
+	 * Builds the token like build(input, start, end, index), interning the
+	 * names of identifiers which are not numeric literals in symbols. Their
+	 * symbol is the interned string, so a name seen before allocates nothing
+	 * but the token.
+	 *
+	 * @param symbols
+	 *            - May be null, to intern nothing
+	 */
+	public Token build(String input, int start, int end, int index, SymbolTable symbols) {
+		if (decoding == Decoding.None && symbols != null) {
+			int id = symbols.intern(input, start, end);
+			return new Identifier(symbols.name(id), name, index, id);
+		}
+		String symbol = input.substring(start, end);
+		try {
+			switch (decoding) {
+			case Integer:
+				try {
+					return new NumericLiteral(symbol, name, Long.parseLong(input, start, end, 10),
+							index);
+				} catch (NumberFormatException e) {
+					// Too large for a long, keep the precision we can. BigInteger
+					// reads only decimal digits, unlike Double.parseDouble
+					return new NumericLiteral(symbol, name, new BigInteger(symbol).doubleValue(),
+							index);
+				}
+			case Real:
+				return new NumericLiteral(symbol, name, Double.parseDouble(symbol), index);
+			default:
+				return new Identifier(symbol, name, index);
+			}
+		} catch (NumberFormatException e) {
+			return new Operation(symbol, 0).cloneWithIndex(index);
+		}
+	}
+
+	public String toString() {
+		String result = String.format("token %s %s", name, regex);
+		return decoding == Decoding.None ? result : result + ' ' + decoding;
+	}
+}
@@ -0,0 +1,81 @@
+package parsop.grammar;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import parsop.grammar.tokens.Token;
+
+/**
+ * Interns the symbol strings and token objects of grammars, so that grammars
+ * loaded with the same pool share one instance of each, such as the + that
+ * most dialects declare.
+ * 
+ * Pooled tokens are the prototypes kept by a Grammar, which are never
+ * modified; the tokenizer clones them for each occurrence.
+ * 
+ * @author aozdemir
+ *
+ */
+public class TokenPool {
+
+	/**
+	 * Estimated shallow size of a token object, in bytes
+	 */
+	private static final int TOKEN_BYTES = 24;
+
+	/**
+	 * Estimated size of a String object and its array header, in bytes
+	 */
+	private static final int STRING_BYTES = 40;
+
+	private Map<String, String> symbols;
+	private Map<Token, Token> tokens;
+	private AtomicLong symbolRequests;
+	private AtomicLong tokenRequests;
+	private AtomicLong bytesSaved;
+
+	public TokenPool() {
+		this.symbols = new ConcurrentHashMap<String, String>();
+		this.tokens = new ConcurrentHashMap<Token, Token>();
+		this.symbolRequests = new AtomicLong();
+		this.tokenRequests = new AtomicLong();
+		this.bytesSaved = new AtomicLong();
+	}
+
+	/**
+	 * @return The pooled string equal to s
+	 */
+	public String symbol(String s) {
+		symbolRequests.incrementAndGet();
+		String pooled = symbols.putIfAbsent(s, s);
+		if (pooled == null)
+			return s;
+		bytesSaved.addAndGet(STRING_BYTES + s.length());
+		return pooled;
+	}
+
+	/**
+	 * @return The pooled token equal to t
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Token> T token(T t) {
+		tokenRequests.incrementAndGet();
+		Token pooled = tokens.putIfAbsent(t, t);
+		if (pooled == null || pooled.getClass() != t.getClass())
+			return t;
+		bytesSaved.addAndGet(TOKEN_BYTES);
+		return (T) pooled;
+	}
+
+	/**
+	 * @return A summary of how much sharing the pool achieved, compared to
+	 *         loading each grammar independently
+	 */
+	public String report() {
+		return String.format("Symbols: %d distinct of %d requested\n"
+				+ "Tokens : %d distinct of %d requested\n"
+				+ "Estimated memory saved: %d bytes", symbols.size(), symbolRequests.get(),
+				tokens.size(), tokenRequests.get(), bytesSaved.get());
+	}
+}
@@ -0,0 +1,282 @@
+package parsop.grammar.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import parsop.grammar.GrammarException;
+
+/**
+ * A deterministic automaton which recognizes several lexical rules at once.
+ *
+ * Rules are added as exact literals or as regular expressions, and are
+ * numbered in the order they are added. When the automaton is run, it reports
+ * the longest match starting at a position. If several rules match that
+ * longest prefix, the rule added first wins.
+ *
+ * The input alphabet is partitioned into classes of characters which no rule
+ * distinguishes, so that the transition table is a flat int[] indexed by
+ * (state, class).
+ *
+ * @author aozdemir
+ *
+ */
+public class DFA {
+
+	private static final int ASCII = 128;
+
+	private char[] classStarts;
+	private int[] asciiClasses;
+	private int classCount;
+	private int[] transitions;
+	private int[] accepting;
+
+	private DFA(char[] classStarts, int[] transitions, int[] accepting) {
+		this.classStarts = classStarts;
+		this.classCount = classStarts.length;
+		this.transitions = transitions;
+		this.accepting = accepting;
+		this.asciiClasses = new int[ASCII];
+		for (char c = 0; c < ASCII; c++)
+			asciiClasses[c] = searchClass(c);
+	}
+
+	/**
+	 * Finds the longest match starting at from.
+	 *
+	 * @return -1 if no rule matches, otherwise the rule and end index, packed.
+	 *         Use rule() and end() to unpack.
+	 */
+	public long match(CharSequence input, int from) {
+		int state = 0;
+		int rule = -1;
+		int end = from;
+		for (int i = from; i < input.length(); i++) {
+			state = transitions[state * classCount + classOf(input.charAt(i))];
+			if (state < 0)
+				break;
+			if (accepting[state] >= 0) {
+				rule = accepting[state];
+				end = i + 1;
+			}
+		}
+		return rule < 0 ? -1 : ((long) rule << 32) | end;
+	}
+
+	/**
+	 * Picks a random string which the automaton accepts, made of printable
+	 * ASCII characters other than space, such as to generate identifiers.
+	 *
+	 * @param stop
+	 *            - The chance of stopping at each accepting state reached
+	 * @param maxLength
+	 *            - The length after which the walk stops at the first
+	 *            accepting state
+	 * @return null if no such string was found
+	 */
+	public String sample(Random random, double stop, int maxLength) {
+		boolean[] live = liveStates();
+		int[] choices = new int[ASCII];
+		StringBuilder result = new StringBuilder();
+		int state = 0;
+		while (result.length() <= 4 * maxLength) {
+			boolean accepts = accepting[state] >= 0;
+			if (accepts && (result.length() >= maxLength || random.nextDouble() < stop))
+				return result.toString();
+			int n = 0;
+			for (char c = '!'; c < ASCII - 1; c++) {
+				int next = transitions[state * classCount + asciiClasses[c]];
+				if (next >= 0 && live[next])
+					choices[n++] = c;
+			}
+			if (n == 0)
+				return accepts ? result.toString() : null;
+			char c = (char) choices[random.nextInt(n)];
+			result.append(c);
+			state = transitions[state * classCount + asciiClasses[c]];
+		}
+		return null;
+	}
+
+	/**
+	 * @return Which states can reach an accepting state
+	 */
+	private boolean[] liveStates() {
+		boolean[] live = new boolean[accepting.length];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int s = 0; s < live.length; s++) {
+				if (live[s])
+					continue;
+				boolean reaches = accepting[s] >= 0;
+				for (int c = 0; c < classCount && !reaches; c++) {
+					int next = transitions[s * classCount + c];
+					reaches = next >= 0 && live[next];
+				}
+				if (reaches)
+					live[s] = changed = true;
+			}
+		}
+		return live;
+	}
+
+	public static int rule(long match) {
+		return (int) (match >>> 32);
+	}
+
+	public static int end(long match) {
+		return (int) match;
+	}
+
+	/**
+	 * @return The number of states in this automaton
+	 */
+	public int size() {
+		return accepting.length;
+	}
+
+	private int classOf(char c) {
+		return c < ASCII ? asciiClasses[c] : searchClass(c);
+	}
+
+	private int searchClass(char c) {
+		int index = Arrays.binarySearch(classStarts, c);
+		return index >= 0 ? index : -index - 2;
+	}
+
+	public static class Builder {
+
+		private NFA nfa;
+		private int start;
+		private int rules;
+
+		public Builder() {
+			this.nfa = new NFA();
+			this.start = nfa.newState();
+			this.rules = 0;
+		}
+
+		/**
+		 * Adds a rule matching exactly the given text
+		 *
+		 * @return The number of the rule
+		 */
+		public int addLiteral(String text) {
+			return addFragment(Regex.literal(text, nfa));
+		}
+
+		/**
+		 * Adds a rule matching the regular expression
+		 *
+		 * @return The number of the rule
+		 * @throws GrammarException
+		 *             if the expression is malformed
+		 */
+		public int addPattern(String regex) throws GrammarException {
+			return addFragment(Regex.compile(regex, nfa));
+		}
+
+		private int addFragment(int[] fragment) {
+			nfa.addEpsilon(start, fragment[0]);
+			nfa.accept(fragment[1], rules);
+			return rules++;
+		}
+
+		/**
+		 * Runs the subset construction
+		 */
+		public DFA build() {
+			char[] classStarts = classStarts();
+			Map<BitSet, Integer> stateIds = new HashMap<BitSet, Integer>();
+			List<BitSet> states = new ArrayList<BitSet>();
+			BitSet initial = new BitSet();
+			initial.set(start);
+			closure(initial);
+			stateIds.put(initial, 0);
+			states.add(initial);
+
+			int classCount = classStarts.length;
+			int[] transitions = new int[16 * classCount];
+			for (int s = 0; s < states.size(); s++) {
+				if (transitions.length < (s + 1) * classCount)
+					transitions = Arrays.copyOf(transitions, transitions.length * 2);
+				BitSet current = states.get(s);
+				for (int c = 0; c < classCount; c++) {
+					BitSet next = new BitSet();
+					for (int n = current.nextSetBit(0); n >= 0; n = current.nextSetBit(n + 1)) {
+						int target = nfa.step(n, classStarts[c]);
+						if (target >= 0)
+							next.set(target);
+					}
+					if (next.isEmpty()) {
+						transitions[s * classCount + c] = -1;
+						continue;
+					}
+					closure(next);
+					Integer id = stateIds.get(next);
+					if (id == null) {
+						id = states.size();
+						stateIds.put(next, id);
+						states.add(next);
+					}
+					transitions[s * classCount + c] = id;
+				}
+			}
+
+			int[] accepting = new int[states.size()];
+			for (int s = 0; s < states.size(); s++) {
+				accepting[s] = -1;
+				BitSet state = states.get(s);
+				for (int n = state.nextSetBit(0); n >= 0; n = state.nextSetBit(n + 1)) {
+					int rule = nfa.accepting.get(n);
+					if (rule >= 0 && (accepting[s] < 0 || rule < accepting[s]))
+						accepting[s] = rule;
+				}
+			}
+			// The empty match is never a token
+			accepting[0] = -1;
+			return new DFA(classStarts, Arrays.copyOf(transitions, states.size() * classCount),
+					accepting);
+		}
+
+		private void closure(BitSet set) {
+			List<Integer> work = new ArrayList<Integer>();
+			for (int n = set.nextSetBit(0); n >= 0; n = set.nextSetBit(n + 1))
+				work.add(n);
+			while (!work.isEmpty()) {
+				int n = work.remove(work.size() - 1);
+				for (int target : nfa.epsilons.get(n))
+					if (!set.get(target)) {
+						set.set(target);
+						work.add(target);
+					}
+			}
+		}
+
+		/**
+		 * Splits the alphabet at every range boundary used by a transition, so
+		 * that all chars in a class behave identically.
+		 */
+		private char[] classStarts() {
+			BitSet boundaries = new BitSet(Character.MAX_VALUE + 1);
+			boundaries.set(0);
+			for (char[] ranges : nfa.charSets)
+				if (ranges != null)
+					for (int i = 0; i < ranges.length; i += 2) {
+						boundaries.set(ranges[i]);
+						if (ranges[i + 1] < Character.MAX_VALUE)
+							boundaries.set(ranges[i + 1] + 1);
+					}
+			char[] starts = new char[boundaries.cardinality()];
+			int i = 0;
+			for (int b = boundaries.nextSetBit(0); b >= 0; b = boundaries.nextSetBit(b + 1))
+				starts[i++] = (char) b;
+			return starts;
+		}
+	}
+}
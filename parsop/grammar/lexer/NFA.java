@@ -0,0 +1,68 @@
+package parsop.grammar.lexer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Thompson-style nondeterministic automaton over chars.
+ *
+ * Each state has at most one character set transition (stored as sorted,
+ * inclusive [lo, hi] pairs) and any number of epsilon transitions. Accepting
+ * states are tagged with the rule that they accept, so that several rules can
+ * share one automaton.
+ *
+ * @author aozdemir
+ *
+ */
+class NFA {
+
+	List<char[]> charSets;
+	List<Integer> charTargets;
+	List<List<Integer>> epsilons;
+	List<Integer> accepting;
+
+	NFA() {
+		this.charSets = new ArrayList<char[]>();
+		this.charTargets = new ArrayList<Integer>();
+		this.epsilons = new ArrayList<List<Integer>>();
+		this.accepting = new ArrayList<Integer>();
+	}
+
+	int newState() {
+		charSets.add(null);
+		charTargets.add(-1);
+		epsilons.add(new ArrayList<Integer>(2));
+		accepting.add(-1);
+		return size() - 1;
+	}
+
+	int size() {
+		return charSets.size();
+	}
+
+	void addEpsilon(int from, int to) {
+		epsilons.get(from).add(to);
+	}
+
+	void addCharSet(int from, char[] ranges, int to) {
+		charSets.set(from, ranges);
+		charTargets.set(from, to);
+	}
+
+	void accept(int state, int rule) {
+		accepting.set(state, rule);
+	}
+
+	/**
+	 * @return the target of the transition from state on c, or -1
+	 */
+	int step(int state, char c) {
+		char[] ranges = charSets.get(state);
+		if (ranges == null)
+			return -1;
+		for (int i = 0; i < ranges.length; i += 2)
+			if (ranges[i] <= c && c <= ranges[i + 1])
+				return charTargets.get(state);
+		return -1;
+	}
+}
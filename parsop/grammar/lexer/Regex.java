@@ -0,0 +1,254 @@
+package parsop.grammar.lexer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import parsop.grammar.GrammarException;
+
+/**
+ * A small regular expression compiler which emits Thompson fragments into an
+ * NFA.
+ *
+ * Supported syntax: literal characters, escapes (\d \D \w \W \s \S and escaped
+ * metacharacters), the wildcard '.', character classes such as [a-z_] and
+ * [^"], grouping with parentheses, alternation with '|', and the quantifiers
+ * '*', '+' and '?'.
+ *
+ * @author aozdemir
+ *
+ */
+class Regex {
+
+	private static final char[] DIGITS = { '0', '9' };
+	private static final char[] WORD = { '0', '9', 'A', 'Z', '_', '_', 'a', 'z' };
+	private static final char[] SPACE = { '\t', '\r', ' ', ' ' };
+	private static final char[] ANY = { 0, '\n' - 1, '\n' + 1, Character.MAX_VALUE };
+
+	private String pattern;
+	private int position;
+	private NFA nfa;
+
+	private Regex(String pattern, NFA nfa) {
+		this.pattern = pattern;
+		this.position = 0;
+		this.nfa = nfa;
+	}
+
+	/**
+	 * Compiles the pattern into the automaton.
+	 *
+	 * @return The {start, end} states of the resulting fragment
+	 * @throws GrammarException
+	 *             if the pattern is malformed
+	 */
+	static int[] compile(String pattern, NFA nfa) throws GrammarException {
+		Regex regex = new Regex(pattern, nfa);
+		int[] fragment = regex.alternation();
+		if (regex.position != pattern.length())
+			throw regex.error("Unexpected <" + pattern.charAt(regex.position) + ">");
+		return fragment;
+	}
+
+	/**
+	 * Compiles a string that should be matched exactly
+	 */
+	static int[] literal(String text, NFA nfa) {
+		int start = nfa.newState();
+		int end = start;
+		for (int i = 0; i < text.length(); i++) {
+			int next = nfa.newState();
+			nfa.addCharSet(end, new char[] { text.charAt(i), text.charAt(i) }, next);
+			end = next;
+		}
+		return new int[] { start, end };
+	}
+
+	private int[] alternation() throws GrammarException {
+		int[] fragment = concatenation();
+		while (peek('|')) {
+			position++;
+			int[] other = concatenation();
+			int start = nfa.newState();
+			int end = nfa.newState();
+			nfa.addEpsilon(start, fragment[0]);
+			nfa.addEpsilon(start, other[0]);
+			nfa.addEpsilon(fragment[1], end);
+			nfa.addEpsilon(other[1], end);
+			fragment = new int[] { start, end };
+		}
+		return fragment;
+	}
+
+	private int[] concatenation() throws GrammarException {
+		int start = nfa.newState();
+		int end = start;
+		while (position < pattern.length() && !peek('|') && !peek(')')) {
+			int[] next = repetition();
+			nfa.addEpsilon(end, next[0]);
+			end = next[1];
+		}
+		return new int[] { start, end };
+	}
+
+	private int[] repetition() throws GrammarException {
+		int[] fragment = atom();
+		while (peek('*') || peek('+') || peek('?')) {
+			char quantifier = pattern.charAt(position++);
+			int start = nfa.newState();
+			int end = nfa.newState();
+			nfa.addEpsilon(start, fragment[0]);
+			nfa.addEpsilon(fragment[1], end);
+			if (quantifier != '+')
+				nfa.addEpsilon(start, end);
+			if (quantifier != '?')
+				nfa.addEpsilon(fragment[1], fragment[0]);
+			fragment = new int[] { start, end };
+		}
+		return fragment;
+	}
+
+	private int[] atom() throws GrammarException {
+		char c = pattern.charAt(position++);
+		char[] set;
+		switch (c) {
+		case '(':
+			int[] inner = alternation();
+			if (!peek(')'))
+				throw error("Unclosed group");
+			position++;
+			return inner;
+		case '[':
+			set = characterClass();
+			break;
+		case '.':
+			set = ANY;
+			break;
+		case '\\':
+			set = escape();
+			break;
+		case '*':
+		case '+':
+		case '?':
+		case ')':
+			throw error("Unexpected <" + c + ">");
+		default:
+			set = new char[] { c, c };
+		}
+		int start = nfa.newState();
+		int end = nfa.newState();
+		nfa.addCharSet(start, set, end);
+		return new int[] { start, end };
+	}
+
+	private char[] escape() throws GrammarException {
+		if (position >= pattern.length())
+			throw error("Dangling escape");
+		char c = pattern.charAt(position++);
+		switch (c) {
+		case 'd':
+			return DIGITS;
+		case 'D':
+			return negate(DIGITS);
+		case 'w':
+			return WORD;
+		case 'W':
+			return negate(WORD);
+		case 's':
+			return SPACE;
+		case 'S':
+			return negate(SPACE);
+		case 't':
+			return new char[] { '\t', '\t' };
+		case 'n':
+			return new char[] { '\n', '\n' };
+		default:
+			return new char[] { c, c };
+		}
+	}
+
+	private char[] characterClass() throws GrammarException {
+		boolean negated = peek('^');
+		if (negated)
+			position++;
+		List<char[]> parts = new ArrayList<char[]>();
+		boolean first = true;
+		while (position < pattern.length() && (first || !peek(']'))) {
+			first = false;
+			char lo = pattern.charAt(position++);
+			if (lo == '\\') {
+				char[] escaped = escape();
+				if (escaped.length > 2 || escaped[0] != escaped[1]) {
+					parts.add(escaped);
+					continue;
+				}
+				lo = escaped[0];
+			}
+			char hi = lo;
+			if (peek('-') && position + 1 < pattern.length() && pattern.charAt(position + 1) != ']') {
+				position++;
+				hi = pattern.charAt(position++);
+				if (hi == '\\')
+					hi = escape()[0];
+				if (hi < lo)
+					throw error(String.format("Inverted range <%c-%c>", lo, hi));
+			}
+			parts.add(new char[] { lo, hi });
+		}
+		if (!peek(']'))
+			throw error("Unclosed character class");
+		position++;
+		char[] set = union(parts);
+		return negated ? negate(set) : set;
+	}
+
+	/**
+	 * Merges several range lists into one sorted list of disjoint ranges
+	 */
+	static char[] union(List<char[]> parts) {
+		List<char[]> ranges = new ArrayList<char[]>();
+		for (char[] part : parts)
+			for (int i = 0; i < part.length; i += 2)
+				ranges.add(new char[] { part[i], part[i + 1] });
+		ranges.sort((a, b) -> a[0] - b[0]);
+		char[] merged = new char[ranges.size() * 2];
+		int size = 0;
+		for (char[] r : ranges) {
+			if (size > 0 && r[0] <= merged[size - 1] + 1) {
+				if (r[1] > merged[size - 1])
+					merged[size - 1] = r[1];
+			} else {
+				merged[size++] = r[0];
+				merged[size++] = r[1];
+			}
+		}
+		return Arrays.copyOf(merged, size);
+	}
+
+	static char[] negate(char[] set) {
+		char[] result = new char[set.length + 2];
+		int size = 0;
+		int next = 0;
+		for (int i = 0; i < set.length; i += 2) {
+			if (set[i] > next) {
+				result[size++] = (char) next;
+				result[size++] = (char) (set[i] - 1);
+			}
+			next = set[i + 1] + 1;
+		}
+		if (next <= Character.MAX_VALUE) {
+			result[size++] = (char) next;
+			result[size++] = Character.MAX_VALUE;
+		}
+		return Arrays.copyOf(result, size);
+	}
+
+	private boolean peek(char c) {
+		return position < pattern.length() && pattern.charAt(position) == c;
+	}
+
+	private GrammarException error(String message) {
+		return new GrammarException(String.format("Bad regular expression <%s> at %d: %s", pattern,
+				position, message));
+	}
+}
@@ -0,0 +1,69 @@
+package parsop.grammar.tokens;
+
+import java.util.Objects;
+
+/**
+ * Opens the argument list of a call or index, such as the ( in f(a, b). A call
+ * is an Operation whose operands are the callee followed by the arguments, so
+ * each occurrence counts its own arity while it is parsed.
+ */
+public class CallOpen extends Operation {
+
+	CloseGroup close;
+	Separator separator;
+
+	/**
+	 * @param separator
+	 *            - May be null, in which case the call takes exactly one
+	 *            argument
+	 */
+	public CallOpen(String symbol, CloseGroup close, Separator separator) {
+		super(symbol, 1, TokenType.CallOpen);
+		this.close = close;
+		this.separator = separator;
+	}
+
+	public CloseGroup close() {
+		return close;
+	}
+
+	public Separator separator() {
+		return separator;
+	}
+
+	/**
+	 * Counts another argument of this occurrence
+	 */
+	public void addArgument() {
+		this.arity++;
+	}
+
+	@Override
+	public String toString() {
+		return symbol + close.symbol();
+	}
+
+	@Override
+	public CallOpen cloneWithIndex(int i) {
+		CallOpen o = new CallOpen(symbol, close, separator);
+		o.index = i;
+		return o;
+	}
+
+	@Override
+	public int hashCode() {
+		return symbol.hashCode() ^ type.hashCode() ^ 31 * Objects.hashCode(close)
+				^ 961 * Objects.hashCode(separator);
+	}
+
+	/**
+	 * Calls are equal only if they close and separate their arguments alike,
+	 * since these change how they parse
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CallOpen && ((CallOpen) o).symbol.equals(symbol)
+				&& ((CallOpen) o).close.equals(close)
+				&& Objects.equals(((CallOpen) o).separator, separator);
+	}
+}
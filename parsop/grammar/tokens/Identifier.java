@@ -8,12 +8,32 @@ import parsop.parser.AST;
 public class Identifier implements Token {
 
 	String symbol;
+	String tokenClass;
 	private int index;
+	private int id = -1;
 	
 	public Identifier(String symbol) {
 		this.symbol = symbol;
 	}
 	
+	/**
+	 * Constructs an identifier which was matched by a token class of the
+	 * grammar.
+	 */
+	public Identifier(String symbol, String tokenClass, int index) {
+		this.symbol = symbol;
+		this.tokenClass = tokenClass;
+		this.index = index;
+	}
+
+	/**
+	 * Constructs an identifier with its id in a SymbolTable
+	 */
+	public Identifier(String symbol, String tokenClass, int index, int id) {
+		this(symbol, tokenClass, index);
+		this.id = id;
+	}
+	
 	public String toString() {
 		return this.symbol;
 	}
@@ -32,6 +52,22 @@ public class Identifier implements Token {
 		return symbol;
 	}
 
+	/**
+	 * @return The name of the token class which matched this identifier, or
+	 *         null if the grammar declares no token classes.
+	 */
+	public String tokenClass() {
+		return tokenClass;
+	}
+
+	/**
+	 * @return The id of the name in the SymbolTable of the Tokenizer, or -1
+	 *         if it was not interned
+	 */
+	public int id() {
+		return id;
+	}
+
 	@Override
 	public TokenType type() {
 		return TokenType.Identifier;
@@ -44,9 +80,7 @@ public class Identifier implements Token {
 
 	@Override
 	public Identifier cloneWithIndex(int i) {
-		Identifier o = new Identifier(symbol);
-		o.index = i;
-		return o;
+		return new Identifier(symbol, tokenClass, i, id);
 	}
 	
 	@Override
@@ -0,0 +1,49 @@
+package parsop.grammar.tokens;
+
+/**
+ * An Identifier whose value was decoded to a number when it was scanned, so
+ * that consumers of the AST need not parse its symbol again.
+ */
+public class NumericLiteral extends Identifier {
+
+	boolean integral;
+	long longValue;
+	double doubleValue;
+
+	public NumericLiteral(String symbol, String tokenClass, long value, int index) {
+		super(symbol, tokenClass, index);
+		this.integral = true;
+		this.longValue = value;
+		this.doubleValue = value;
+	}
+
+	public NumericLiteral(String symbol, String tokenClass, double value, int index) {
+		super(symbol, tokenClass, index);
+		this.integral = false;
+		this.longValue = (long) value;
+		this.doubleValue = value;
+	}
+
+	/**
+	 * @return Whether the literal was decoded as an integer
+	 */
+	public boolean isIntegral() {
+		return integral;
+	}
+
+	public long longValue() {
+		return longValue;
+	}
+
+	public double doubleValue() {
+		return doubleValue;
+	}
+
+	@Override
+	public NumericLiteral cloneWithIndex(int i) {
+		if (integral)
+			return new NumericLiteral(symbol, tokenClass, longValue, i);
+		else
+			return new NumericLiteral(symbol, tokenClass, doubleValue, i);
+	}
+}
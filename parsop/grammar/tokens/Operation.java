@@ -2,6 +2,7 @@ package parsop.grammar.tokens;
 
 import java.util.ArrayList;
 import java.util.Stack;
+import java.util.function.UnaryOperator;
 
 import parsop.grammar.GrammarException;
 import parsop.parser.AST;
@@ -13,7 +14,7 @@ public class Operation implements Token {
 	String symbol;
 	int arity;
 	TokenType type;
-	private int index;
+	int index;
 	
 	/**
 	 * Constructs an operation from its symbol and arity.
@@ -31,9 +32,26 @@ public class Operation implements Token {
 		this.type = type; 
 	}
 
+	/**
+	 * Decodes an operation from its arity followed by its symbol, such as 2+.
+	 * An arity of P instead denotes a postfix unary operation, such as P!.
+	 */
 	public static Operation fromString(String encoding) throws GrammarException {
+		return fromString(encoding, UnaryOperator.identity());
+	}
+
+	/**
+	 * Decodes an operation, passing its symbol through symbols first, such as
+	 * to intern it.
+	 */
+	public static Operation fromString(String encoding, UnaryOperator<String> symbols)
+			throws GrammarException {
+		if (encoding.length() < 2)
+			throw new GrammarException(String.format("The encoding <%s> has no symbol", encoding));
+		String symbol = symbols.apply(encoding.substring(1, encoding.length()));
+		if (encoding.charAt(0) == 'P')
+			return new PostfixOperation(symbol);
 		int arity = Integer.parseInt(encoding.substring(0, 1));
-		String symbol = encoding.substring(1, encoding.length());
 		switch (arity) {
 		case 1:
 			return new UnaryOperation(symbol, arity);
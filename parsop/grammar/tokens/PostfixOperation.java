@@ -0,0 +1,20 @@
+package parsop.grammar.tokens;
+
+public class PostfixOperation extends Operation {
+
+	public PostfixOperation(String symbol) {
+		super(symbol, 1, TokenType.PostfixOperation);
+	}
+
+	@Override
+	public String toString() {
+		return "P" + symbol;
+	}
+
+	@Override
+	public PostfixOperation cloneWithIndex(int i) {
+		PostfixOperation o = new PostfixOperation(symbol);
+		o.index = i;
+		return o;
+	}
+}
@@ -0,0 +1,60 @@
+package parsop.grammar.tokens;
+
+import java.util.Stack;
+
+import parsop.parser.AST;
+
+/**
+ * Separates the arguments of a call, such as the comma in f(a, b)
+ */
+public class Separator implements Token {
+
+	String symbol;
+	private int index;
+
+	public Separator(String symbol) {
+		this.symbol = symbol;
+	}
+
+	@Override
+	public String symbol() {
+		return symbol;
+	}
+
+	@Override
+	public AST build(Stack<Token> reversePolishStack) {
+		throw new Error("Separator should never be built");
+	}
+
+	@Override
+	public String toString() {
+		return symbol;
+	}
+
+	@Override
+	public TokenType type() {
+		return TokenType.Separator;
+	}
+
+	@Override
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public Separator cloneWithIndex(int i) {
+		Separator o = new Separator(symbol);
+		o.index = i;
+		return o;
+	}
+
+	@Override
+	public int hashCode() {
+		return symbol.hashCode();
+	}
+
+	public boolean equals(Object other) {
+		return (other instanceof Separator && other.toString().equals(toString()));
+	}
+
+}
@@ -0,0 +1,61 @@
+package parsop.grammar.tokens;
+
+import java.util.Stack;
+
+import parsop.parser.AST;
+
+/**
+ * The first symbol of a ternary operation, such as the ? in c ? x : y. It is
+ * closed by the TernaryOperation, which is what appears in the AST.
+ */
+public class TernaryOpen implements Token {
+
+	String symbol;
+	private int index;
+
+	public TernaryOpen(String symbol) {
+		this.symbol = symbol;
+	}
+
+	@Override
+	public String symbol() {
+		return symbol;
+	}
+
+	@Override
+	public AST build(Stack<Token> reversePolishStack) {
+		throw new Error("Ternary open should never be built");
+	}
+
+	@Override
+	public String toString() {
+		return symbol;
+	}
+
+	@Override
+	public TokenType type() {
+		return TokenType.TernaryOpen;
+	}
+
+	@Override
+	public int getIndex() {
+		return index;
+	}
+
+	@Override
+	public TernaryOpen cloneWithIndex(int i) {
+		TernaryOpen o = new TernaryOpen(symbol);
+		o.index = i;
+		return o;
+	}
+
+	@Override
+	public int hashCode() {
+		return symbol.hashCode();
+	}
+
+	public boolean equals(Object other) {
+		return (other instanceof TernaryOpen && other.toString().equals(toString()));
+	}
+
+}
@@ -0,0 +1,42 @@
+package parsop.grammar.tokens;
+
+/**
+ * The second symbol of a ternary operation, such as the : in c ? x : y. It
+ * closes its TernaryOpen and takes all three operands.
+ */
+public class TernaryOperation extends Operation {
+
+	TernaryOpen open;
+
+	public TernaryOperation(TernaryOpen open, String symbol) {
+		super(symbol, 3, TokenType.TernaryOperation);
+		this.open = open;
+	}
+
+	public TernaryOpen open() {
+		return open;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d%s%s", this.arity, open.symbol(), this.symbol);
+	}
+
+	@Override
+	public TernaryOperation cloneWithIndex(int i) {
+		TernaryOperation o = new TernaryOperation(open, symbol);
+		o.index = i;
+		return o;
+	}
+
+	@Override
+	public int hashCode() {
+		return super.hashCode() ^ open.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof TernaryOperation && super.equals(o)
+				&& ((TernaryOperation) o).open.equals(open);
+	}
+}
@@ -4,9 +4,74 @@ public enum TokenType {
 	Identifier,
 	UnaryOperation,
 	BinaryOperation,
+	PostfixOperation,
 	OpenGroup,
 	CloseGroup,
+	CallOpen,
+	Separator,
+	TernaryOpen,
+	TernaryOperation,
 	Start,
 	End,
-	Invalid
+	Invalid;
+
+	/**
+	 * @return Whether an operand must follow tokens of this type
+	 */
+	public boolean expectsOperand() {
+		switch (this) {
+		case Start:
+		case UnaryOperation:
+		case BinaryOperation:
+		case OpenGroup:
+		case CallOpen:
+		case Separator:
+		case TernaryOpen:
+		case TernaryOperation:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return Whether tokens of this type may begin an operand
+	 */
+	public boolean beginsOperand() {
+		switch (this) {
+		case Identifier:
+		case UnaryOperation:
+		case OpenGroup:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return Whether tokens of this type must later be closed
+	 */
+	public boolean opens() {
+		switch (this) {
+		case OpenGroup:
+		case CallOpen:
+		case TernaryOpen:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @return Whether tokens of this type close an earlier token
+	 */
+	public boolean closes() {
+		switch (this) {
+		case CloseGroup:
+		case TernaryOperation:
+			return true;
+		default:
+			return false;
+		}
+	}
 }
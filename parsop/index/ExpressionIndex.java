@@ -0,0 +1,368 @@
+package parsop.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.tokens.Token;
+import parsop.parser.AST;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+import parsop.rewrite.Pattern;
+
+/**
+ * An index over a corpus of parsed expressions, which finds subtrees by their
+ * operator or by their shape without walking the whole corpus.
+ *
+ * Each expression is parsed once and flattened in postorder. For every node
+ * the index stores the id of its token and the size of the subtree below it.
+ * Two inverted indices map token ids, and the hashes AST computes for its
+ * subtrees, to the nodes which have them.
+ *
+ * A pattern query starts from the nodes whose token is the pattern's root
+ * token, or, if it is rarer, from the subtrees equal to a part of the pattern
+ * without variables, found by their hash, and then climbs to the node where
+ * the pattern would be rooted. Only the candidates are matched against the
+ * pattern; patterns whose root is a variable scan every node.
+ *
+ * @author aozdemir
+ *
+ */
+public class ExpressionIndex {
+
+	private Grammar grammar;
+	private Parser parser;
+
+	private Map<Token, Integer> tokenIds;
+	private List<Document> documents;
+	private Map<Integer, Postings> byToken;
+	private Map<Long, Postings> byHash;
+	private int nodeCount;
+
+	/**
+	 * An expression in postorder. The subtree of node i is the nodes from
+	 * i - sizes[i] + 1 up to i. The root has parent -1.
+	 */
+	private static class Document {
+		AST[] nodes;
+		int[] tokens;
+		int[] sizes;
+		int[] parents;
+	}
+
+	/**
+	 * A growable list of (document, node) pairs packed into longs
+	 */
+	private static class Postings {
+		long[] entries = new long[4];
+		int size;
+
+		void add(int document, int node) {
+			if (size == entries.length)
+				entries = Arrays.copyOf(entries, size * 2);
+			entries[size++] = ((long) document << 32) | node;
+		}
+	}
+
+	/**
+	 * A subtree found by a query, and the subtrees bound to the variables of
+	 * the pattern
+	 */
+	public static class Occurrence {
+		int document;
+		AST tree;
+		Map<String, AST> bindings;
+
+		Occurrence(int document, AST tree, Map<String, AST> bindings) {
+			this.document = document;
+			this.tree = tree;
+			this.bindings = bindings;
+		}
+
+		public int document() {
+			return document;
+		}
+
+		public AST tree() {
+			return tree;
+		}
+
+		public Map<String, AST> bindings() {
+			return bindings;
+		}
+
+		public String toString() {
+			return document + ": " + tree;
+		}
+	}
+
+	public ExpressionIndex(Grammar grammar) {
+		this.grammar = grammar;
+		this.parser = new Parser(() -> grammar, false);
+		this.tokenIds = new HashMap<Token, Integer>();
+		this.documents = new ArrayList<Document>();
+		this.byToken = new HashMap<Integer, Postings>();
+		this.byHash = new HashMap<Long, Postings>();
+	}
+
+	/**
+	 * Indexes every non-blank line of the file as an expression
+	 *
+	 * @return The number of lines which did not parse, and so were skipped
+	 */
+	public int addLines(String filepath) throws IOException {
+		int failures = 0;
+		try (BufferedReader reader = Files.newBufferedReader(Paths.get(filepath))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty())
+					continue;
+				try {
+					add(line);
+				} catch (ParseException e) {
+					failures++;
+				}
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Parses and indexes the expression
+	 *
+	 * @return The id of the expression
+	 */
+	public int add(String expression) throws ParseException {
+		return add(parser.parse(expression));
+	}
+
+	/**
+	 * Indexes a tree parsed with this index's grammar
+	 *
+	 * @return The id of the tree
+	 */
+	public int add(AST tree) {
+		int id = documents.size();
+		List<AST> order = postorder(tree);
+		int n = order.size();
+		Document document = new Document();
+		document.nodes = order.toArray(new AST[n]);
+		document.tokens = new int[n];
+		document.sizes = new int[n];
+		document.parents = new int[n];
+		document.parents[n - 1] = -1;
+		for (int i = 0; i < n; i++) {
+			AST node = document.nodes[i];
+			int size = 1;
+			// The operands end at i - 1, and each begins just before the next
+			int child = i - 1;
+			for (int c = node.getOperands().size() - 1; c >= 0; c--) {
+				document.parents[child] = i;
+				size += document.sizes[child];
+				child -= document.sizes[child];
+			}
+			document.tokens[i] = tokenId(node.getNode());
+			document.sizes[i] = size;
+			byToken.computeIfAbsent(document.tokens[i], k -> new Postings()).add(id, i);
+			byHash.computeIfAbsent(node.hash(), k -> new Postings()).add(id, i);
+		}
+		documents.add(document);
+		nodeCount += n;
+		return id;
+	}
+
+	/**
+	 * @return The number of indexed expressions
+	 */
+	public int size() {
+		return documents.size();
+	}
+
+	/**
+	 * @return The number of indexed subtrees
+	 */
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return The expression with the id
+	 */
+	public AST document(int id) {
+		Document document = documents.get(id);
+		return document.nodes[document.nodes.length - 1];
+	}
+
+	/**
+	 * @return Every subtree whose root is the token
+	 */
+	public List<Occurrence> uses(Token token) {
+		List<Occurrence> result = new ArrayList<Occurrence>();
+		Integer id = tokenIds.get(token);
+		if (id == null)
+			return result;
+		Postings postings = byToken.get(id);
+		for (int p = 0; p < postings.size; p++) {
+			long entry = postings.entries[p];
+			Document document = documents.get((int) (entry >>> 32));
+			result.add(new Occurrence((int) (entry >>> 32), document.nodes[(int) entry],
+					new HashMap<String, AST>()));
+		}
+		return result;
+	}
+
+	/**
+	 * Looks the token up by name in the grammar, as in uses("2^")
+	 */
+	public List<Occurrence> uses(String name) {
+		Token token = grammar.tokenNamed(name);
+		if (token == null)
+			throw new IllegalArgumentException("No token named " + name + " in the grammar");
+		return uses(token);
+	}
+
+	/**
+	 * Parses the pattern with the grammar and finds its matches, as in
+	 * find("(x + 0)", "x")
+	 */
+	public List<Occurrence> find(String pattern, String... variables) throws ParseException {
+		return find(Pattern.parse(parser, pattern, variables));
+	}
+
+	/**
+	 * @return Every subtree which matches the pattern, in the order of the
+	 *         index
+	 */
+	public List<Occurrence> find(Pattern pattern) {
+		List<Occurrence> result = new ArrayList<Occurrence>();
+		if (pattern.isGround()) {
+			findEqual(pattern, result);
+			return result;
+		}
+		if (pattern.isVariable()) {
+			for (int d = 0; d < documents.size(); d++)
+				for (int i = 0; i < documents.get(d).nodes.length; i++)
+					check(pattern, d, i, result);
+			return result;
+		}
+		Integer id = tokenIds.get(pattern.root());
+		if (id == null)
+			return result;
+		// Start from whichever is rarer: the root token, or one of the ground
+		// subpatterns, whose occurrences lead up to the candidates
+		Postings anchor = byToken.get(id);
+		int[] anchorPath = null;
+		List<int[]> paths = new ArrayList<int[]>();
+		List<Pattern> grounds = new ArrayList<Pattern>();
+		collectGround(pattern, new ArrayList<Integer>(), paths, grounds);
+		for (int g = 0; g < grounds.size(); g++) {
+			Postings postings = byHash.get(grounds.get(g).toAST().hash());
+			if (postings == null)
+				return result;
+			if (postings.size < anchor.size) {
+				anchor = postings;
+				anchorPath = paths.get(g);
+			}
+		}
+		for (int p = 0; p < anchor.size; p++) {
+			long entry = anchor.entries[p];
+			int d = (int) (entry >>> 32);
+			int i = anchorPath == null ? (int) entry
+					: ancestor(documents.get(d), (int) entry, anchorPath);
+			if (i >= 0)
+				check(pattern, d, i, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Ground patterns are found through the hash index directly
+	 */
+	private void findEqual(Pattern pattern, List<Occurrence> result) {
+		Postings postings = byHash.get(pattern.toAST().hash());
+		if (postings == null)
+			return;
+		for (int p = 0; p < postings.size; p++) {
+			long entry = postings.entries[p];
+			check(pattern, (int) (entry >>> 32), (int) entry, result);
+		}
+	}
+
+	/**
+	 * Collects the largest ground subpatterns below the root, with the operand
+	 * indices leading to each
+	 */
+	private static void collectGround(Pattern pattern, List<Integer> path, List<int[]> paths,
+			List<Pattern> grounds) {
+		List<Pattern> operands = pattern.operands();
+		for (int i = 0; i < operands.size(); i++) {
+			path.add(i);
+			Pattern operand = operands.get(i);
+			if (operand.isGround()) {
+				int[] steps = new int[path.size()];
+				for (int s = 0; s < steps.length; s++)
+					steps[s] = path.get(s);
+				paths.add(steps);
+				grounds.add(operand);
+			} else
+				collectGround(operand, path, paths, grounds);
+			path.remove(path.size() - 1);
+		}
+	}
+
+	/**
+	 * @return The node reached by following the path of operand indices up
+	 *         from node i, or -1 if node i is not at that position
+	 */
+	private static int ancestor(Document document, int i, int[] path) {
+		for (int k = path.length - 1; k >= 0; k--) {
+			int parent = document.parents[i];
+			if (parent < 0)
+				return -1;
+			List<AST> operands = document.nodes[parent].getOperands();
+			if (operands.size() <= path[k] || operands.get(path[k]) != document.nodes[i])
+				return -1;
+			i = parent;
+		}
+		return i;
+	}
+
+	private void check(Pattern pattern, int d, int i, List<Occurrence> result) {
+		Document document = documents.get(d);
+		Map<String, AST> bindings = new HashMap<String, AST>();
+		if (pattern.match(document.nodes[i], bindings))
+			result.add(new Occurrence(d, document.nodes[i], bindings));
+	}
+
+	private int tokenId(Token token) {
+		Integer id = tokenIds.get(token);
+		if (id == null) {
+			id = tokenIds.size();
+			tokenIds.put(token, id);
+		}
+		return id;
+	}
+
+	private static List<AST> postorder(AST tree) {
+		List<AST> order = new ArrayList<AST>();
+		List<AST> stack = new ArrayList<AST>();
+		stack.add(tree);
+		while (!stack.isEmpty()) {
+			AST node = stack.remove(stack.size() - 1);
+			order.add(node);
+			stack.addAll(node.getOperands());
+		}
+		// Children were pushed left to right, so this reversed preorder visits
+		// each node after all of its operands, leftmost first
+		Collections.reverse(order);
+		return order;
+	}
+}
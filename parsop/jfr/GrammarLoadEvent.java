@@ -0,0 +1,56 @@
+package parsop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for each grammar read from a file, including the
+ * reloads of a GrammarRegistry. Its duration is the whole load.
+ *
+ * @author aozdemir
+ *
+ */
+@Name("parsop.GrammarLoad")
+@Label("Grammar Load")
+@Category("parsop")
+@Description("Reading and compiling a grammar file")
+public class GrammarLoadEvent extends Event {
+
+	@Label("Path")
+	public String path;
+
+	@Label("Load Id")
+	@Description("Identifies the grammar version in Parse events")
+	public int loadId;
+
+	@Label("Precedence Classes")
+	public int precedences;
+
+	@Label("Kind")
+	@Description("Binary, Unary or Rich, from the GrammarProfile")
+	public String kind;
+
+	@Label("Fast Paths")
+	@Description("The FastPaths parsers use for the grammar")
+	public String fastPaths;
+
+	@Label("Succeeded")
+	public boolean succeeded;
+
+	@Label("Error Message")
+	public String message;
+
+	@Label("Read")
+	@Description("Reading the file into precedence classes and token classes")
+	@Timespan
+	public long read;
+
+	@Label("Compile")
+	@Description("Building the tables and the lexer")
+	@Timespan
+	public long compile;
+}
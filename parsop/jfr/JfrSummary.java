@@ -0,0 +1,113 @@
+package parsop.jfr;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import parsop.metrics.Histogram;
+
+/**
+ * Summarizes the parsop events of a Flight Recorder recording: how parse time
+ * divides between the stages, the slowest inputs recorded by SlowParseEvents,
+ * and the grammar loads.
+ *
+ * A recording can be made with, for example,
+ *
+ *    java -XX:StartFlightRecording:filename=parse.jfr,settings=profile ...
+ *
+ * @author aozdemir
+ *
+ */
+public class JfrSummary {
+
+	private static final String[] STAGES = { "tokenize", "loop", "check", "build" };
+
+	private Histogram durations = new Histogram();
+	private long[] stageNanos = new long[STAGES.length];
+	private long errors;
+	private long tokens;
+	private List<RecordedEvent> slow = new ArrayList<RecordedEvent>();
+	private List<RecordedEvent> loads = new ArrayList<RecordedEvent>();
+
+	public void add(RecordedEvent event) {
+		switch (event.getEventType().getName()) {
+		case "parsop.Parse":
+			durations.record(event.getDuration().toNanos());
+			for (int i = 0; i < STAGES.length; i++)
+				stageNanos[i] += event.getDuration(STAGES[i]).toNanos();
+			if (event.getBoolean("error"))
+				errors++;
+			tokens += event.getInt("tokens");
+			break;
+		case "parsop.SlowParse":
+			slow.add(event);
+			break;
+		case "parsop.GrammarLoad":
+			loads.add(event);
+			break;
+		}
+	}
+
+	/**
+	 * @param worst
+	 *            - How many of the slowest inputs to list
+	 */
+	public String report(int worst) {
+		StringBuilder result = new StringBuilder();
+		if (durations.count() > 0) {
+			result.append(String.format("%d parses, %d errors, %d tokens\n", durations.count(),
+					errors, tokens));
+			result.append(String.format("parse ns: %s\n", durations));
+			long total = durations.total();
+			for (int i = 0; i < STAGES.length; i++)
+				result.append(String.format("  %-9s %12d ns  %5.1f%%\n", STAGES[i], stageNanos[i],
+						100.0 * stageNanos[i] / total));
+		} else
+			result.append("No parsop.Parse events\n");
+
+		slow.sort((a, b) -> b.getDuration().compareTo(a.getDuration()));
+		result.append(String.format("\n%d slow parses", slow.size()));
+		if (!slow.isEmpty())
+			result.append(String.format(", the slowest %d:", Math.min(worst, slow.size())));
+		result.append('\n');
+		for (RecordedEvent event : slow.subList(0, Math.min(worst, slow.size())))
+			result.append(String.format("  %10.1f us  %5d tokens  depth %3d  %s%s\n    %s\n", event
+					.getDuration().toNanos() / 1e3, event.getInt("tokens"), event.getInt("depth"),
+					event.getString("grammar"), event.getBoolean("error") ? "  error: "
+							+ event.getString("message") : "", abbreviate(event.getString("input"))));
+
+		result.append(String.format("\n%d grammar loads\n", loads.size()));
+		for (RecordedEvent event : loads)
+			result.append(String.format("  %10.1f us  read %8.1f us  compile %8.1f us  #%d %s%s\n",
+					event.getDuration().toNanos() / 1e3, event.getDuration("read").toNanos() / 1e3,
+					event.getDuration("compile").toNanos() / 1e3, event.getInt("loadId"), event
+							.getString("path"), event.getBoolean("succeeded") ? "" : "  failed: "
+							+ event.getString("message")));
+		return result.toString();
+	}
+
+	private static String abbreviate(String input) {
+		if (input == null)
+			return "";
+		return input.length() > 100 ? input.substring(0, 97) + "..." : input;
+	}
+
+	/**
+	 * Usage: recording.jfr [worst]
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: jfr recording.jfr [number_of_slow_inputs]");
+			System.exit(2);
+		}
+		JfrSummary summary = new JfrSummary();
+		try (RecordingFile recording = new RecordingFile(Paths.get(args[0]))) {
+			while (recording.hasMoreEvents())
+				summary.add(recording.readEvent());
+		}
+		System.out.print(summary.report(args.length > 1 ? Integer.parseInt(args[1]) : 10));
+	}
+}
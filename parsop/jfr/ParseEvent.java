@@ -0,0 +1,94 @@
+package parsop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+import parsop.grammar.Grammar;
+import parsop.grammar.ParseEngine;
+import parsop.metrics.ParseSample;
+import parsop.metrics.Stage;
+import parsop.parser.ParseException;
+
+/**
+ * A Flight Recorder event for each parse, emitted by a Parser while a
+ * recording has it enabled. Its duration is the whole parse.
+ *
+ * @author aozdemir
+ *
+ */
+@Name("parsop.Parse")
+@Label("Parse")
+@Category("parsop")
+@Description("One call of Parser.parse")
+@StackTrace(false)
+public class ParseEvent extends Event {
+
+	@Label("Grammar")
+	public String grammar;
+
+	@Label("Grammar Load")
+	@Description("The id of the GrammarLoad event of the grammar version used")
+	public int grammarLoad;
+
+	@Label("Engine")
+	public String engine;
+
+	@Label("Input Length")
+	public int length;
+
+	@Label("Tokens")
+	public int tokens;
+
+	@Label("Reductions")
+	public int reductions;
+
+	@Label("Nesting Depth")
+	@Description("The deepest operator stack, or nesting of Pratt expressions")
+	public int depth;
+
+	@Label("Error")
+	public boolean error;
+
+	@Label("Error Message")
+	public String message;
+
+	@Label("Tokenize")
+	@Timespan
+	public long tokenize;
+
+	@Label("Parse Loop")
+	@Timespan
+	public long loop;
+
+	@Label("Syntax Check")
+	@Timespan
+	public long check;
+
+	@Label("Build")
+	@Timespan
+	public long build;
+
+	/**
+	 * Fills in the fields from a finished parse
+	 */
+	public void set(Grammar grammar, ParseEngine engine, String input, ParseSample sample,
+			ParseException error) {
+		this.grammar = grammar.path();
+		this.grammarLoad = grammar.loadId();
+		this.engine = engine.toString();
+		this.length = input.length();
+		this.tokens = sample.tokens;
+		this.reductions = sample.reductions;
+		this.depth = sample.maxDepth;
+		this.error = error != null;
+		this.message = error != null ? error.getMessage() : null;
+		this.tokenize = sample.nanos(Stage.Tokenize);
+		this.loop = sample.nanos(Stage.Parse);
+		this.check = sample.nanos(Stage.Check);
+		this.build = sample.nanos(Stage.Build);
+	}
+}
@@ -0,0 +1,41 @@
+package parsop.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+import parsop.grammar.Grammar;
+import parsop.grammar.ParseEngine;
+import parsop.metrics.ParseSample;
+import parsop.parser.ParseException;
+
+/**
+ * A ParseEvent which also records the input, emitted only for parses slower
+ * than its threshold. The threshold is 1 ms unless the recording sets
+ * another, such as with "parsop.SlowParse#threshold=5 ms" in a .jfc file, or
+ * Recording.enable(SlowParseEvent.class).withThreshold(...).
+ *
+ * @author aozdemir
+ *
+ */
+@Name("parsop.SlowParse")
+@Label("Slow Parse")
+@Description("A parse which took longer than the threshold, with its input")
+@Threshold("1 ms")
+public class SlowParseEvent extends ParseEvent {
+
+	/**
+	 * Inputs longer than this are cut off
+	 */
+	public static final int MAX_INPUT = 4096;
+
+	@Label("Input")
+	public String input;
+
+	@Override
+	public void set(Grammar grammar, ParseEngine engine, String input, ParseSample sample,
+			ParseException error) {
+		super.set(grammar, engine, input, sample, error);
+		this.input = input.length() > MAX_INPUT ? input.substring(0, MAX_INPUT) : input;
+	}
+}
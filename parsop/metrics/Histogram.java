@@ -0,0 +1,106 @@
+package parsop.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts of non-negative values, such as durations in nanoseconds, in buckets
+ * of bounded relative width, as in HdrHistogram.
+ *
+ * Values below 64 have a bucket each. Above that, every power of two is split
+ * into 32 equal buckets, so a value is known to within 1/32 (about 3%) of
+ * itself, and the whole range of a long fits in under 2000 buckets. Recording
+ * takes a few shifts and one atomic increment, and is safe from any number of
+ * threads.
+ *
+ * @author aozdemir
+ *
+ */
+public class Histogram {
+
+	private static final int SUB_BITS = 5;
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+	private static final int BUCKETS = (63 - SUB_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong total = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	static int bucket(long value) {
+		if (value < 2 * SUB_BUCKETS)
+			return (int) Math.max(value, 0);
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * @return The largest value which falls in the bucket
+	 */
+	static long highest(int bucket) {
+		if (bucket < 2 * SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		long top = bucket - shift * SUB_BUCKETS;
+		return ((top + 1) << shift) - 1;
+	}
+
+	public void record(long value) {
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value))
+			;
+	}
+
+	public long count() {
+		return count.get();
+	}
+
+	public long total() {
+		return total.get();
+	}
+
+	public long max() {
+		return max.get();
+	}
+
+	public double mean() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) total.get() / n;
+	}
+
+	/**
+	 * @param percentile
+	 *            - Between 0 and 100
+	 * @return The highest value in the bucket holding the percentile, capped
+	 *         at the largest value recorded
+	 */
+	public long percentile(double percentile) {
+		long n = count.get();
+		if (n == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank)
+				return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			counts.set(i, 0);
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+	public String toString() {
+		return String.format("n %d  mean %.0f  p50 %d  p90 %d  p99 %d  max %d", count(), mean(),
+				percentile(50), percentile(90), percentile(99), max());
+	}
+}
@@ -0,0 +1,15 @@
+package parsop.metrics;
+
+/**
+ * Receives the measurements of every parse made by a Parser it is given to.
+ * Called on the parsing thread, right after the parse, so it should be quick.
+ */
+public interface MetricsSink {
+
+	/**
+	 * @param sample
+	 *            - Reused by the Parser for its next parse, so it is only valid
+	 *            during the call
+	 */
+	void record(ParseSample sample);
+}
@@ -0,0 +1,35 @@
+package parsop.metrics;
+
+/**
+ * The view of ParseMetrics given to JMX clients such as jconsole
+ */
+public interface ParseMetricsMBean {
+
+	long getParses();
+
+	long getErrors();
+
+	long getTokens();
+
+	long getReductions();
+
+	int getMaxStackDepth();
+
+	long getTotalP50Nanos();
+
+	long getTotalP99Nanos();
+
+	long getTotalMaxNanos();
+
+	/**
+	 * @param stage
+	 *            - The name of a Stage, such as "Tokenize"
+	 * @param percentile
+	 *            - Between 0 and 100
+	 */
+	long percentileNanos(String stage, double percentile);
+
+	String report();
+
+	void reset();
+}
@@ -0,0 +1,41 @@
+package parsop.metrics;
+
+/**
+ * The measurements of one parse.
+ *
+ * @author aozdemir
+ *
+ */
+public class ParseSample {
+
+	private long[] nanos = new long[Stage.values().length];
+	public int tokens;
+	public int reductions;
+	public int maxDepth;
+	public boolean error;
+
+	public void reset() {
+		for (int i = 0; i < nanos.length; i++)
+			nanos[i] = 0;
+		tokens = 0;
+		reductions = 0;
+		maxDepth = 0;
+		error = false;
+	}
+
+	public long nanos(Stage stage) {
+		return nanos[stage.ordinal()];
+	}
+
+	public void add(Stage stage, long nanos) {
+		this.nanos[stage.ordinal()] += nanos;
+	}
+
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (Stage stage : Stage.values())
+			result.append(stage).append(' ').append(nanos(stage)).append("ns  ");
+		return result.append(tokens).append(" tokens  ").append(reductions).append(
+				" reductions  depth ").append(maxDepth).append(error ? "  error" : "").toString();
+	}
+}
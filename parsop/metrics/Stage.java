@@ -0,0 +1,26 @@
+package parsop.metrics;
+
+/**
+ * The parts of a parse which are timed separately. They do not overlap, and
+ * Total covers them all.
+ */
+public enum Stage {
+	/**
+	 * Picking up the grammar and splitting the input into tokens
+	 */
+	Tokenize,
+	/**
+	 * The loop of the parse engine, other than syntax checks
+	 */
+	Parse,
+	/**
+	 * The SyntaxChecker, summed over every token
+	 */
+	Check,
+	/**
+	 * Building the tree from reverse Polish notation. The Pratt engine builds
+	 * it during Parse.
+	 */
+	Build,
+	Total
+}
@@ -1,29 +1,95 @@
 package parsop.parser;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import parsop.grammar.tokens.Token;
 
+/**
+ * A node of a parsed expression: a token and the trees of its operands.
+ *
+ * Each tree carries a Merkle-style hash of its whole structure, computed from
+ * its token and the hashes of its operands when it is constructed, so it costs
+ * constant time per node and the operands must be complete by then. Two trees
+ * with different hashes differ; trees with equal hashes are compared node by
+ * node by equals(). The hash depends only on the symbols and types of the
+ * tokens, so it is the same in every run and may be stored, and ASTDiff uses
+ * it to skip subtrees which did not change.
+ *
+ * @author aozdemir
+ *
+ */
 public class AST {
-	
+
 	Token node;
 	List<AST> operands;
+	long hash;
 
 	public AST(Token node, List<AST> operands) {
 		this.node = node;
 		this.operands = operands;
+		this.hash = hash(node, operands);
 	}
 
-	public String toString() {
-		StringBuffer result = new StringBuffer("{");
-		result.append(this.node.toString());
+	private static long hash(Token node, List<AST> operands) {
+		// Not Token.hashCode(), which mixes in the identity hash of the type
+		long hash = node.symbol().hashCode() * 31L + node.type().ordinal();
+		hash = hash * 0x9E3779B97F4A7C15L + operands.size();
 		for (AST operand : operands)
-			result.append(", ").append(operand.toString());
-		result.append('}');
-		return result.toString();
+			hash = (hash ^ operand.hash) * 0x100000001B3L + 0x632BE59BD9B4E019L;
+		return hash ^ (hash >>> 29);
+	}
+
+	public String toString() {
+		return ASTPrinter.toBraces(this);
 	}
 
 	public Token getNode() {
 		return node;
 	}
+
+	public List<AST> getOperands() {
+		return operands;
+	}
+
+	/**
+	 * @return The 64 bit hash of the structure of the tree
+	 */
+	public long hash() {
+		return hash;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Structural equality: equal tokens and equal operands in the same order.
+	 * Subtrees with different hashes are told apart at once, and shared
+	 * subtrees are not walked.
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof AST) || ((AST) other).hash != hash)
+			return false;
+		List<AST> left = new ArrayList<AST>();
+		List<AST> right = new ArrayList<AST>();
+		left.add(this);
+		right.add((AST) other);
+		while (!left.isEmpty()) {
+			AST x = left.remove(left.size() - 1);
+			AST y = right.remove(right.size() - 1);
+			if (x == y)
+				continue;
+			if (x.hash != y.hash || !x.node.equals(y.node)
+					|| x.operands.size() != y.operands.size())
+				return false;
+			left.addAll(x.operands);
+			right.addAll(y.operands);
+		}
+		return true;
+	}
 }
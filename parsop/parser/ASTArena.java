@@ -0,0 +1,374 @@
+package parsop.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import parsop.grammar.tokens.CallOpen;
+import parsop.grammar.tokens.Identifier;
+import parsop.grammar.tokens.NumericLiteral;
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+import parsop.util.IntStack;
+
+/**
+ * Stores ASTs outside the Java heap, in direct ByteBuffers, so that trees of
+ * millions of nodes cost the garbage collector a few buffer objects rather
+ * than millions of AST and List objects.
+ *
+ * Each node is a fixed record of eight ints:
+ *
+ *    type    : the ordinal of the TokenType of its token
+ *    symbol  : the id of its token in the arena's symbol table, or for an
+ *              identifier where its text is
+ *    parent  : the parent node, or -1 for a root
+ *    first   : the first operand, or -1 for a leaf
+ *    next    : the next operand of the parent, or -1
+ *    arity   : the number of operands
+ *    offset  : where the token starts in the input, or -1 if unknown
+ *    index   : the index of the token, as Token.getIndex()
+ *
+ * Nodes are numbered in the order they are added, which is postorder, and
+ * live in chunks of 2^16 nodes so that the arena grows without copying.
+ *
+ * The text of each identifier is kept off the heap too, in chunks of 1 MB,
+ * after a header of its length, token class, SymbolTable id and, for a
+ * NumericLiteral, its value. Only the tokens of the grammar are interned in
+ * the symbol table, and the names of token classes in another, so the heap
+ * holds as much as the grammar and not the input.
+ *
+ * Trees are added by Parser.parse(input, arena) or copy(AST), and walked
+ * with an ASTCursor. The arena's lifetime is explicit: clear() drops every
+ * tree and both tables and keeps the buffers for reuse, and close() releases the buffers,
+ * after which any use of the arena or its cursors throws an
+ * IllegalStateException. An arena is not thread-safe.
+ *
+ * @author aozdemir
+ *
+ */
+public class ASTArena implements AutoCloseable {
+
+	static final int NODE_BYTES = 32;
+	static final int CHUNK_BITS = 16;
+	static final int CHUNK_NODES = 1 << CHUNK_BITS;
+	static final int CHUNK_MASK = CHUNK_NODES - 1;
+
+	static final int TYPE = 0;
+	static final int SYMBOL = 4;
+	static final int PARENT = 8;
+	static final int FIRST = 12;
+	static final int NEXT = 16;
+	static final int ARITY = 20;
+	static final int OFFSET = 24;
+	static final int INDEX = 28;
+
+	static final int TEXT_BITS = 20;
+	static final int TEXT_BYTES = 1 << TEXT_BITS;
+	// An address of text is its chunk and position in one positive int
+	static final int TEXT_CHUNKS = 1 << (31 - TEXT_BITS);
+
+	static final int LENGTH = 0;
+	static final int CLASS = 4;
+	static final int ID = 8;
+	static final int KIND = 12;
+	static final int VALUE = 16;
+	static final int CHARS = 24;
+
+	private static final int PLAIN = 0;
+	private static final int INTEGRAL = 1;
+	private static final int REAL = 2;
+
+	private static final TokenType[] TYPES = TokenType.values();
+
+	private List<ByteBuffer> chunks;
+	private int nodeCount;
+	private List<ByteBuffer> texts;
+	// The address the next text is written at
+	private int textEnd;
+	private Map<Token, Integer> symbolIds;
+	private List<Token> symbols;
+	private Map<String, Integer> tokenClassIds;
+	private List<String> tokenClasses;
+	private boolean closed;
+
+	public ASTArena() {
+		this.chunks = new ArrayList<ByteBuffer>();
+		this.texts = new ArrayList<ByteBuffer>();
+		this.symbolIds = new HashMap<Token, Integer>();
+		this.symbols = new ArrayList<Token>();
+		this.tokenClassIds = new HashMap<String, Integer>();
+		this.tokenClasses = new ArrayList<String>();
+	}
+
+	/**
+	 * Adds a node whose operands are the top arity nodes of the stack, and
+	 * replaces them on the stack with the new node
+	 *
+	 * @return The new node
+	 */
+	int add(Token t, int offset, IntStack stack, int arity) {
+		checkOpen();
+		int node = nodeCount;
+		if ((node >>> CHUNK_BITS) == chunks.size())
+			chunks.add(ByteBuffer.allocateDirect(CHUNK_NODES * NODE_BYTES).order(
+					ByteOrder.nativeOrder()));
+		nodeCount++;
+		int first = arity == 0 ? -1 : stack.get(stack.size() - arity);
+		put(node, TYPE, t.type().ordinal());
+		put(node, SYMBOL, t instanceof Identifier ? text((Identifier) t) : symbolId(t));
+		put(node, PARENT, -1);
+		put(node, FIRST, first);
+		put(node, NEXT, -1);
+		put(node, ARITY, arity);
+		put(node, OFFSET, offset);
+		put(node, INDEX, t.getIndex());
+		for (int k = stack.size() - arity; k < stack.size(); k++) {
+			int operand = stack.get(k);
+			put(operand, PARENT, node);
+			put(operand, NEXT, k + 1 < stack.size() ? stack.get(k + 1) : -1);
+		}
+		for (int k = 0; k < arity; k++)
+			stack.pop();
+		stack.push(node);
+		return node;
+	}
+
+	/**
+	 * Equal tokens share an id. A CallOpen's arity is not part of its
+	 * equality, so the arity of a node is kept in the node.
+	 */
+	private int symbolId(Token t) {
+		Integer id = symbolIds.get(t);
+		if (id == null) {
+			id = symbols.size();
+			symbolIds.put(t, id);
+			symbols.add(t);
+		}
+		return id;
+	}
+
+	/**
+	 * Writes the identifier's text and what else it holds after the last
+	 * text, in a new chunk if it does not fit
+	 *
+	 * @return The address of the text
+	 */
+	private int text(Identifier t) {
+		String symbol = t.symbol();
+		int size = CHARS + 2 * symbol.length();
+		int chunk = textEnd >>> TEXT_BITS;
+		int position = textEnd & (TEXT_BYTES - 1);
+		if (position > 0 && position + size > TEXT_BYTES) {
+			chunk++;
+			position = 0;
+		}
+		if (chunk == TEXT_CHUNKS)
+			throw new IllegalStateException("The arena has no room for more text");
+		if (chunk == texts.size())
+			texts.add(null);
+		ByteBuffer text = texts.get(chunk);
+		// A chunk is larger than TEXT_BYTES only to hold one long identifier
+		if (text == null || text.capacity() < size) {
+			text = ByteBuffer.allocateDirect(Math.max(TEXT_BYTES, size)).order(ByteOrder
+					.nativeOrder());
+			texts.set(chunk, text);
+		}
+		int kind = PLAIN;
+		long value = 0;
+		if (t instanceof NumericLiteral) {
+			NumericLiteral literal = (NumericLiteral) t;
+			kind = literal.isIntegral() ? INTEGRAL : REAL;
+			value = literal.isIntegral() ? literal.longValue() : Double.doubleToRawLongBits(
+					literal.doubleValue());
+		}
+		text.putInt(position + LENGTH, symbol.length());
+		text.putInt(position + CLASS, tokenClassId(t.tokenClass()));
+		text.putInt(position + ID, t.id());
+		text.putInt(position + KIND, kind);
+		text.putLong(position + VALUE, value);
+		for (int i = 0; i < symbol.length(); i++)
+			text.putChar(position + CHARS + 2 * i, symbol.charAt(i));
+		int address = chunk << TEXT_BITS | position;
+		textEnd = position + size >= TEXT_BYTES ? (chunk + 1) << TEXT_BITS : address + size;
+		return address;
+	}
+
+	private int tokenClassId(String tokenClass) {
+		if (tokenClass == null)
+			return -1;
+		Integer id = tokenClassIds.get(tokenClass);
+		if (id == null) {
+			id = tokenClasses.size();
+			tokenClassIds.put(tokenClass, id);
+			tokenClasses.add(tokenClass);
+		}
+		return id;
+	}
+
+	/**
+	 * Copies an on-heap tree into the arena. Offsets are unknown, and so are
+	 * -1.
+	 *
+	 * @return A cursor at the root of the copy
+	 */
+	public ASTCursor copy(AST tree) {
+		IntStack stack = new IntStack();
+		// Root first with the operands taken right to left, which reversed is
+		// postorder
+		List<AST> pending = new ArrayList<AST>();
+		List<AST> order = new ArrayList<AST>();
+		pending.add(tree);
+		while (!pending.isEmpty()) {
+			AST node = pending.remove(pending.size() - 1);
+			order.add(node);
+			pending.addAll(node.operands);
+		}
+		for (int i = order.size() - 1; i >= 0; i--) {
+			AST node = order.get(i);
+			add(node.node, -1, stack, node.operands.size());
+		}
+		return new ASTCursor(this, stack.pop());
+	}
+
+	/**
+	 * Rebuilds the subtree at node as AST objects
+	 */
+	public AST toAST(int node) {
+		checkOpen();
+		List<AST> trees = new ArrayList<AST>();
+		// In postorder, the subtree is the nodes from its first leaf to itself
+		int first = node;
+		while (get(first, FIRST) >= 0)
+			first = get(first, FIRST);
+		for (int n = first; n <= node; n++) {
+			int arity = get(n, ARITY);
+			List<AST> operands = new ArrayList<AST>(trees.subList(trees.size() - arity, trees
+					.size()));
+			for (int k = 0; k < arity; k++)
+				trees.remove(trees.size() - 1);
+			trees.add(new AST(token(n), operands));
+		}
+		return trees.get(0);
+	}
+
+	/**
+	 * @return A new token for the node, with its index. A CallOpen is copied
+	 *         with the node's arity.
+	 */
+	public Token token(int node) {
+		checkOpen();
+		int index = get(node, INDEX);
+		if (type(node) == TokenType.Identifier)
+			return identifier(get(node, SYMBOL), index);
+		Token t = symbols.get(get(node, SYMBOL)).cloneWithIndex(index);
+		if (!(t instanceof CallOpen))
+			return t;
+		CallOpen call = (CallOpen) t;
+		while (call.arity() < get(node, ARITY))
+			call.addArgument();
+		return call;
+	}
+
+	private Identifier identifier(int address, int index) {
+		ByteBuffer text = texts.get(address >>> TEXT_BITS);
+		int position = address & (TEXT_BYTES - 1);
+		char[] chars = new char[text.getInt(position + LENGTH)];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = text.getChar(position + CHARS + 2 * i);
+		String symbol = new String(chars);
+		int tokenClass = text.getInt(position + CLASS);
+		String name = tokenClass < 0 ? null : tokenClasses.get(tokenClass);
+		long value = text.getLong(position + VALUE);
+		switch (text.getInt(position + KIND)) {
+		case INTEGRAL:
+			return new NumericLiteral(symbol, name, value, index);
+		case REAL:
+			return new NumericLiteral(symbol, name, Double.longBitsToDouble(value), index);
+		default:
+			return new Identifier(symbol, name, index, text.getInt(position + ID));
+		}
+	}
+
+	/**
+	 * @return The token of the grammar with the id, as first added
+	 */
+	public Token symbol(int id) {
+		return symbols.get(id);
+	}
+
+	public int symbolCount() {
+		return symbols.size();
+	}
+
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return The number of bytes of buffers held, whether or not in use
+	 */
+	public long capacity() {
+		long bytes = (long) chunks.size() * CHUNK_NODES * NODE_BYTES;
+		for (ByteBuffer text : texts)
+			if (text != null)
+				bytes += text.capacity();
+		return bytes;
+	}
+
+	public ASTCursor cursor(int node) {
+		checkOpen();
+		if (node < 0 || node >= nodeCount)
+			throw new IndexOutOfBoundsException("No node " + node);
+		return new ASTCursor(this, node);
+	}
+
+	/**
+	 * Drops every tree and the tables, keeping the buffers for the next
+	 */
+	public void clear() {
+		checkOpen();
+		nodeCount = 0;
+		textEnd = 0;
+		symbolIds.clear();
+		symbols.clear();
+		tokenClassIds.clear();
+		tokenClasses.clear();
+	}
+
+	/**
+	 * Releases the buffers. Their memory is returned when the buffer objects
+	 * are collected, since a direct ByteBuffer cannot be freed explicitly.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		chunks = null;
+		texts = null;
+		symbolIds = null;
+		symbols = null;
+		tokenClassIds = null;
+		tokenClasses = null;
+	}
+
+	void checkOpen() {
+		if (closed)
+			throw new IllegalStateException("The arena is closed");
+	}
+
+	TokenType type(int node) {
+		return TYPES[get(node, TYPE)];
+	}
+
+	int get(int node, int field) {
+		if (closed)
+			checkOpen();
+		return chunks.get(node >>> CHUNK_BITS).getInt((node & CHUNK_MASK) * NODE_BYTES + field);
+	}
+
+	private void put(int node, int field, int value) {
+		chunks.get(node >>> CHUNK_BITS).putInt((node & CHUNK_MASK) * NODE_BYTES + field, value);
+	}
+}
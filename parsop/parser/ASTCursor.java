@@ -0,0 +1,148 @@
+package parsop.parser;
+
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+
+/**
+ * Walks the trees of an ASTArena the way one walks AST objects, by moving
+ * between a node, its operands and its parent. A cursor is one int into the
+ * arena, so it is cheap to copy() at a node to come back to.
+ *
+ * For example, counting the identifiers under the cursor:
+ *
+ *    int count(ASTCursor c) {
+ *        if (c.isLeaf())
+ *            return 1;
+ *        int n = 0;
+ *        for (boolean more = c.toFirstOperand(); more; more = c.toNextOperand())
+ *            n += count(c);
+ *        c.toParent();
+ *        return n;
+ *    }
+ *
+ * @author aozdemir
+ *
+ */
+public class ASTCursor {
+
+	private ASTArena arena;
+	private int node;
+
+	ASTCursor(ASTArena arena, int node) {
+		this.arena = arena;
+		this.node = node;
+	}
+
+	/**
+	 * @return The number of the node in the arena
+	 */
+	public int node() {
+		return node;
+	}
+
+	/**
+	 * Moves to a node of the same arena
+	 */
+	public void moveTo(int node) {
+		if (node < 0 || node >= arena.nodeCount())
+			throw new IndexOutOfBoundsException("No node " + node);
+		this.node = node;
+	}
+
+	public TokenType type() {
+		return arena.type(node);
+	}
+
+	/**
+	 * @return The id of the token in the arena's symbol table, or for an
+	 *         identifier where its text is in the arena
+	 */
+	public int symbolId() {
+		return arena.get(node, ASTArena.SYMBOL);
+	}
+
+	/**
+	 * @return The token, as AST.getNode()
+	 */
+	public Token token() {
+		return arena.token(node);
+	}
+
+	/**
+	 * @return Where the token starts in the input, or -1 if unknown
+	 */
+	public int offset() {
+		return arena.get(node, ASTArena.OFFSET);
+	}
+
+	/**
+	 * @return The number of operands, as AST.getOperands().size()
+	 */
+	public int arity() {
+		return arena.get(node, ASTArena.ARITY);
+	}
+
+	public boolean isLeaf() {
+		return arena.get(node, ASTArena.FIRST) < 0;
+	}
+
+	/**
+	 * @return Whether there is a first operand to move to. If not, the cursor
+	 *         stays.
+	 */
+	public boolean toFirstOperand() {
+		return move(arena.get(node, ASTArena.FIRST));
+	}
+
+	/**
+	 * @return Whether there is a next operand of the parent to move to. If
+	 *         not, the cursor stays.
+	 */
+	public boolean toNextOperand() {
+		return move(arena.get(node, ASTArena.NEXT));
+	}
+
+	/**
+	 * @return Whether there is a parent to move to. If not, the cursor stays.
+	 */
+	public boolean toParent() {
+		return move(arena.get(node, ASTArena.PARENT));
+	}
+
+	/**
+	 * Moves to operand i, counting from 0
+	 */
+	public void toOperand(int i) {
+		if (i < 0 || i >= arity())
+			throw new IndexOutOfBoundsException(String.format("No operand %d of %d", i,
+					arity()));
+		toFirstOperand();
+		for (int k = 0; k < i; k++)
+			toNextOperand();
+	}
+
+	private boolean move(int target) {
+		if (target < 0)
+			return false;
+		node = target;
+		return true;
+	}
+
+	public ASTCursor copy() {
+		return new ASTCursor(arena, node);
+	}
+
+	/**
+	 * @return The subtree under the cursor as AST objects
+	 */
+	public AST toAST() {
+		return arena.toAST(node);
+	}
+
+	/**
+	 * @return The subtree in the format of AST.toString()
+	 */
+	public String toString() {
+		return toAST().toString();
+	}
+}
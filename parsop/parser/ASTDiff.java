@@ -0,0 +1,277 @@
+package parsop.parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+
+/**
+ * Finds the subtrees which differ between two trees, or between two sets of
+ * named trees such as two versions of a file of rules.
+ *
+ * The walk goes down both trees together and stops wherever the hashes of
+ * the two subtrees agree, so identical parts are skipped in constant time and
+ * the cost is proportional to the nodes on the paths to the changes. Equal
+ * hashes are taken to mean equal subtrees: with 64 bit hashes a collision
+ * between two versions of a rule is not a practical concern, and skipping
+ * the check is what makes unchanged rules free.
+ *
+ * Where the nodes have the same token and number of operands, the operands
+ * are compared position by position. Where they have the same token but a
+ * different number of operands, such as a call which gained an argument, the
+ * operands are aligned by a longest common subsequence of their hashes, and
+ * those left over are compared in order, with the surplus reported as added
+ * or removed. Anywhere else the whole subtree is reported as changed.
+ *
+ * A change is located by a path of operand positions from the root, like
+ * "/1/0" for the first operand of the second, prefixed by the name of the
+ * rule when comparing sets. Positions are in the new tree, except for
+ * removed operands, whose positions are in the old one.
+ *
+ * @author aozdemir
+ *
+ */
+public class ASTDiff {
+
+	public enum Kind {
+		Added, Removed, Changed
+	}
+
+	public static class Change {
+		Kind kind;
+		String path;
+		AST before;
+		AST after;
+
+		Change(Kind kind, String path, AST before, AST after) {
+			this.kind = kind;
+			this.path = path;
+			this.before = before;
+			this.after = after;
+		}
+
+		public Kind kind() {
+			return kind;
+		}
+
+		public String path() {
+			return path;
+		}
+
+		/**
+		 * @return The old subtree, or null if it was added
+		 */
+		public AST before() {
+			return before;
+		}
+
+		/**
+		 * @return The new subtree, or null if it was removed
+		 */
+		public AST after() {
+			return after;
+		}
+
+		/**
+		 * @return Like "~ /1/0: {+, a, b} -> {-, a, b}"
+		 */
+		public String toString() {
+			switch (kind) {
+			case Added:
+				return "+ " + path + ": " + after;
+			case Removed:
+				return "- " + path + ": " + before;
+			default:
+				return "~ " + path + ": " + before + " -> " + after;
+			}
+		}
+	}
+
+	/**
+	 * Two subtrees left to compare
+	 */
+	private static class Pair {
+		final AST before;
+		final AST after;
+		final String path;
+
+		Pair(AST before, AST after, String path) {
+			this.before = before;
+			this.after = after;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * @return The changes from before to after, in the order of their paths
+	 */
+	public static List<Change> diff(AST before, AST after) {
+		List<Change> changes = new ArrayList<Change>();
+		diff(before, after, "", changes);
+		return changes;
+	}
+
+	/**
+	 * Compares two sets of named trees. A name only in before is reported as
+	 * removed and a name only in after as added, with the name as the path.
+	 *
+	 * @return The changes, by rule in the order of before and then of the
+	 *         names new in after
+	 */
+	public static List<Change> diff(Map<String, AST> before, Map<String, AST> after) {
+		List<Change> changes = new ArrayList<Change>();
+		for (Map.Entry<String, AST> rule : before.entrySet()) {
+			AST next = after.get(rule.getKey());
+			if (next == null)
+				changes.add(new Change(Kind.Removed, rule.getKey(), rule.getValue(), null));
+			else
+				diff(rule.getValue(), next, rule.getKey(), changes);
+		}
+		for (Map.Entry<String, AST> rule : after.entrySet())
+			if (!before.containsKey(rule.getKey()))
+				changes.add(new Change(Kind.Added, rule.getKey(), null, rule.getValue()));
+		return changes;
+	}
+
+	/**
+	 * Walks with an explicit stack of pending Pairs and Changes, pushed in
+	 * reverse so that they come out in the order of their paths
+	 */
+	private static void diff(AST before, AST after, String prefix, List<Change> changes) {
+		List<Object> pending = new ArrayList<Object>();
+		pending.add(new Pair(before, after, prefix));
+		while (!pending.isEmpty()) {
+			Object next = pending.remove(pending.size() - 1);
+			if (next instanceof Change) {
+				changes.add((Change) next);
+				continue;
+			}
+			Pair pair = (Pair) next;
+			AST a = pair.before;
+			AST b = pair.after;
+			if (a.hash == b.hash)
+				continue;
+			if (!a.node.equals(b.node)) {
+				changes.add(new Change(Kind.Changed, root(pair.path), a, b));
+				continue;
+			}
+			List<Object> children = a.operands.size() == b.operands.size() ? inPlace(pair)
+					: aligned(pair);
+			for (int i = children.size() - 1; i >= 0; i--)
+				pending.add(children.get(i));
+		}
+	}
+
+	private static List<Object> inPlace(Pair pair) {
+		List<Object> children = new ArrayList<Object>();
+		for (int i = 0; i < pair.before.operands.size(); i++)
+			children.add(new Pair(pair.before.operands.get(i), pair.after.operands.get(i),
+					pair.path + "/" + i));
+		return children;
+	}
+
+	/**
+	 * Matches the operands by a longest common subsequence of their hashes,
+	 * and pairs up the unmatched ones between each two matches
+	 */
+	private static List<Object> aligned(Pair pair) {
+		List<AST> a = pair.before.operands;
+		List<AST> b = pair.after.operands;
+		int n = a.size();
+		int m = b.size();
+		// common[i][j] is the length of the LCS of a[i..] and b[j..]
+		int[][] common = new int[n + 1][m + 1];
+		for (int i = n - 1; i >= 0; i--)
+			for (int j = m - 1; j >= 0; j--)
+				common[i][j] = a.get(i).hash == b.get(j).hash ? common[i + 1][j + 1] + 1 : Math
+						.max(common[i + 1][j], common[i][j + 1]);
+		List<Object> children = new ArrayList<Object>();
+		int i = 0;
+		int j = 0;
+		int gapI = 0;
+		int gapJ = 0;
+		while (i < n || j < m) {
+			if (i < n && j < m && a.get(i).hash == b.get(j).hash
+					&& common[i][j] == common[i + 1][j + 1] + 1) {
+				gap(pair, gapI, i, gapJ, j, children);
+				gapI = ++i;
+				gapJ = ++j;
+			} else if (j == m || (i < n && common[i + 1][j] >= common[i][j + 1]))
+				i++;
+			else
+				j++;
+		}
+		gap(pair, gapI, n, gapJ, m, children);
+		return children;
+	}
+
+	private static void gap(Pair pair, int fromI, int toI, int fromJ, int toJ,
+			List<Object> children) {
+		List<AST> a = pair.before.operands;
+		List<AST> b = pair.after.operands;
+		int paired = Math.min(toI - fromI, toJ - fromJ);
+		for (int k = 0; k < paired; k++)
+			children.add(new Pair(a.get(fromI + k), b.get(fromJ + k), pair.path + "/"
+					+ (fromJ + k)));
+		for (int k = fromI + paired; k < toI; k++)
+			children.add(new Change(Kind.Removed, pair.path + "/" + k, a.get(k), null));
+		for (int k = fromJ + paired; k < toJ; k++)
+			children.add(new Change(Kind.Added, pair.path + "/" + k, null, b.get(k)));
+	}
+
+	private static String root(String path) {
+		return path.isEmpty() ? "/" : path;
+	}
+
+	/**
+	 * Reads rules one per line, as name, a tab, and the expression. A line
+	 * with no tab is named by its line number.
+	 */
+	public static Map<String, AST> readRules(Parser parser, String path) throws IOException,
+			ParseException {
+		Map<String, AST> rules = new LinkedHashMap<String, AST>();
+		List<String> lines = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
+		for (int l = 0; l < lines.size(); l++) {
+			String line = lines.get(l);
+			if (line.trim().isEmpty())
+				continue;
+			int tab = line.indexOf('\t');
+			rules.put(tab < 0 ? Integer.toString(l + 1) : line.substring(0, tab), parser
+					.parse(tab < 0 ? line : line.substring(tab + 1)));
+		}
+		return rules;
+	}
+
+	/**
+	 * Usage: grammar old_rules new_rules
+	 */
+	public static void main(String[] args) throws IOException, GrammarException,
+			ParseException {
+		if (args.length != 3) {
+			System.err.println("Usage: diff path_to_grammar_spec old_rules new_rules");
+			System.exit(2);
+		}
+		Grammar grammar = Grammar.fromFile(args[0]);
+		Parser parser = new Parser(() -> grammar, false);
+		Map<String, AST> before = readRules(parser, args[1]);
+		Map<String, AST> after = readRules(parser, args[2]);
+		long start = System.nanoTime();
+		List<Change> changes = diff(before, after);
+		long nanos = System.nanoTime() - start;
+		for (Change change : changes)
+			System.out.println(change);
+		int[] counts = new int[Kind.values().length];
+		for (Change change : changes)
+			counts[change.kind.ordinal()]++;
+		System.err.printf("%d changes (%d added, %d removed, %d changed) in %.2f ms%n", changes
+				.size(), counts[Kind.Added.ordinal()], counts[Kind.Removed.ordinal()],
+				counts[Kind.Changed.ordinal()], nanos / 1e6);
+	}
+}
@@ -0,0 +1,229 @@
+package parsop.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.tokens.CallOpen;
+import parsop.grammar.tokens.CloseGroup;
+import parsop.grammar.tokens.OpenGroup;
+import parsop.grammar.tokens.Separator;
+import parsop.grammar.tokens.TernaryOperation;
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+
+/**
+ * Writes ASTs straight to an Appendable, such as a Writer or StringBuilder.
+ * 
+ * Two formats are supported: the {op, a, b} format of AST.toString(), and
+ * infix notation with the fewest parentheses that the precedence and
+ * associativity of the Grammar allow, which parses back to the same tree.
+ * 
+ * Both walk the tree with an explicit stack of pending pieces, so printing
+ * takes time linear in the size of the output and deep trees do not overflow
+ * the call stack.
+ * 
+ * @author aozdemir
+ *
+ */
+public class ASTPrinter {
+
+	Grammar grammar;
+	Set<String> symbolBigrams;
+
+	// State of the current infix print
+	Appendable out;
+	char lastChar;
+
+	/**
+	 * Constructs a printer for infix notation in the grammar
+	 */
+	public ASTPrinter(Grammar grammar) {
+		this.grammar = grammar;
+		this.symbolBigrams = new HashSet<String>();
+		for (String symbol : grammar.specialSymbols())
+			for (int i = 0; i + 1 < symbol.length(); i++)
+				symbolBigrams.add(symbol.substring(i, i + 2));
+	}
+
+	/**
+	 * Writes the tree in the {op, a, b} format
+	 */
+	public static void printBraces(AST tree, Appendable out) throws IOException {
+		List<Object> pending = new ArrayList<Object>();
+		pending.add(tree);
+		while (!pending.isEmpty()) {
+			Object next = pending.remove(pending.size() - 1);
+			if (next instanceof String) {
+				out.append((String) next);
+				continue;
+			}
+			AST node = (AST) next;
+			out.append('{').append(node.node.toString());
+			pending.add("}");
+			for (int i = node.operands.size() - 1; i >= 0; i--) {
+				pending.add(node.operands.get(i));
+				pending.add(", ");
+			}
+		}
+	}
+
+	public static String toBraces(AST tree) {
+		StringBuilder result = new StringBuilder();
+		try {
+			printBraces(tree, result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Writes the tree in infix notation. Binary and ternary symbols are
+	 * surrounded by spaces; other tokens are only separated where they would
+	 * otherwise run together into a different token.
+	 */
+	public void printInfix(AST tree, Appendable out) throws IOException {
+		this.out = out;
+		this.lastChar = ' ';
+		List<Object> pending = new ArrayList<Object>();
+		pending.add(tree);
+		while (!pending.isEmpty()) {
+			Object next = pending.remove(pending.size() - 1);
+			if (next instanceof String)
+				write((String) next);
+			else
+				expand((AST) next, pending);
+		}
+	}
+
+	public String toInfix(AST tree) {
+		StringBuilder result = new StringBuilder();
+		try {
+			printInfix(tree, result);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Pushes the pieces of the node on the pending stack, last piece first
+	 */
+	private void expand(AST node, List<Object> pending) {
+		Token t = node.node;
+		List<AST> operands = node.operands;
+		switch (t.type()) {
+		case Identifier:
+			pending.add(t.symbol());
+			break;
+		case OpenGroup:
+			CloseGroup close = grammar.closeGroup((OpenGroup) t);
+			pending.add(close == null ? "" : close.symbol());
+			pending.add(operands.get(0));
+			pending.add(t.symbol());
+			break;
+		case UnaryOperation:
+			push(pending, operands.get(0), needsParentheses(t, operands.get(0), false));
+			pending.add(t.symbol());
+			break;
+		case PostfixOperation:
+			pending.add(t.symbol());
+			push(pending, operands.get(0), needsParentheses(t, operands.get(0), true));
+			break;
+		case CallOpen:
+			CallOpen call = (CallOpen) t;
+			Separator separator = call.separator();
+			pending.add(call.close().symbol());
+			for (int i = operands.size() - 1; i >= 1; i--) {
+				pending.add(operands.get(i));
+				if (i > 1)
+					pending.add(separator.symbol() + ' ');
+			}
+			pending.add(t.symbol());
+			push(pending, operands.get(0), needsParentheses(t, operands.get(0), true));
+			break;
+		case TernaryOperation:
+			TernaryOperation ternary = (TernaryOperation) t;
+			push(pending, operands.get(2), needsParentheses(t, operands.get(2), false));
+			pending.add(' ' + t.symbol() + ' ');
+			pending.add(operands.get(1));
+			pending.add(' ' + ternary.open().symbol() + ' ');
+			push(pending, operands.get(0), needsParentheses(t, operands.get(0), true));
+			break;
+		default:
+			// Rewriting may flatten a chain of binary operations into one node
+			int last = operands.size() - 1;
+			for (int i = last; i >= 0; i--) {
+				AST operand = operands.get(i);
+				boolean parenthesize = i == last ? needsParentheses(t, operand, false)
+						: needsParentheses(t, operand, true)
+								|| (i > 0 && needsParentheses(t, operand, false));
+				push(pending, operand, parenthesize);
+				if (i > 0)
+					pending.add(' ' + t.symbol() + ' ');
+			}
+		}
+	}
+
+	private void push(List<Object> pending, AST operand, boolean parenthesize) {
+		if (parenthesize) {
+			pending.add(")");
+			pending.add(operand);
+			pending.add("(");
+		} else
+			pending.add(operand);
+	}
+
+	/**
+	 * An operand needs parentheses if it binds more loosely than its parent,
+	 * or equally on the side that the parent's associativity does not favor.
+	 */
+	private boolean needsParentheses(Token parent, AST operand, boolean leftSide) {
+		int child = grammar.precedence(operand.node);
+		// Identifiers and groups are atoms
+		if (child < 0)
+			return false;
+		// Prefix operations nest without parentheses
+		if (parent.type() == TokenType.UnaryOperation
+				&& operand.node.type() == TokenType.UnaryOperation)
+			return false;
+		int own = grammar.precedence(parent);
+		if (child != own)
+			return child > own;
+		return leftSide == grammar.isRightAssociative(parent);
+	}
+
+	private void write(String text) throws IOException {
+		if (text.isEmpty())
+			return;
+		char first = text.charAt(0);
+		if (runTogether(lastChar, first))
+			out.append(' ');
+		out.append(text);
+		lastChar = text.charAt(text.length() - 1);
+	}
+
+	/**
+	 * Two adjacent tokens run together if both are words, or if their
+	 * boundary could be inside a special symbol
+	 */
+	private boolean runTogether(char last, char first) {
+		if (Character.isWhitespace(last) || Character.isWhitespace(first))
+			return false;
+		if (isWordChar(last) && isWordChar(first))
+			return true;
+		return symbolBigrams.contains(new String(new char[] { last, first }));
+	}
+
+	/**
+	 * The characters of \w, which word symbols like "not" would run into
+	 */
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
@@ -0,0 +1,336 @@
+package parsop.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.tokens.CallOpen;
+import parsop.grammar.tokens.Identifier;
+import parsop.grammar.tokens.NumericLiteral;
+import parsop.grammar.tokens.Token;
+
+/**
+ * Reads ASTs encoded by BinaryASTWriter directly from a ByteBuffer, such as a
+ * mapped file, without building AST objects.
+ * 
+ * The nodes can be streamed in postorder to a Visitor, or navigated by node
+ * number: nodes are numbered in postorder, so the root is the last node. The
+ * first navigation computes one int[] of node offsets and one of subtree
+ * sizes; strings are only decoded when asked for.
+ * 
+ * The reader only uses absolute gets and never moves the buffer's position,
+ * so any number of readers, one per thread, may share a buffer.
+ * 
+ * @author aozdemir
+ *
+ */
+public class BinaryASTReader {
+
+	public interface Visitor {
+		void identifier(int identifierId);
+
+		void integer(int identifierId, long value);
+
+		void real(int identifierId, double value);
+
+		void operation(int symbolId, int arity);
+	}
+
+	private ByteBuffer buffer;
+	private int[] symbolOffsets;
+	private int[] classOffsets;
+	private int[] identifierOffsets;
+	private int[] identifierClasses;
+	private int nodeCount;
+	private int nodesStart;
+
+	// Computed on the first navigation
+	private int[] nodeOffsets;
+	private int[] subtreeSizes;
+
+	// Position after the last varint read
+	private int cursor;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not start with an encoded AST
+	 */
+	public BinaryASTReader(ByteBuffer buffer) {
+		this.buffer = buffer;
+		int start = buffer.position();
+		for (int i = 0; i < BinaryASTWriter.MAGIC.length; i++)
+			if (buffer.get(start + i) != BinaryASTWriter.MAGIC[i])
+				throw new IllegalArgumentException("Not an encoded AST");
+		if (buffer.get(start + 4) != BinaryASTWriter.VERSION)
+			throw new IllegalArgumentException("Unsupported version " + buffer.get(start + 4));
+		cursor = start + 5;
+		symbolOffsets = skipStrings();
+		classOffsets = skipStrings();
+		identifierOffsets = new int[(int) readVarint(cursor)];
+		identifierClasses = new int[identifierOffsets.length];
+		for (int i = 0; i < identifierOffsets.length; i++) {
+			identifierOffsets[i] = cursor;
+			int length = (int) readVarint(cursor);
+			cursor += length;
+			identifierClasses[i] = (int) readVarint(cursor) - 1;
+		}
+		nodeCount = (int) readVarint(cursor);
+		nodesStart = cursor;
+	}
+
+	public BinaryASTReader(byte[] encoding) {
+		this(ByteBuffer.wrap(encoding));
+	}
+
+	public int nodeCount() {
+		return nodeCount;
+	}
+
+	public int root() {
+		return nodeCount - 1;
+	}
+
+	public int symbolCount() {
+		return symbolOffsets.length;
+	}
+
+	/**
+	 * @return The toString() of the operation token with the id
+	 */
+	public String symbol(int symbolId) {
+		return string(symbolOffsets[symbolId]);
+	}
+
+	public int identifierCount() {
+		return identifierOffsets.length;
+	}
+
+	public String identifier(int identifierId) {
+		return string(identifierOffsets[identifierId]);
+	}
+
+	/**
+	 * @return The name of the token class of the identifier, or null if it
+	 *         has none
+	 */
+	public String tokenClass(int identifierId) {
+		int classId = identifierClasses[identifierId];
+		return classId < 0 ? null : string(classOffsets[classId]);
+	}
+
+	/**
+	 * Streams every node to the visitor, in postorder
+	 */
+	public void accept(Visitor visitor) {
+		int position = nodesStart;
+		for (int n = 0; n < nodeCount; n++)
+			position = visit(position, visitor);
+	}
+
+	private int visit(int position, Visitor visitor) {
+		byte kind = buffer.get(position);
+		int id = (int) readVarint(position + 1);
+		switch (kind) {
+		case BinaryASTWriter.IDENTIFIER:
+			visitor.identifier(id);
+			break;
+		case BinaryASTWriter.INTEGER:
+			long zigzag = readVarint(cursor);
+			visitor.integer(id, (zigzag >>> 1) ^ -(zigzag & 1));
+			break;
+		case BinaryASTWriter.REAL:
+			visitor.real(id, Double.longBitsToDouble(buffer.getLong(cursor)));
+			cursor += 8;
+			break;
+		case BinaryASTWriter.OPERATION:
+			visitor.operation(id, (int) readVarint(cursor));
+			break;
+		default:
+			throw new IllegalStateException("Corrupt node kind " + kind);
+		}
+		return cursor;
+	}
+
+	/**
+	 * @return The kind byte of node n, one of the kinds of BinaryASTWriter
+	 */
+	public byte kind(int n) {
+		index();
+		return buffer.get(nodeOffsets[n]);
+	}
+
+	public boolean isOperation(int n) {
+		return kind(n) == BinaryASTWriter.OPERATION;
+	}
+
+	/**
+	 * @return The symbol id of an operation, or the identifier id otherwise
+	 */
+	public int id(int n) {
+		index();
+		return (int) readVarint(nodeOffsets[n] + 1);
+	}
+
+	public int arity(int n) {
+		if (!isOperation(n))
+			return 0;
+		readVarint(nodeOffsets[n] + 1);
+		return (int) readVarint(cursor);
+	}
+
+	public long longValue(int n) {
+		if (kind(n) == BinaryASTWriter.REAL)
+			return (long) doubleValue(n);
+		readVarint(nodeOffsets[n] + 1);
+		long zigzag = readVarint(cursor);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	public double doubleValue(int n) {
+		if (kind(n) == BinaryASTWriter.INTEGER)
+			return longValue(n);
+		readVarint(nodeOffsets[n] + 1);
+		return Double.longBitsToDouble(buffer.getLong(cursor));
+	}
+
+	/**
+	 * @return The text of node n: its symbol or identifier
+	 */
+	public String text(int n) {
+		return isOperation(n) ? symbol(id(n)) : identifier(id(n));
+	}
+
+	/**
+	 * @return The node number of operand i of node n
+	 */
+	public int operand(int n, int i) {
+		int arity = arity(n);
+		if (i < 0 || i >= arity)
+			throw new IndexOutOfBoundsException(String.format("Operand %d of %d", i, arity));
+		int child = n - 1;
+		for (int j = arity - 1; j > i; j--)
+			child -= subtreeSizes[child];
+		return child;
+	}
+
+	/**
+	 * Rebuilds AST objects, using the grammar to recover the operation tokens
+	 */
+	public AST toAST(Grammar grammar) {
+		Token[] symbolTokens = new Token[symbolCount()];
+		for (int i = 0; i < symbolTokens.length; i++) {
+			symbolTokens[i] = grammar.tokenNamed(symbol(i));
+			if (symbolTokens[i] == null)
+				throw new IllegalArgumentException("The grammar has no token " + symbol(i));
+		}
+		String[] identifiers = new String[identifierCount()];
+		String[] classes = new String[identifierCount()];
+		for (int i = 0; i < identifiers.length; i++) {
+			identifiers[i] = identifier(i);
+			classes[i] = tokenClass(i);
+		}
+		List<AST> operands = new ArrayList<AST>();
+		accept(new Visitor() {
+			public void identifier(int identifierId) {
+				operands.add(leaf(new Identifier(identifiers[identifierId], classes[identifierId],
+						0)));
+			}
+
+			public void integer(int identifierId, long value) {
+				operands.add(leaf(new NumericLiteral(identifiers[identifierId],
+						classes[identifierId], value, 0)));
+			}
+
+			public void real(int identifierId, double value) {
+				operands.add(leaf(new NumericLiteral(identifiers[identifierId],
+						classes[identifierId], value, 0)));
+			}
+
+			public void operation(int symbolId, int arity) {
+				Token t = symbolTokens[symbolId].cloneWithIndex(0);
+				if (t instanceof CallOpen)
+					for (int i = 1; i < arity; i++)
+						((CallOpen) t).addArgument();
+				// The operands are the top arity trees, in order
+				List<AST> top = operands.subList(operands.size() - arity, operands.size());
+				List<AST> children = new ArrayList<AST>(top);
+				top.clear();
+				operands.add(new AST(t, children));
+			}
+		});
+		return operands.get(operands.size() - 1);
+	}
+
+	private static AST leaf(Token t) {
+		return new AST(t, new ArrayList<AST>());
+	}
+
+	/**
+	 * Computes the offset and subtree size of every node, in one pass
+	 */
+	private void index() {
+		if (nodeOffsets != null)
+			return;
+		int[] offsets = new int[nodeCount];
+		int[] sizes = new int[nodeCount];
+		int[] pending = new int[Math.max(nodeCount, 1)];
+		int pendingSize = 0;
+		int position = nodesStart;
+		for (int n = 0; n < nodeCount; n++) {
+			offsets[n] = position;
+			byte kind = buffer.get(position);
+			readVarint(position + 1);
+			int arity = 0;
+			if (kind == BinaryASTWriter.OPERATION)
+				arity = (int) readVarint(cursor);
+			else if (kind == BinaryASTWriter.INTEGER)
+				readVarint(cursor);
+			else if (kind == BinaryASTWriter.REAL)
+				cursor += 8;
+			position = cursor;
+			int size = 1;
+			for (int i = 0; i < arity; i++)
+				size += sizes[pending[--pendingSize]];
+			sizes[n] = size;
+			pending[pendingSize++] = n;
+		}
+		subtreeSizes = sizes;
+		nodeOffsets = offsets;
+	}
+
+	private int[] skipStrings() {
+		int[] offsets = new int[(int) readVarint(cursor)];
+		for (int i = 0; i < offsets.length; i++) {
+			offsets[i] = cursor;
+			int length = (int) readVarint(cursor);
+			cursor += length;
+		}
+		return offsets;
+	}
+
+	private String string(int offset) {
+		int length = (int) readVarint(offset);
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = buffer.get(cursor + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads a varint at position, leaving cursor after it
+	 */
+	private long readVarint(int position) {
+		long result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = buffer.get(position++);
+			result |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		cursor = position;
+		return result;
+	}
+}
@@ -0,0 +1,258 @@
+package parsop.parser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import parsop.grammar.tokens.Identifier;
+import parsop.grammar.tokens.NumericLiteral;
+import parsop.grammar.tokens.Token;
+
+/**
+ * Encodes ASTs in a compact binary format, which BinaryASTReader can walk
+ * without rebuilding the tree.
+ * 
+ * The format is:
+ * 
+ *    magic       : the bytes 'P' 'A' 'S' 'T', then a version byte
+ *    symbols     : varint count, then each as varint length and UTF-8 bytes.
+ *                  These are the toString() of the operation tokens.
+ *    classes     : the same, for the names of the token classes
+ *    identifiers : varint count, then each as varint length, UTF-8 bytes,
+ *                  and varint class: 0 if it has no token class, or one
+ *                  more than the id of its class
+ *    nodes       : varint count, then each node in postorder as a kind byte
+ *                  followed by
+ *                    IDENTIFIER : varint identifier id
+ *                    INTEGER    : varint identifier id, zigzag varint value
+ *                    REAL       : varint identifier id, 8 byte IEEE value
+ *                    OPERATION  : varint symbol id, varint arity
+ * 
+ * Postorder means a reader can evaluate the tree with a single operand stack,
+ * the same way the Parser builds it from reverse Polish notation.
+ * 
+ * @author aozdemir
+ *
+ */
+public class BinaryASTWriter {
+
+	static final byte[] MAGIC = { 'P', 'A', 'S', 'T' };
+	static final byte VERSION = 2;
+
+	static final byte IDENTIFIER = 0;
+	static final byte OPERATION = 1;
+	static final byte INTEGER = 2;
+	static final byte REAL = 3;
+
+	private Map<Token, Integer> symbolIds;
+	private List<String> symbols;
+	private Map<String, Integer> classIds;
+	private List<String> classes;
+	private Map<String, Integer> identifierIds;
+	private List<String> identifiers;
+	private List<Integer> identifierClasses;
+	private ByteSink nodes;
+	private int nodeCount;
+
+	public BinaryASTWriter() {
+		this.symbolIds = new HashMap<Token, Integer>();
+		this.symbols = new ArrayList<String>();
+		this.classIds = new HashMap<String, Integer>();
+		this.classes = new ArrayList<String>();
+		this.identifierIds = new HashMap<String, Integer>();
+		this.identifiers = new ArrayList<String>();
+		this.identifierClasses = new ArrayList<Integer>();
+		this.nodes = new ByteSink(64);
+	}
+
+	/**
+	 * @return The encoding of the tree
+	 */
+	public byte[] encode(AST tree) {
+		reset();
+		writeNodes(tree);
+		ByteSink out = new ByteSink(nodes.size + 16
+				* (symbols.size() + classes.size() + identifiers.size()) + 16);
+		out.write(MAGIC, 0, MAGIC.length);
+		out.write(VERSION);
+		writeStrings(out, symbols);
+		writeStrings(out, classes);
+		out.writeVarint(identifiers.size());
+		for (int i = 0; i < identifiers.size(); i++) {
+			writeString(out, identifiers.get(i));
+			out.writeVarint(identifierClasses.get(i));
+		}
+		out.writeVarint(nodeCount);
+		out.write(nodes.bytes, 0, nodes.size);
+		return out.toByteArray();
+	}
+
+	public void encode(AST tree, OutputStream out) throws IOException {
+		out.write(encode(tree));
+	}
+
+	private void reset() {
+		symbolIds.clear();
+		symbols.clear();
+		classIds.clear();
+		classes.clear();
+		identifierIds.clear();
+		identifiers.clear();
+		identifierClasses.clear();
+		nodes.size = 0;
+		nodeCount = 0;
+	}
+
+	/**
+	 * Writes the nodes in postorder with an explicit stack, so deep trees do
+	 * not overflow the call stack
+	 */
+	private void writeNodes(AST tree) {
+		AST[] stack = new AST[16];
+		int[] nextOperand = new int[16];
+		int top = 0;
+		stack[0] = tree;
+		while (top >= 0) {
+			AST node = stack[top];
+			int next = nextOperand[top];
+			if (next < node.operands.size()) {
+				nextOperand[top]++;
+				if (++top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+					nextOperand = Arrays.copyOf(nextOperand, top * 2);
+				}
+				stack[top] = node.operands.get(next);
+				nextOperand[top] = 0;
+			} else {
+				writeNode(node);
+				top--;
+			}
+		}
+	}
+
+	private void writeNode(AST node) {
+		Token t = node.node;
+		nodeCount++;
+		if (!t.isIdentifier()) {
+			nodes.write(OPERATION);
+			nodes.writeVarint(symbolId(t));
+			nodes.writeVarint(node.operands.size());
+		} else if (t instanceof NumericLiteral && ((NumericLiteral) t).isIntegral()) {
+			nodes.write(INTEGER);
+			nodes.writeVarint(identifierId((Identifier) t));
+			long value = ((NumericLiteral) t).longValue();
+			nodes.writeVarint((value << 1) ^ (value >> 63));
+		} else if (t instanceof NumericLiteral) {
+			nodes.write(REAL);
+			nodes.writeVarint(identifierId((Identifier) t));
+			nodes.writeLong(Double.doubleToRawLongBits(((NumericLiteral) t).doubleValue()));
+		} else {
+			nodes.write(IDENTIFIER);
+			nodes.writeVarint(identifierId((Identifier) t));
+		}
+	}
+
+	/**
+	 * Operation tokens are keyed by the token itself, since equal tokens have
+	 * equal toString() and formatting it for every node is slow
+	 */
+	private int symbolId(Token t) {
+		Integer id = symbolIds.get(t);
+		if (id == null) {
+			id = symbols.size();
+			symbolIds.put(t, id);
+			symbols.add(t.toString());
+		}
+		return id;
+	}
+
+	/**
+	 * Identifiers are keyed by their symbol, since the lexer gives the same
+	 * text the same token class every time
+	 */
+	private int identifierId(Identifier t) {
+		Integer id = identifierIds.get(t.symbol());
+		if (id == null) {
+			id = identifiers.size();
+			identifierIds.put(t.symbol(), id);
+			identifiers.add(t.symbol());
+			identifierClasses.add(t.tokenClass() == null ? 0
+					: id(t.tokenClass(), classIds, classes) + 1);
+		}
+		return id;
+	}
+
+	private static int id(String s, Map<String, Integer> ids, List<String> table) {
+		Integer id = ids.get(s);
+		if (id == null) {
+			id = table.size();
+			ids.put(s, id);
+			table.add(s);
+		}
+		return id;
+	}
+
+	private static void writeStrings(ByteSink out, List<String> strings) {
+		out.writeVarint(strings.size());
+		for (String s : strings)
+			writeString(out, s);
+	}
+
+	private static void writeString(ByteSink out, String s) {
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeVarint(bytes.length);
+		out.write(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * A growable byte array
+	 */
+	static class ByteSink {
+		byte[] bytes;
+		int size;
+
+		ByteSink(int capacity) {
+			this.bytes = new byte[Math.max(capacity, 16)];
+		}
+
+		void write(int b) {
+			ensure(1);
+			bytes[size++] = (byte) b;
+		}
+
+		void write(byte[] b, int offset, int length) {
+			ensure(length);
+			System.arraycopy(b, offset, bytes, size, length);
+			size += length;
+		}
+
+		void writeVarint(long v) {
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				bytes[size++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			bytes[size++] = (byte) v;
+		}
+
+		void writeLong(long v) {
+			ensure(8);
+			for (int i = 7; i >= 0; i--)
+				bytes[size++] = (byte) (v >>> (8 * i));
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(bytes, size);
+		}
+
+		private void ensure(int extra) {
+			if (size + extra > bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+		}
+	}
+}
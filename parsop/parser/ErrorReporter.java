@@ -1,7 +1,5 @@
 package parsop.parser;
 
-import java.util.List;
-
 public class ErrorReporter {
 	Tokenizer tokenizer;
 	String input;
@@ -15,8 +13,8 @@ public class ErrorReporter {
 			// Defaults to false
 		}
 		
-		void markIndices(List<Integer> indices) {
-			for (int i : indices)
+		void markIndices(int start, int end) {
+			for (int i = start; i < end; i++)
 				markedIndices[i] = true;
 		}
 		
@@ -37,12 +35,16 @@ public class ErrorReporter {
 		this.indicator = new IndexIndicator(input.length());
 	}
 	
-	void reportError(ParseException e, int[] tokenIndices) {
+	/**
+	 * @return The message of the error, the input, and a line marking the
+	 *         input of the tokens involved
+	 */
+	String formatError(ParseException e, int[] tokenIndices) {
 		for (int i : tokenIndices)
-			indicator.markIndices(tokenizer.inputIndices(i));
-		System.err.println(e.getMessage());
-		System.err.println(input);
-		System.err.println(indicator.toString());
+			// END is numbered after the scanned tokens and has no input
+			if (i < tokenizer.count())
+				indicator.markIndices(tokenizer.inputStart(i), tokenizer.inputEnd(i));
+		return e.getMessage() + '\n' + input + '\n' + indicator.toString();
 	}
 }
 
@@ -0,0 +1,188 @@
+package parsop.parser;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import parsop.fuzz.ExpressionGenerator;
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+import parsop.metrics.Histogram;
+
+/**
+ * Compares garbage collection pauses while holding many parsed trees as AST
+ * objects and in ASTArenas.
+ *
+ * Each round parses the whole corpus and keeps its trees, dropping those of
+ * the round generations ago, so that the live set stays at generations times
+ * the corpus and the collector has to keep moving it. On the heap a round's
+ * trees are a List of ASTs; off the heap they are an ASTArena, cleared and
+ * reused when its round is dropped. Every round also walks all of the trees
+ * kept, counting their nodes.
+ *
+ * Pauses are taken from the collectors' notifications, leaving out concurrent
+ * cycles, so run it with the same collector and heap size for both modes.
+ *
+ * @author aozdemir
+ *
+ */
+public class OffHeapBenchmark {
+
+	private Grammar grammar;
+	private String[] corpus;
+	private Histogram pauses = new Histogram();
+	private long pauseMillis;
+
+	public OffHeapBenchmark(Grammar grammar, ExpressionGenerator generator, int corpusSize) {
+		this.grammar = grammar;
+		this.corpus = new String[corpusSize];
+		for (int i = 0; i < corpusSize; i++)
+			corpus[i] = generator.valid();
+		NotificationListener listener = this::collected;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+			if (collector instanceof NotificationEmitter)
+				((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+	}
+
+	private void collected(Notification notification, Object handback) {
+		if (!notification.getType().equals(
+				GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+			return;
+		GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo
+				.from((CompositeData) notification.getUserData());
+		if (info.getGcName().contains("Concurrent") || info.getGcName().contains("Cycles"))
+			return;
+		synchronized (pauses) {
+			pauses.record(info.getGcInfo().getDuration());
+			pauseMillis += info.getGcInfo().getDuration();
+		}
+	}
+
+	/**
+	 * Runs the rounds keeping trees as AST objects
+	 */
+	public String runHeap(int rounds, int generations) throws ParseException {
+		Parser parser = new Parser(() -> grammar, false);
+		List<List<AST>> kept = new ArrayList<List<AST>>();
+		long nodes = 0;
+		start();
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			if (kept.size() == generations)
+				kept.remove(0);
+			List<AST> trees = new ArrayList<AST>(corpus.length);
+			for (String input : corpus)
+				trees.add(parser.parse(input));
+			kept.add(trees);
+			for (List<AST> generation : kept)
+				for (AST tree : generation)
+					nodes += count(tree);
+		}
+		return finish("heap", rounds, System.nanoTime() - start, nodes);
+	}
+
+	/**
+	 * Runs the rounds keeping trees in arenas, one per round kept
+	 */
+	public String runArena(int rounds, int generations) throws ParseException {
+		Parser parser = new Parser(() -> grammar, false);
+		List<ASTArena> kept = new ArrayList<ASTArena>();
+		List<ASTCursor[]> roots = new ArrayList<ASTCursor[]>();
+		long nodes = 0;
+		start();
+		long start = System.nanoTime();
+		for (int round = 0; round < rounds; round++) {
+			ASTArena arena;
+			ASTCursor[] trees;
+			if (kept.size() == generations) {
+				arena = kept.remove(0);
+				trees = roots.remove(0);
+				arena.clear();
+			} else {
+				arena = new ASTArena();
+				trees = new ASTCursor[corpus.length];
+			}
+			for (int i = 0; i < corpus.length; i++)
+				trees[i] = parser.parse(corpus[i], arena);
+			kept.add(arena);
+			roots.add(trees);
+			for (ASTCursor[] generation : roots)
+				for (ASTCursor tree : generation)
+					nodes += count(tree);
+		}
+		String result = finish("arena", rounds, System.nanoTime() - start, nodes);
+		for (ASTArena arena : kept)
+			arena.close();
+		return result;
+	}
+
+	private static long count(AST tree) {
+		long n = 1;
+		for (AST operand : tree.getOperands())
+			n += count(operand);
+		return n;
+	}
+
+	private static long count(ASTCursor c) {
+		long n = 1;
+		if (c.toFirstOperand()) {
+			do
+				n += count(c);
+			while (c.toNextOperand());
+			c.toParent();
+		}
+		return n;
+	}
+
+	private void start() {
+		System.gc();
+		synchronized (pauses) {
+			pauses.reset();
+			pauseMillis = 0;
+		}
+	}
+
+	private String finish(String mode, int rounds, long nanos, long nodes) {
+		long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+		synchronized (pauses) {
+			return String.format(
+					"%-6s %6.0f parses/s  %10d nodes walked  heap %7.1f MB  %5d pauses: "
+							+ "total %6d ms, p50 %4d ms, p99 %4d ms, max %4d ms", mode, rounds
+							* (double) corpus.length * 1e9 / nanos, nodes, heap / 1e6, pauses
+							.count(), pauseMillis, pauses.percentile(50), pauses.percentile(99),
+					pauses.max());
+		}
+	}
+
+	/**
+	 * Usage: grammar [rounds] [generations] [corpus] [size]
+	 */
+	public static void main(String[] args) throws IOException, GrammarException, ParseException {
+		if (args.length < 1) {
+			System.err.println("Usage: bench offheap path_to_grammar_spec [rounds] [generations] "
+					+ "[corpus_size] [expression_size]");
+			System.exit(2);
+		}
+		Grammar grammar = Grammar.fromFile(args[0]);
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+		int generations = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+		int corpusSize = args.length > 3 ? Integer.parseInt(args[3]) : 20000;
+		ExpressionGenerator generator = new ExpressionGenerator(grammar, 42);
+		generator.setSize(args.length > 4 ? Integer.parseInt(args[4]) : 32);
+		OffHeapBenchmark benchmark = new OffHeapBenchmark(grammar, generator, corpusSize);
+		// Warm up both, then measure each
+		benchmark.runHeap(2, 2);
+		benchmark.runArena(2, 2);
+		System.out.println(benchmark.runHeap(rounds, generations));
+		System.out.println(benchmark.runArena(rounds, generations));
+	}
+}
@@ -0,0 +1,207 @@
+package parsop.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import parsop.util.IntStack;
+
+/**
+ * The state of the shunting parser between two tokens of an input, from
+ * which Parser.parse(input, checkpoint, interval, sink) carries on as if it
+ * had never stopped.
+ *
+ * A checkpoint holds the stacks of the ParseContext and the SyntaxChecker as
+ * the indices of their tokens, the arities counted so far for the calls, and
+ * the index and input offset of the next token. The tokens themselves are
+ * not saved: resuming scans the same input again up to the checkpoint, and the
+ * length and hash of the input are kept to make sure it is the same one, as
+ * is the fingerprint of the grammar.
+ *
+ * The output of the parse only grows, so a checkpoint holds only the output
+ * added since the previous checkpoint of the same parse and the arities which
+ * changed since, and refers to the previous one for the rest. Taking a
+ * checkpoint costs as much as the tokens since the last one. A checkpoint is
+ * written out whole, with the output and arities of all before it.
+ *
+ * @author aozdemir
+ *
+ */
+public class ParseCheckpoint implements Serializable {
+
+	String grammarPath;
+	long grammarFingerprint;
+	int inputLength;
+	int inputHash;
+
+	/**
+	 * The position of the next token, and where it starts in the input
+	 */
+	int position;
+	int inputOffset;
+
+	/**
+	 * The checkpoint before, or null if this is the first or is whole
+	 */
+	transient ParseCheckpoint previous;
+
+	/**
+	 * The output from index outputFrom on
+	 */
+	int outputFrom;
+	int[] output;
+	int[] operators;
+	int[] ordinals;
+	int[] groupers;
+	/**
+	 * Pairs of the position of a CallOpen and the arity counted for it, for
+	 * the calls whose arity changed since the previous checkpoint
+	 */
+	int[] arities;
+
+	int reductions;
+	int maxDepth;
+
+	ParseCheckpoint() {
+	}
+
+	/**
+	 * @return The number of tokens parsed before the checkpoint
+	 */
+	public int position() {
+		return position;
+	}
+
+	/**
+	 * @return The offset in the input of the first token not parsed yet
+	 */
+	public int inputOffset() {
+		return inputOffset;
+	}
+
+	int outputSize() {
+		return outputFrom + output.length;
+	}
+
+	/**
+	 * @return A checkpoint of the same state which holds all of the output
+	 *         and arities, and refers to no other
+	 */
+	ParseCheckpoint whole() {
+		if (previous == null && outputFrom == 0)
+			return this;
+		List<ParseCheckpoint> chain = new ArrayList<ParseCheckpoint>();
+		for (ParseCheckpoint c = this; c != null; c = c.previous)
+			chain.add(c);
+		IntStack output = new IntStack(outputSize());
+		Map<Integer, Integer> arities = new LinkedHashMap<Integer, Integer>();
+		for (int k = chain.size() - 1; k >= 0; k--) {
+			ParseCheckpoint c = chain.get(k);
+			for (int element : c.output)
+				output.push(element);
+			for (int i = 0; i < c.arities.length; i += 2)
+				arities.put(c.arities[i], c.arities[i + 1]);
+		}
+		ParseCheckpoint whole = new ParseCheckpoint();
+		whole.grammarPath = grammarPath;
+		whole.grammarFingerprint = grammarFingerprint;
+		whole.inputLength = inputLength;
+		whole.inputHash = inputHash;
+		whole.position = position;
+		whole.inputOffset = inputOffset;
+		whole.output = output.toArray();
+		whole.operators = operators;
+		whole.ordinals = ordinals;
+		whole.groupers = groupers;
+		whole.arities = new int[2 * arities.size()];
+		int i = 0;
+		for (Map.Entry<Integer, Integer> entry : arities.entrySet()) {
+			whole.arities[i++] = entry.getKey();
+			whole.arities[i++] = entry.getValue();
+		}
+		whole.reductions = reductions;
+		whole.maxDepth = maxDepth;
+		return whole;
+	}
+
+	/**
+	 * Serialization writes the checkpoint whole, rather than following the
+	 * chain of previous ones
+	 */
+	private Object writeReplace() {
+		return whole();
+	}
+
+	/**
+	 * Writes the checkpoint to a temporary file beside path and then moves it
+	 * over path, so that a crash leaves the previous checkpoint whole.
+	 */
+	public void save(Path path) throws IOException {
+		Path absolute = path.toAbsolutePath();
+		Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(temporary)) {
+			write(out);
+		}
+		Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public void write(OutputStream out) throws IOException {
+		ObjectOutputStream objects = new ObjectOutputStream(out);
+		objects.writeObject(this);
+		objects.flush();
+	}
+
+	/**
+	 * @return The checkpoint saved at path, or null if there is none
+	 */
+	public static ParseCheckpoint load(Path path) throws IOException {
+		if (!Files.exists(path))
+			return null;
+		try (InputStream in = Files.newInputStream(path)) {
+			return read(in);
+		}
+	}
+
+	public static ParseCheckpoint read(InputStream in) throws IOException {
+		try {
+			return (ParseCheckpoint) new ObjectInputStream(in).readObject();
+		} catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Not a parse checkpoint", e);
+		}
+	}
+
+	/**
+	 * @return A sink for Parser.parse which saves each checkpoint over the
+	 *         last one at path
+	 */
+	public static Consumer<ParseCheckpoint> saver(Path path) {
+		return checkpoint -> {
+			try {
+				checkpoint.save(path);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	public String toString() {
+		return String.format("Checkpoint at token %d (input offset %d of %d)", position,
+				inputOffset, inputLength);
+	}
+
+	private static final long serialVersionUID = -2817560964136385730L;
+
+}
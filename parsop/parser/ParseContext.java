@@ -0,0 +1,133 @@
+package parsop.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.Token;
+import parsop.util.ArrayStack;
+import parsop.util.IntStack;
+
+/**
+ * The working state of a Parser, kept across parses so that its stacks are
+ * allocated once and then only grow.
+ *
+ * The stacks hold the tokens themselves, and nothing else does, so a token
+ * which is taken and not pushed, such as a CloseGroup or a Separator, can be
+ * collected at once, and the parse keeps no list of every token. Each
+ * pending operation also carries its ordinal from the Grammar, so that
+ * precedence comparisons need no table lookups.
+ *
+ * @author aozdemir
+ *
+ */
+class ParseContext {
+
+	/**
+	 * The reverse Polish notation of the input read so far
+	 */
+	ArrayStack<Token> output;
+	/**
+	 * Operations and openers waiting for their operands, above START
+	 */
+	ArrayStack<Token> operators;
+	/**
+	 * The ordinal of each element of operators
+	 */
+	IntStack ordinals;
+	/**
+	 * Open tokens not closed yet, for the SyntaxChecker
+	 */
+	ArrayStack<Token> groupers;
+	/**
+	 * The nodes built in an ASTArena and not yet given a parent
+	 */
+	IntStack nodes;
+
+	private AST[] trees;
+
+	ParseContext() {
+		this.output = new ArrayStack<Token>();
+		this.operators = new ArrayStack<Token>();
+		this.ordinals = new IntStack();
+		this.groupers = new ArrayStack<Token>();
+		this.nodes = new IntStack();
+		this.trees = new AST[16];
+	}
+
+	void reset() {
+		output.clear();
+		operators.clear();
+		ordinals.clear();
+		groupers.clear();
+	}
+
+	/**
+	 * @return The index of the token, as Token.getIndex(), or -1 for START
+	 */
+	static int position(Token t) {
+		return t == Operation.START ? -1 : t.getIndex();
+	}
+
+	/**
+	 * Builds the tree from the reverse Polish notation in output. Each token
+	 * replaces as many of the trees built before it as it has operands.
+	 *
+	 * @return The last tree built
+	 */
+	AST build() {
+		int size = 0;
+		for (int i = 0; i < output.size(); i++) {
+			Token t = output.get(i);
+			int arity = arity(t);
+			List<AST> operands = new ArrayList<AST>(arity);
+			for (int k = size - arity; k < size; k++)
+				operands.add(trees[k]);
+			size -= arity;
+			if (size == trees.length)
+				trees = Arrays.copyOf(trees, size * 2);
+			trees[size++] = new AST(t, operands);
+		}
+		AST result = trees[size - 1];
+		// Let the trees be collected
+		Arrays.fill(trees, 0, size, null);
+		return result;
+	}
+
+	/**
+	 * Builds the tree from the reverse Polish notation in output into the
+	 * arena, in the same way as build()
+	 *
+	 * @return The root node
+	 */
+	int build(ASTArena arena, Tokenizer tokenizer) {
+		nodes.clear();
+		for (int i = 0; i < output.size(); i++) {
+			Token t = output.get(i);
+			arena.add(t, tokenizer.inputStart(t.getIndex()), nodes, arity(t));
+		}
+		return nodes.peek();
+	}
+
+	private static int arity(Token t) {
+		switch (t.type()) {
+		case Identifier:
+			return 0;
+		case OpenGroup:
+			return 1;
+		default:
+			return ((Operation) t).arity();
+		}
+	}
+
+	public String toString() {
+		StringBuffer result = new StringBuffer("Polish  Stack: ");
+		for (int i = 0; i < output.size(); i++)
+			result.append("  ").append(output.get(i));
+		result.append("\n       Tokens: ");
+		for (int i = 0; i < operators.size(); i++)
+			result.append("  ").append(operators.get(i));
+		return result.toString();
+	}
+}
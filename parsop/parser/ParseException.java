@@ -3,6 +3,7 @@ package parsop.parser;
 public class ParseException extends Exception {
 
 	int[] indices;
+	String report;
 	
 	public ParseException(String format, int... indices) {
 		super(format);
@@ -13,8 +14,15 @@ public class ParseException extends Exception {
 		super(format, e);
 		this.indices = indices;
 	}
-	
-	
+
+	/**
+	 * @return The error as the Parser reports it, with the input and markers
+	 *         under the tokens involved, or just the message if it was not
+	 *         thrown by a Parser
+	 */
+	public String report() {
+		return report != null ? report : getMessage();
+	}
 
 	private static final long serialVersionUID = -8003930746967164211L;
 
@@ -2,14 +2,28 @@ package parsop.parser;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import jdk.jfr.EventType;
 
 import parsop.grammar.Grammar;
 import parsop.grammar.GrammarException;
+import parsop.grammar.GrammarRegistry;
+import parsop.grammar.ParseEngine;
+import parsop.grammar.SymbolTable;
+import parsop.grammar.tokens.CallOpen;
 import parsop.grammar.tokens.Operation;
 import parsop.grammar.tokens.Token;
-import parsop.util.ListStream;
+import parsop.grammar.tokens.TokenType;
+import parsop.jfr.ParseEvent;
+import parsop.jfr.SlowParseEvent;
+import parsop.metrics.MetricsSink;
+import parsop.metrics.ParseSample;
+import parsop.metrics.Stage;
+import parsop.util.ArrayStack;
+import parsop.util.IntStack;
 
 /**
  * This is the core of the Operator Parser system.
@@ -40,6 +54,19 @@ import parsop.util.ListStream;
  *       because when an open grouper is on the top of the stack in need be
  *       compared to other operations.
  *    4. START and END have the lowest precedence.
+ *    5. Prefix unary operations are always put on the tokenStack, since
+ *       their operand has not been read yet. Postfix operations already have
+ *       their operand, so once the tighter tokens are transfered they go
+ *       directly to the RPS stack.
+ *    6. A CallOpen (the ( of f(a, b)) transfers tighter tokens like an
+ *       operation, but is then treated like an open grouper. Separators and
+ *       the closing grouper transfer tokens until the CallOpen, counting the
+ *       arguments, and the CallOpen finally goes to the RPS stack as an
+ *       operation on the callee and all of its arguments.
+ *    7. A TernaryOpen (the ? of c ? x : y) is also treated like an open
+ *       grouper once it is on the tokenStack. Its TernaryOperation (the :)
+ *       transfers tokens until the TernaryOpen, and then takes its place on
+ *       the tokenStack as a ternary operation.
  * 
  * Example: Normal Arithmetic:
  * 
@@ -97,31 +124,82 @@ import parsop.util.ListStream;
  * 
  * Done!
  * 
+ * Both stacks hold the tokens themselves, in a ParseContext which is reused
+ * by every parse, and the AST is built from the RPN without recursion. The
+ * Tokenizer scans each token only when the engine asks for it, so reductions
+ * start before the end of the input is read, an error stops the scan where
+ * it is found, and a token on neither stack, such as a closing grouper, is
+ * dropped once it is taken.
+ * 
+ * Grammars may choose the PrattParser instead, which builds the same trees in
+ * one pass. setEngine() overrides the choice for one parser.
+ * 
+ * setMetrics() makes the parser time the stages of each parse and count its
+ * tokens and reductions. So does a Flight Recorder recording with the
+ * ParseEvent or SlowParseEvent enabled. Otherwise, it measures nothing.
+ * 
+ * A long parse with the shunting engine can hand out ParseCheckpoints as it
+ * goes, and be resumed from one after it is interrupted. A parse can also
+ * build its tree off the heap, in an ASTArena.
+ * 
+ * Simple grammars are tokenized and checked by the FastPaths their
+ * GrammarProfile chooses; setFastPaths(false) turns them off.
+ * 
  * @author aozdemir
  *
  */
 public class Parser {
 
+	// Asked whether a recording wants the events, before any is allocated
+	private static final EventType PARSE_EVENT = EventType.getEventType(ParseEvent.class);
+	private static final EventType SLOW_PARSE_EVENT = EventType
+			.getEventType(SlowParseEvent.class);
+
 	// Permanent Members
+	Supplier<Grammar> grammarSource;
+	boolean verbose;
+	boolean printErrors = true;
+	boolean fastPaths = true;
+	ParseEngine engine;
+	PrattParser prattParser;
+
+	// Members rebuilt when the grammar changes
 	Grammar grammar;
 	Tokenizer tokenizer;
-	boolean verbose;
+	SymbolTable symbols;
 
 	// Members refreshed for each parse
 	SyntaxChecker syntaxChecker;
 	ErrorReporter errorReporter;
-	
-	Stack<Token> reversePolishStack;
-	Stack<Token> tokenStack;
-	ListStream<Token> tokenStream;
+	TokenStream tokenStream;
+
+	// Members kept across parses
+	ParseContext context;
+
+	// Measurements, taken only while a MetricsSink is set or a Flight
+	// Recorder recording has ParseEvents enabled
+	MetricsSink metrics;
+	ParseSample sample;
+	ParseSample measuring;
+	int reductions;
+	int depth;
+	int maxDepth;
+
+	// While checkpointing, the last checkpoint handed out or resumed from,
+	// and the calls which have counted an argument since
+	ParseCheckpoint lastCheckpoint;
+	ArrayStack<CallOpen> countedCalls = new ArrayStack<CallOpen>();
+	boolean checkpointing;
 
 	public Parser(String filename, boolean verbose) {
 		try {
-			grammar = Grammar.fromFile(filename);
-			tokenizer = new Tokenizer(grammar);
-			syntaxChecker = new SyntaxChecker(grammar);
-			errorReporter = new ErrorReporter(tokenizer);			
+			Grammar grammar = Grammar.fromFile(filename);
+			this.grammarSource = () -> grammar;
 			this.verbose = verbose;
+			this.prattParser = new PrattParser(this);
+			this.context = new ParseContext();
+			this.tokenStream = new TokenStream();
+			bind(grammar);
 		} catch (GrammarException e) {
 			e.printStackTrace();
 		} catch (IOException e) {
@@ -129,22 +207,364 @@ public class Parser {
 		}
 	}
 
+	/**
+	 * Constructs a parser which follows the current version of a grammar, such
+	 * as one from a GrammarRegistry. The source is queried once at the start of
+	 * each parse, and the parse finishes with that version.
+	 */
+	public Parser(Supplier<Grammar> grammarSource, boolean verbose) {
+		this.grammarSource = grammarSource;
+		this.verbose = verbose;
+		this.prattParser = new PrattParser(this);
+		this.context = new ParseContext();
+		this.tokenStream = new TokenStream();
+		bind(grammarSource.get());
+	}
+
+	/**
+	 * Chooses the algorithm for later parses, whatever the grammar says.
+	 * 
+	 * @param engine
+	 *            - null to follow the grammar again
+	 */
+	public void setEngine(ParseEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Chooses whether syntax errors are printed to stderr when they are
+	 * thrown. They are by default. Either way, ParseException.report() holds
+	 * the same text.
+	 */
+	public void setPrintErrors(boolean printErrors) {
+		this.printErrors = printErrors;
+	}
+
+	/**
+	 * Chooses whether later parses take the FastPaths which the profile of
+	 * their grammar allows, as they do by default. Either way the trees and
+	 * errors are the same; turning them off is for comparison and debugging.
+	 */
+	public void setFastPaths(boolean fastPaths) {
+		this.fastPaths = fastPaths;
+		this.tokenizer.setFastPaths(fastPaths);
+		this.syntaxChecker.setFastPaths(fastPaths);
+	}
+
+	/**
+	 * @return The algorithm the next parse will use
+	 */
+	public ParseEngine engine() {
+		return engine != null ? engine : grammarSource.get().engine();
+	}
+
+	/**
+	 * @return The state before the first token of an expression in the
+	 *         current grammar, to be fed tokens as they are typed
+	 */
+	public PartialParse partial() {
+		return PartialParse.start(grammarSource.get());
+	}
+
+	private void bind(Grammar grammar) {
+		this.grammar = grammar;
+		if (verbose)
+			System.out.println(grammar.profile());
+		this.tokenizer = new Tokenizer(grammar);
+		this.tokenizer.setSymbolTable(symbols);
+		this.tokenizer.setFastPaths(fastPaths);
+		this.syntaxChecker = new SyntaxChecker(grammar);
+		this.syntaxChecker.setFastPaths(fastPaths);
+		this.errorReporter = new ErrorReporter(tokenizer);
+	}
+
+	/**
+	 * Interns the names of identifiers in symbols, which any number of parsers
+	 * may share, so that the Identifiers of the trees carry dense ids.
+	 * 
+	 * @param symbols
+	 *            - null to stop interning, which is the default
+	 */
+	public void setSymbolTable(SymbolTable symbols) {
+		this.symbols = symbols;
+		this.tokenizer.setSymbolTable(symbols);
+	}
+
+	/**
+	 * Sends the measurements of every later parse to the sink, such as a
+	 * ParseMetrics shared by several parsers.
+	 * 
+	 * @param metrics
+	 *            - null to stop measuring, which is the default
+	 */
+	public void setMetrics(MetricsSink metrics) {
+		this.metrics = metrics;
+	}
+
 	public AST parse(String input) throws ParseException {
+		if (metrics != null || PARSE_EVENT.isEnabled() || SLOW_PARSE_EVENT.isEnabled())
+			return measuredParse(input);
 		setupParse(input);
+		ParseEngine current = engine != null ? engine : grammar.engine();
+		if (current == ParseEngine.Pratt)
+			try {
+				return prattParser.parse();
+			} catch (ParseException e) {
+				throw report(e);
+			}
 		try {
 			processTokens();
 		} catch (ParseException e) {
-			errorReporter.reportError(e, e.indices);
-			throw e;
+			throw report(e);
 		}
 		if (verbose)
 			dumpState();
 		return processReversePolish();
 	}
 
+	/**
+	 * Parses like parse(), timing each Stage for the MetricsSink and the
+	 * Flight Recorder events
+	 */
+	private AST measuredParse(String input) throws ParseException {
+		ParseEvent event = new ParseEvent();
+		SlowParseEvent slowEvent = new SlowParseEvent();
+		if (sample == null)
+			sample = new ParseSample();
+		sample.reset();
+		measuring = sample;
+		event.begin();
+		slowEvent.begin();
+		ParseException error = null;
+		ParseEngine current = engine != null ? engine : grammarSource.get().engine();
+		long start = System.nanoTime();
+		long mark = start;
+		try {
+			setupParse(input);
+			tokenStream.timed = true;
+			long now = System.nanoTime();
+			sample.add(Stage.Tokenize, now - mark);
+			mark = now;
+			current = engine != null ? engine : grammar.engine();
+			AST tree;
+			if (current == ParseEngine.Pratt) {
+				tree = prattParser.parse();
+				now = System.nanoTime();
+				sample.add(Stage.Parse, now - mark - sample.nanos(Stage.Check) - tokenStream.nanos);
+			} else {
+				processTokens();
+				now = System.nanoTime();
+				sample.add(Stage.Parse, now - mark - sample.nanos(Stage.Check) - tokenStream.nanos);
+				mark = now;
+				if (verbose)
+					dumpState();
+				tree = processReversePolish();
+				now = System.nanoTime();
+				sample.add(Stage.Build, now - mark);
+			}
+			return tree;
+		} catch (ParseException e) {
+			error = e;
+			sample.error = true;
+			sample.add(Stage.Parse, System.nanoTime() - mark - sample.nanos(Stage.Check)
+					- tokenStream.nanos);
+			throw report(e);
+		} finally {
+			measuring = null;
+			// Scanning is interleaved with the parse, and timed by the stream
+			sample.add(Stage.Tokenize, tokenStream.nanos);
+			tokenStream.timed = false;
+			sample.add(Stage.Total, System.nanoTime() - start);
+			sample.tokens = tokenizer.count();
+			sample.reductions = reductions;
+			sample.maxDepth = maxDepth;
+			if (metrics != null)
+				metrics.record(sample);
+			event.end();
+			if (event.shouldCommit()) {
+				event.set(grammar, current, input, sample, error);
+				event.commit();
+			}
+			slowEvent.end();
+			if (slowEvent.shouldCommit()) {
+				slowEvent.set(grammar, current, input, sample, error);
+				slowEvent.commit();
+			}
+		}
+	}
+
+	/**
+	 * Parses with the shunting engine like parse(), but builds the tree in the
+	 * arena instead of as AST objects, with the offset of each token in the
+	 * input. Metrics and Flight Recorder events are not taken.
+	 * 
+	 * @return A cursor at the root of the tree
+	 */
+	public ASTCursor parse(String input, ASTArena arena) throws ParseException {
+		setupParse(input);
+		try {
+			processTokens();
+		} catch (ParseException e) {
+			throw report(e);
+		}
+		return arena.cursor(context.build(arena, tokenizer));
+	}
+
+	/**
+	 * Parses with the shunting engine like parse(), handing a checkpoint to
+	 * the sink after every interval tokens, so that a long parse which is
+	 * interrupted can carry on from its last checkpoint. Metrics and Flight
+	 * Recorder events are not taken.
+	 * 
+	 * @param from
+	 *            - A checkpoint of an earlier parse of the same input with the
+	 *            same grammar to start from, or null to start at the beginning
+	 * @param sink
+	 *            - May be null, to only resume
+	 * @throws IllegalArgumentException
+	 *             - if the checkpoint is not of this input and grammar
+	 */
+	public AST parse(String input, ParseCheckpoint from, int interval,
+			Consumer<ParseCheckpoint> sink) throws ParseException {
+		setupParse(input);
+		lastCheckpoint = null;
+		countedCalls.clear();
+		if (from != null)
+			restore(from, input);
+		int next = tokenStream.index() + interval;
+		checkpointing = sink != null;
+		try {
+			while (tokenStream.hasNext()) {
+				processToken();
+				if (checkpointing && tokenStream.index() >= next && tokenStream.hasNext()) {
+					sink.accept(checkpoint(input));
+					next = tokenStream.index() + interval;
+				}
+			}
+		} catch (ParseException e) {
+			throw report(e);
+		} finally {
+			checkpointing = false;
+			lastCheckpoint = null;
+		}
+		return processReversePolish();
+	}
+
+	/**
+	 * Saves the state of the shunting parse between two tokens. Since the
+	 * output only grows and arities only change as arguments are counted, the
+	 * checkpoint holds what changed since the last one and refers to it for
+	 * the rest.
+	 */
+	private ParseCheckpoint checkpoint(String input) {
+		ParseCheckpoint checkpoint = new ParseCheckpoint();
+		checkpoint.grammarPath = grammar.path();
+		checkpoint.grammarFingerprint = grammar.fingerprint();
+		checkpoint.inputLength = input.length();
+		checkpoint.inputHash = input.hashCode();
+		checkpoint.position = tokenStream.index();
+		checkpoint.inputOffset = inputOffset(input);
+		checkpoint.previous = lastCheckpoint;
+		checkpoint.outputFrom = lastCheckpoint == null ? 0 : lastCheckpoint.outputSize();
+		checkpoint.output = positions(context.output, checkpoint.outputFrom);
+		checkpoint.operators = positions(context.operators, 0);
+		checkpoint.ordinals = context.ordinals.toArray();
+		checkpoint.groupers = positions(context.groupers, 0);
+		int[] arities = new int[2 * countedCalls.size()];
+		for (int i = 0; i < countedCalls.size(); i++) {
+			arities[2 * i] = countedCalls.get(i).getIndex();
+			arities[2 * i + 1] = countedCalls.get(i).arity();
+		}
+		countedCalls.clear();
+		checkpoint.arities = arities;
+		checkpoint.reductions = reductions;
+		checkpoint.maxDepth = maxDepth;
+		lastCheckpoint = checkpoint;
+		return checkpoint;
+	}
+
+	/**
+	 * Puts the parse just set up for input in the state of the checkpoint
+	 */
+	private void restore(ParseCheckpoint checkpoint, String input) {
+		if (checkpoint.grammarFingerprint != grammar.fingerprint())
+			throw new IllegalArgumentException(String.format(
+					"%s is of the grammar %s, not %s as it is now", checkpoint,
+					checkpoint.grammarPath, grammar.path()));
+		if (checkpoint.inputLength != input.length() || checkpoint.inputHash != input.hashCode())
+			throw new IllegalArgumentException(checkpoint + " is of a different input");
+		// The tokens before the checkpoint are scanned again, since the
+		// stacks are made of them, and kept until the stacks are filled
+		Token[] tokens = new Token[checkpoint.position];
+		try {
+			for (int i = 0; i < tokens.length; i++)
+				tokens[i] = tokenStream.next();
+		} catch (NoSuchElementException e) {
+			throw new IllegalArgumentException(checkpoint + " is of a different input", e);
+		}
+		if (!tokenStream.hasNext() || checkpoint.inputOffset != inputOffset(input))
+			throw new IllegalArgumentException(checkpoint + " is of a different input");
+		checkpoint = checkpoint.whole();
+		fill(context.output, checkpoint.output, tokens);
+		fill(context.operators, checkpoint.operators, tokens);
+		fill(context.ordinals, checkpoint.ordinals);
+		fill(context.groupers, checkpoint.groupers, tokens);
+		syntaxChecker.lastToken = tokens.length == 0 ? Operation.START
+				: tokens[tokens.length - 1];
+		for (int i = 0; i < checkpoint.arities.length; i += 2) {
+			CallOpen call = (CallOpen) tokens[checkpoint.arities[i]];
+			while (call.arity() < checkpoint.arities[i + 1])
+				call.addArgument();
+		}
+		reductions = checkpoint.reductions;
+		maxDepth = checkpoint.maxDepth;
+		lastCheckpoint = checkpoint;
+	}
+
+	private static void fill(IntStack stack, int[] elements) {
+		stack.clear();
+		for (int element : elements)
+			stack.push(element);
+	}
+
+	/**
+	 * Fills the stack with the tokens at the positions, where -1 is START
+	 */
+	private static void fill(ArrayStack<Token> stack, int[] positions, Token[] tokens) {
+		stack.clear();
+		for (int position : positions)
+			stack.push(position < 0 ? Operation.START : tokens[position]);
+	}
+
+	/**
+	 * @return The positions of the tokens of the stack from index from up
+	 */
+	private static int[] positions(ArrayStack<Token> stack, int from) {
+		int[] positions = new int[stack.size() - from];
+		for (int i = 0; i < positions.length; i++)
+			positions[i] = ParseContext.position(stack.get(from + i));
+		return positions;
+	}
+
+	/**
+	 * @return Where the next token starts in the input, or the length of the
+	 *         input for END
+	 */
+	private int inputOffset(String input) {
+		tokenStream.peek();
+		int position = tokenStream.index();
+		return position < tokenizer.count() ? tokenizer.inputStart(position) : input.length();
+	}
+
+	private ParseException report(ParseException e) {
+		e.report = errorReporter.formatError(e, e.indices);
+		if (printErrors)
+			System.err.println(e.report);
+		return e;
+	}
+
 	private AST processReversePolish() {
-		Token top = reversePolishStack.pop();
-		return top.build(reversePolishStack);
+		return context.build();
 		// TODO: extra tokens on stack? Error?
 	}
 
@@ -158,37 +578,121 @@ public class Parser {
 
 	private void processToken() throws ParseException {
 		Token next = tokenStream.peek();
-		if (next.isIdentifier())
-			reversePolishStack.push(takeToken());
-		else if (next.isOpenGroup())
-			tokenStack.push(takeToken());
-		else if (next.isCloseGroup())
+		switch (next.type()) {
+		case Identifier:
+			context.output.push(takeToken());
+			break;
+		case OpenGroup:
+		case UnaryOperation:
+			// Prefix tokens have no operand yet, so nothing can be reduced
+			pushOperator(takeToken());
+			break;
+		case CloseGroup:
 			transferTokensUntilOpenGroup();
-		else if (isLeftHigherPrecedence(tokenStack.peek(), next))
-			transferToken();
-		else
-			tokenStack.push(takeToken());
+			break;
+		case Separator:
+			separateArgument();
+			break;
+		case TernaryOperation:
+			replaceTernaryOpen();
+			break;
+		case Invalid:
+			takeToken();
+			break;
+		case PostfixOperation:
+			if (isTopHigherPrecedence(next))
+				transferToken();
+			else {
+				context.output.push(takeToken());
+				reductions++;
+			}
+			break;
+		default:
+			if (isTopHigherPrecedence(next))
+				transferToken();
+			else
+				pushOperator(takeToken());
+		}
 	}
 
 	/**
 	 * Only call when a CloseGroup is next in the input. Transfers all tokens
-	 * from the tokenStack until an OpenGroup is found.
+	 * from the tokenStack until an OpenGroup or CallOpen is found, and then
+	 * transfers that too. A CallOpen counts its last argument, unless the
+	 * argument list is empty.
 	 */
 	private void transferTokensUntilOpenGroup() throws ParseException {
+		Token previous = syntaxChecker.lastToken();
 		takeToken();
-		while (!tokenStack.peek().isOpenGroup())
-			transferToken();
+		transferTokensUntilOpen();
+		Token open = context.operators.peek();
+		if (open instanceof CallOpen && previous != open)
+			countArgument((CallOpen) open);
 		transferToken();
 	}
 
+	/**
+	 * Only call when a Separator is next in the input. Finishes the current
+	 * argument of the enclosing CallOpen.
+	 */
+	private void separateArgument() throws ParseException {
+		takeToken();
+		transferTokensUntilOpen();
+		countArgument((CallOpen) context.operators.peek());
+	}
+
+	/**
+	 * Counts an argument of the call, noting it for the next checkpoint
+	 */
+	private void countArgument(CallOpen call) {
+		call.addArgument();
+		if (checkpointing)
+			countedCalls.push(call);
+	}
+
+	/**
+	 * Only call when a TernaryOperation is next in the input. Finishes the
+	 * middle operand, and replaces the TernaryOpen on the tokenStack with the
+	 * TernaryOperation, which then waits for its last operand like any other
+	 * operation.
+	 */
+	private void replaceTernaryOpen() throws ParseException {
+		Token ternary = takeToken();
+		transferTokensUntilOpen();
+		context.operators.pop();
+		context.ordinals.pop();
+		pushOperator(ternary);
+	}
+
+	private void transferTokensUntilOpen() {
+		while (!context.operators.peek().type().opens())
+			transferToken();
+	}
+
 	/**
 	 * Takes the next token from the input stream
 	 * @throws ParseException - If there is a syntax error in the input
 	 */
-	private Token takeToken() throws ParseException {
-		Token next = tokenStream.next();
-		syntaxChecker.checkNextToken(next);
-		return next;
+	Token takeToken() throws ParseException {
+		Token t = tokenStream.next();
+		if (measuring == null) {
+			syntaxChecker.checkNextToken(t);
+			return t;
+		}
+		long start = System.nanoTime();
+		try {
+			syntaxChecker.checkNextToken(t);
+		} finally {
+			measuring.add(Stage.Check, System.nanoTime() - start);
+		}
+		return t;
+	}
+
+	private void pushOperator(Token t) {
+		context.operators.push(t);
+		context.ordinals.push(grammar.ordinal(t));
+		if (context.operators.size() > maxDepth)
+			maxDepth = context.operators.size();
 	}
 
 	/**
@@ -196,7 +700,25 @@ public class Parser {
 	 * Notation stack
 	 */
 	private void transferToken() {
-		reversePolishStack.push(tokenStack.pop());
+		context.output.push(context.operators.pop());
+		context.ordinals.pop();
+		reductions++;
+	}
+
+	/**
+	 * True if the top of the tokenStack has higher precedence than the right
+	 */
+	private boolean isTopHigherPrecedence(Token right) throws ParseException {
+		Token left = context.operators.peek();
+		if (left == Operation.START && right.type() == TokenType.End)
+			return false;
+		// Open tokens are only removed by their closing tokens
+		if (left.type().opens())
+			return false;
+		int rightOrdinal = grammar.ordinal(right);
+		if (rightOrdinal < 0)
+			throw adjacentIdentifiers(left, right);
+		return Grammar.leftIsTighter(context.ordinals.peek(), rightOrdinal);
 	}
 
 	/**
@@ -205,45 +727,53 @@ public class Parser {
 	 * @throws ParseException
 	 *             - If they are both identifiers
 	 */
-	private boolean isLeftHigherPrecedence(Token left, Token right)
+	boolean isLeftHigherPrecedence(Token left, Token right)
 			throws ParseException {
-		if (left == Operation.START && right == Operation.END)
+		if (left == Operation.START && right.type() == TokenType.End)
+			return false;
+		// Open tokens are only removed by their closing tokens
+		if (left.type().opens())
 			return false;
 		try {
 			return grammar.leftIsTighter(left, right);
 		} catch (GrammarException e) {
-			throw new ParseException(
-					String.format(
-							"Adjacent identifiers: <%s> and <%s>. Expected an operation between them",
-							left, right), left.getIndex(), right.getIndex());
+			throw adjacentIdentifiers(left, right);
 		}
 	}
 
+	private static ParseException adjacentIdentifiers(Token left, Token right) {
+		return new ParseException(
+				String.format(
+						"Adjacent identifiers: <%s> and <%s>. Expected an operation between them",
+						left, right), left.getIndex(), right.getIndex());
+	}
+
 	private void dumpState() {
-		System.out.print("\nPolish  Stack: ");
-		for (Token t : reversePolishStack)
-			System.out.print("  " + t.toString());
-		System.out.print("\n       Tokens: ");
-		for (Token t : tokenStack)
-			System.out.print("  " + t.toString());
-		System.out.println("\nTokens Stream: " + tokenStream.toString());
+		System.out.println("\n" + context);
+		System.out.println("Tokens Stream: " + tokenStream.toString());
 	}
 
 	private void setupParse(String input) {
-		// Empty Stack to build RPN on
-		reversePolishStack = new Stack<Token>();
+		// Pick up a new version of the grammar
+		Grammar current = grammarSource.get();
+		if (current != grammar)
+			bind(current);
 
-		// Empty intermediary stack and add START
-		tokenStack = new Stack<Token>();
-		tokenStack.push(Operation.START);
+		// Empty the stacks, keeping their capacity, and add START
+		context.reset();
+		context.operators.push(Operation.START);
+		context.ordinals.push(grammar.ordinal(Operation.START));
 
-		// Add END to stream
-		List<Token> tokens = tokenizer.tokenize(input);
-		tokens.add(Operation.END);
-		tokenStream = new ListStream<Token>(tokens);
+		// Tokens are scanned as the parse takes them, and END after the last
+		tokenizer.reset(input);
+		tokenStream.reset(tokenizer);
 
 		// Restart syntax checking
-		syntaxChecker.refresh();
+		syntaxChecker.refresh(context);
+
+		reductions = 0;
+		depth = 0;
+		maxDepth = 0;
 		
 		// Restart error reporter
 		errorReporter.setInput(input);
@@ -252,9 +782,15 @@ public class Parser {
 	public static Parser fromCommandLineArguments(String[] args) {
 		String file = null;
 		boolean debug = false;
+		boolean watch = false;
+		boolean pratt = false;
 		for (String arg : Arrays.asList(args)) {
 			if (arg.equals("-d"))
 				debug = true;
+			else if (arg.equals("-w"))
+				watch = true;
+			else if (arg.equals("-p"))
+				pratt = true;
 			else {
 				file = arg;
 				break;
@@ -262,10 +798,20 @@ public class Parser {
 		}
 
 		if (file == null) {
-			System.err.println("Usage: [-d] path_to_grammar_spec");
+			System.err.println("Usage: [-d] [-w] [-p] path_to_grammar_spec");
 			System.exit(2);
 		}
-		Parser parser = new Parser(file, debug);
+		Parser parser = null;
+		if (watch)
+			try {
+				parser = new Parser(new GrammarRegistry().register(file), debug);
+			} catch (GrammarException | IOException e) {
+				e.printStackTrace();
+			}
+		if (parser == null)
+			parser = new Parser(file, debug);
+		if (pratt)
+			parser.setEngine(ParseEngine.Pratt);
 		return parser;
 	}
 
@@ -0,0 +1,270 @@
+package parsop.parser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.tokens.CallOpen;
+import parsop.grammar.tokens.CloseGroup;
+import parsop.grammar.tokens.OpenGroup;
+import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.TernaryOperation;
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+import parsop.util.Pair;
+
+/**
+ * The state of the SyntaxChecker part way through an expression, for
+ * answering which tokens may come next as the expression is typed.
+ *
+ * A PartialParse is immutable: feeding it a token returns a new state and
+ * leaves the old one as it was. The stack of open groupers is a linked list
+ * whose tails are shared between states, so feeding a token costs O(1) and
+ * every state is also a snapshot. An editor can keep the state after each
+ * token, and when a token is edited, resume from the state before it.
+ *
+ * The tokens are checked by the same rules, with the same messages, as
+ * SyntaxChecker.checkNextToken, so a sequence of tokens which feeds without
+ * error and isComplete() will parse.
+ *
+ * @author aozdemir
+ *
+ */
+public class PartialParse {
+
+	/**
+	 * An entry of the open grouper stack
+	 */
+	private static class Opener {
+		final Token token;
+		final Opener below;
+
+		Opener(Token token, Opener below) {
+			this.token = token;
+			this.below = below;
+		}
+	}
+
+	private final Grammar grammar;
+	private final Map<TokenType, List<Token>> vocabulary;
+	private final Token lastToken;
+	private final Opener openers;
+	private final int depth;
+	private final int count;
+
+	private PartialParse(Grammar grammar, Map<TokenType, List<Token>> vocabulary,
+			Token lastToken, Opener openers, int depth, int count) {
+		this.grammar = grammar;
+		this.vocabulary = vocabulary;
+		this.lastToken = lastToken;
+		this.openers = openers;
+		this.depth = depth;
+		this.count = count;
+	}
+
+	/**
+	 * @return The state before the first token of an expression
+	 */
+	public static PartialParse start(Grammar grammar) {
+		return new PartialParse(grammar, vocabulary(grammar), Operation.START, null, 0, 0);
+	}
+
+	/**
+	 * Collects the tokens of the grammar by type, for allowedTokens()
+	 */
+	private static Map<TokenType, List<Token>> vocabulary(Grammar grammar) {
+		Map<TokenType, List<Token>> vocabulary = new EnumMap<TokenType, List<Token>>(
+				TokenType.class);
+		for (TokenType type : TokenType.values())
+			vocabulary.put(type, new ArrayList<Token>());
+		for (Set<Operation> precedenceClass : grammar.precedenceClasses())
+			for (Operation o : precedenceClass) {
+				vocabulary.get(o.type()).add(o);
+				if (o instanceof TernaryOperation)
+					vocabulary.get(TokenType.TernaryOpen).add(((TernaryOperation) o).open());
+				if (o instanceof CallOpen) {
+					vocabulary.get(TokenType.CloseGroup).add(((CallOpen) o).close());
+					if (((CallOpen) o).separator() != null)
+						vocabulary.get(TokenType.Separator).add(((CallOpen) o).separator());
+				}
+			}
+		for (Pair<OpenGroup, CloseGroup> pair : grammar.groupers()) {
+			vocabulary.get(TokenType.OpenGroup).add(pair.first);
+			vocabulary.get(TokenType.CloseGroup).add(pair.second);
+		}
+		for (TokenType type : TokenType.values())
+			vocabulary.put(type, Collections.unmodifiableList(vocabulary.get(type)));
+		return vocabulary;
+	}
+
+	/**
+	 * @return The state after t
+	 * @throws ParseException
+	 *             - if t may not follow the tokens so far
+	 */
+	public PartialParse feed(Token t) throws ParseException {
+		if (t.type() == TokenType.Invalid)
+			throw new ParseException(String.format("Syntax Error: unrecognized input <%s>",
+					t.symbol()), t.getIndex());
+		Opener next = openers;
+		int nextDepth = depth;
+		if (t.type().closes()) {
+			if (openers == null)
+				throw new ParseException(
+						String.format("Unmatched closing grouper <%s>", t.symbol()), t.getIndex());
+			if (!grammar.closes(openers.token, t))
+				throw new ParseException(String.format(
+						"Syntax Error: Mismatched groupers: <%s> <%s>", openers.token.symbol(),
+						t.symbol()), openers.token.getIndex(), t.getIndex());
+			next = openers.below;
+			nextDepth--;
+		}
+		if (t.type() == TokenType.Separator)
+			if (openers == null || !grammar.separates(openers.token, t))
+				throw new ParseException(String.format(
+						"Syntax Error: Separator <%s> outside of a call", t.symbol()), t.getIndex());
+		if (!SyntaxChecker.follows(lastToken.type(), t.type()))
+			throw new ParseException(String.format("Syntax Error: token <%s> followed by <%s>",
+					lastToken.symbol(), t.symbol()), lastToken.getIndex(), t.getIndex());
+		if (t.type() == TokenType.End && openers != null)
+			throw new ParseException("Unmatched closing groupers!", openers.token.getIndex());
+		if (t.type().opens()) {
+			next = new Opener(t, next);
+			nextDepth++;
+		}
+		return new PartialParse(grammar, vocabulary, t, next, nextDepth, count + 1);
+	}
+
+	/**
+	 * Tokenizes and feeds the next piece of input. Symbols with a prefix and an
+	 * infix meaning are resolved by the last token fed, and the tokens are
+	 * numbered on from those fed before.
+	 *
+	 * @return The state after the last token of the input
+	 */
+	public PartialParse feed(Tokenizer tokenizer, String input) throws ParseException {
+		PartialParse state = this;
+		for (Token t : tokenizer.tokenize(input, lastToken.type().expectsOperand()))
+			state = state.feed(t.cloneWithIndex(state.count));
+		return state;
+	}
+
+	/**
+	 * @return Whether feed(t) would succeed, without building an exception
+	 */
+	public boolean accepts(Token t) {
+		TokenType type = t.type();
+		if (type == TokenType.Invalid || !SyntaxChecker.follows(lastToken.type(), type))
+			return false;
+		if (type.closes())
+			return openers != null && grammar.closes(openers.token, t);
+		if (type == TokenType.Separator)
+			return openers != null && grammar.separates(openers.token, t);
+		if (type == TokenType.End)
+			return openers == null;
+		return true;
+	}
+
+	/**
+	 * @return The types of token which may come next, among those the grammar
+	 *         has. Identifier and End are always included when they fit.
+	 */
+	public EnumSet<TokenType> allowedNext() {
+		EnumSet<TokenType> allowed = EnumSet.noneOf(TokenType.class);
+		for (TokenType type : TokenType.values())
+			if (SyntaxChecker.follows(lastToken.type(), type) && allows(type))
+				allowed.add(type);
+		return allowed;
+	}
+
+	private boolean allows(TokenType type) {
+		switch (type) {
+		case Identifier:
+			return true;
+		case End:
+			return openers == null;
+		case CloseGroup:
+			return expectedCloser() instanceof CloseGroup;
+		case TernaryOperation:
+			return expectedCloser() instanceof TernaryOperation;
+		case Separator:
+			return openers != null && openers.token instanceof CallOpen
+					&& ((CallOpen) openers.token).separator() != null;
+		default:
+			return !vocabulary.get(type).isEmpty();
+		}
+	}
+
+	/**
+	 * @return The grammar's operation and grouper tokens which may come next,
+	 *         for completion. Identifiers and the end are left to
+	 *         allowedNext().
+	 */
+	public List<Token> allowedTokens() {
+		List<Token> allowed = new ArrayList<Token>();
+		for (TokenType type : allowedNext())
+			switch (type) {
+			case CloseGroup:
+			case TernaryOperation:
+				allowed.add(expectedCloser());
+				break;
+			case Separator:
+				allowed.add(((CallOpen) openers.token).separator());
+				break;
+			default:
+				allowed.addAll(vocabulary.get(type));
+			}
+		return allowed;
+	}
+
+	/**
+	 * @return The token which closes the innermost open grouper, call or
+	 *         ternary, or null if nothing is open
+	 */
+	public Token expectedCloser() {
+		if (openers == null)
+			return null;
+		Token open = openers.token;
+		if (open instanceof CallOpen)
+			return ((CallOpen) open).close();
+		if (open instanceof OpenGroup)
+			return grammar.closeGroup((OpenGroup) open);
+		for (Token t : vocabulary.get(TokenType.TernaryOperation))
+			if (grammar.closes(open, t))
+				return t;
+		return null;
+	}
+
+	/**
+	 * @return Whether the expression could end here
+	 */
+	public boolean isComplete() {
+		return openers == null && SyntaxChecker.follows(lastToken.type(), TokenType.End);
+	}
+
+	/**
+	 * @return The last token fed, or Operation.START
+	 */
+	public Token lastToken() {
+		return lastToken;
+	}
+
+	/**
+	 * @return The number of groupers, calls and ternaries left open
+	 */
+	public int depth() {
+		return depth;
+	}
+
+	/**
+	 * @return The number of tokens fed
+	 */
+	public int tokenCount() {
+		return count;
+	}
+}
@@ -0,0 +1,248 @@
+package parsop.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import parsop.grammar.tokens.CallOpen;
+import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+
+/**
+ * Parses by precedence climbing, building the AST as it goes rather than
+ * through reverse Polish notation.
+ *
+ * An expression in a context (the operation whose operand is being parsed)
+ * is one operand, kept extended with the following operations for as long as
+ * the context does not bind more tightly than they do. That is exactly when
+ * the Parser would push the operation on its tokenStack above the context,
+ * so both produce the same trees. Open tokens are never tighter, so inside
+ * groups, calls and ternary operations, expressions run until the closing
+ * token.
+ *
+ * Rather than recursing once per level of nesting, which overflows the call
+ * stack on deeply nested input, the parser keeps a stack of Frames: one for
+ * each expression being parsed, and one for each construct waiting for the
+ * expression inside it, such as an open group or the right operand of a
+ * binary operation. Each finished expression is handed to the frame below.
+ *
+ * Tokens are taken through the Parser, in input order, so the SyntaxChecker
+ * sees the same sequence and reports the same errors. When the next token
+ * cannot continue an expression, it is left for the caller, and whoever
+ * takes it last lets the SyntaxChecker reject it.
+ *
+ * @author aozdemir
+ *
+ */
+class PrattParser {
+
+	/**
+	 * What a Frame does with the expression handed to it
+	 */
+	private enum Step {
+		// Extends it as the left operand of the following operations
+		Expression,
+		// Applies the prefix operation to it
+		Prefix,
+		// Closes the group around it
+		Group,
+		// Makes it the right operand of the binary operation
+		Binary,
+		// Adds it to the arguments of the call
+		Call,
+		// Makes it the middle operand of the ternary operation
+		Middle,
+		// Makes it the last operand of the ternary operation
+		Last
+	}
+
+	private static class Frame {
+		Step step;
+		// The context of an Expression, or the token of the construct
+		Token token;
+		AST left;
+		AST middle;
+		List<AST> operands;
+	}
+
+	private Parser parser;
+	// Frames are reused across parses, and frames[0..top] are in use
+	private List<Frame> frames;
+	private int top;
+
+	PrattParser(Parser parser) {
+		this.parser = parser;
+		this.frames = new ArrayList<Frame>();
+	}
+
+	/**
+	 * Parses the token stream of the parser, up to and including END
+	 */
+	AST parse() throws ParseException {
+		top = -1;
+		AST value = expression(Operation.START);
+		while (true) {
+			Frame frame = frames.get(top);
+			switch (frame.step) {
+			case Expression:
+				Token next = parser.tokenStream.peek();
+				if (!continues(next) || parser.isLeftHigherPrecedence(frame.token, next)) {
+					parser.depth--;
+					top--;
+					if (top < 0) {
+						expect(parser.takeToken(), TokenType.End);
+						return value;
+					}
+					// Hand the finished expression to the frame below
+					continue;
+				}
+				value = extend(value, parser.takeToken());
+				break;
+			case Prefix:
+				top--;
+				value = node(frame.token, value);
+				break;
+			case Group:
+				top--;
+				expect(parser.takeToken(), TokenType.CloseGroup);
+				value = node(frame.token, value);
+				break;
+			case Binary:
+				top--;
+				value = node(frame.token, frame.left, value);
+				break;
+			case Call:
+				frame.operands.add(value);
+				((CallOpen) frame.token).addArgument();
+				Token t = parser.takeToken();
+				if (t.type() == TokenType.CloseGroup) {
+					top--;
+					parser.reductions++;
+					value = new AST(frame.token, frame.operands);
+				} else {
+					expect(t, TokenType.Separator);
+					value = expression(frame.token);
+				}
+				break;
+			case Middle:
+				Token ternary = parser.takeToken();
+				expect(ternary, TokenType.TernaryOperation);
+				frame.step = Step.Last;
+				frame.token = ternary;
+				frame.middle = value;
+				value = expression(ternary);
+				break;
+			case Last:
+				top--;
+				value = node(frame.token, frame.left, frame.middle, value);
+				break;
+			}
+		}
+	}
+
+	private static boolean continues(Token t) {
+		switch (t.type()) {
+		case BinaryOperation:
+		case PostfixOperation:
+		case CallOpen:
+		case TernaryOpen:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Starts an expression in the context, and parses its first operand. The
+	 * prefix operations and groups around it are left in frames, each waiting
+	 * for the expression inside it.
+	 * 
+	 * @return The innermost identifier
+	 */
+	private AST expression(Token context) throws ParseException {
+		push(Step.Expression, context, null);
+		while (true) {
+			if (++parser.depth > parser.maxDepth)
+				parser.maxDepth = parser.depth;
+			Token t = parser.takeToken();
+			switch (t.type()) {
+			case Identifier:
+				return node(t);
+			case UnaryOperation:
+				push(Step.Prefix, t, null);
+				break;
+			case OpenGroup:
+				push(Step.Group, t, null);
+				break;
+			default:
+				throw unexpected(t);
+			}
+			push(Step.Expression, t, null);
+		}
+	}
+
+	/**
+	 * Applies the operation to the operand before it
+	 * 
+	 * @return The new operand, or the first operand of the expression which
+	 *         the operation waits for
+	 */
+	private AST extend(AST left, Token operation) throws ParseException {
+		switch (operation.type()) {
+		case BinaryOperation:
+			push(Step.Binary, operation, left);
+			return expression(operation);
+		case PostfixOperation:
+			return node(operation, left);
+		case CallOpen:
+			List<AST> operands = new ArrayList<AST>();
+			operands.add(left);
+			if (parser.tokenStream.peek().type() == TokenType.CloseGroup) {
+				parser.takeToken();
+				parser.reductions++;
+				return new AST(operation, operands);
+			}
+			push(Step.Call, operation, null).operands = operands;
+			return expression(operation);
+		case TernaryOpen:
+			push(Step.Middle, operation, left);
+			return expression(operation);
+		default:
+			throw unexpected(operation);
+		}
+	}
+
+	private Frame push(Step step, Token token, AST left) {
+		if (++top == frames.size())
+			frames.add(new Frame());
+		Frame frame = frames.get(top);
+		frame.step = step;
+		frame.token = token;
+		frame.left = left;
+		frame.middle = null;
+		frame.operands = null;
+		return frame;
+	}
+
+	private AST node(Token t, AST... operands) {
+		if (operands.length > 0)
+			parser.reductions++;
+		List<AST> list = new ArrayList<AST>(operands.length);
+		for (AST operand : operands)
+			list.add(operand);
+		return new AST(t, list);
+	}
+
+	private static void expect(Token t, TokenType type) throws ParseException {
+		if (t.type() != type)
+			throw unexpected(t);
+	}
+
+	/**
+	 * The SyntaxChecker rejects every misplaced token before this is reached
+	 */
+	private static ParseException unexpected(Token t) {
+		return new ParseException(String.format("Syntax Error: unexpected token <%s>",
+				t.symbol()), t.getIndex());
+	}
+}
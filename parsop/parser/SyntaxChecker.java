@@ -1,16 +1,11 @@
 package parsop.parser;
 
-import java.util.HashSet;
-import java.util.Set;
-import java.util.Stack;
-
+import parsop.grammar.FastPath;
 import parsop.grammar.Grammar;
-import parsop.grammar.tokens.CloseGroup;
-import parsop.grammar.tokens.OpenGroup;
 import parsop.grammar.tokens.Operation;
 import parsop.grammar.tokens.Token;
 import parsop.grammar.tokens.TokenType;
-import parsop.util.Pair;
+import parsop.util.ArrayStack;
 
 /**
  * This syntax checker is intended to process each and every token in the input
@@ -27,8 +22,19 @@ import parsop.util.Pair;
  * -> I | U | O U -> I | U | O O -> I | U | O B -> I | U | O I -> B | C | E C ->
  * B | C | E Interestingly enough these rules are necessary and sufficient.
  * 
+ * Postfix operations (P), call opens (L), argument separators (A), ternary
+ * opens (T) and ternary operations (R) extend the rules: S, U, O, B, L, A, T
+ * and R -> I | U | O, while I, C and P -> B | C | E | P | L | A | T | R. A
+ * call may be empty, so L -> C as well. Call opens and ternary opens are
+ * pushed on the grouper stack with the OpenGroups; a ternary operation closes
+ * its ternary open, and a separator must be directly inside a call.
+ * 
  * By tracking the last token and maintaining an OpenGroup stack, these rules
- * can be easily checked.
+ * can be easily checked. The OpenGroup stack is the groupers stack of the
+ * ParseContext, and the pairs are a table indexed by the ordinals
+ * of the two types, so checking a token allocates nothing. With
+ * FastPath.SimpleGroupers there is only one pair of groupers, so closing
+ * groupers are matched without looking the pair up.
  * 
  * @author aozdemir
  *
@@ -36,27 +42,51 @@ import parsop.util.Pair;
 public class SyntaxChecker {
 	Grammar grammar;
 	Token lastToken;
-	Set<Pair<TokenType, TokenType>> acceptableTokenPairs;
-	Stack<OpenGroup> openGroupers;
+	static final boolean[][] acceptableTokenPairs = buildAcceptableTokenPairs();
+	ArrayStack<Token> openGroupers;
+	boolean simpleGroupers;
 
 	public SyntaxChecker(Grammar grammar) {
 		this.grammar = grammar;
-		this.refresh();
-		this.buildAcceptableTokenPairs();
+		setFastPaths(true);
+		this.refresh(new ParseContext());
+	}
+
+	/**
+	 * Chooses whether FastPath.SimpleGroupers is used when the grammar's
+	 * profile allows it, as it is by default
+	 */
+	public void setFastPaths(boolean fastPaths) {
+		this.simpleGroupers = fastPaths && grammar.profile().uses(FastPath.SimpleGroupers);
 	}
 
-	public void refresh() {
+	/**
+	 * Starts checking the tokens of the context
+	 */
+	void refresh(ParseContext context) {
 		this.lastToken = Operation.START;
-		this.openGroupers = new Stack<OpenGroup>();
+		this.openGroupers = context.groupers;
+		this.openGroupers.clear();
 	}
 
 	public void checkNextToken(Token t) throws ParseException {
+		checkRecognized(t);
 		checkGroupers(t);
 		checkTokenPairs(t);
 		checkEndCondition(t);
 		lastToken = t;
 	}
 
+	/**
+	 * @throws ParseException
+	 *             - if the tokenizer could not match the input
+	 */
+	private void checkRecognized(Token t) throws ParseException {
+		if (t.type() == TokenType.Invalid)
+			throw new ParseException(String.format("Syntax Error: unrecognized input <%s>",
+					t.symbol()), t.getIndex());
+	}
+
 	/**
 	 * Verifies that the grouper stack is empty if the end is reached
 	 * 
@@ -66,7 +96,8 @@ public class SyntaxChecker {
 	private void checkEndCondition(Token t) throws ParseException {
 		if (t.type() == TokenType.End)
 			if (!openGroupers.isEmpty())
-				throw new ParseException("Unmatched closing groupers!", openGroupers.peek().getIndex());
+				throw new ParseException("Unmatched closing groupers!", openGroupers.peek()
+						.getIndex());
 	}
 
 	/**
@@ -76,8 +107,7 @@ public class SyntaxChecker {
 	 *             - If an illegal pair occurs, I.E. + )
 	 */
 	private void checkTokenPairs(Token t) throws ParseException {
-		if (!acceptableTokenPairs.contains(new Pair<TokenType, TokenType>(lastToken.type(), t
-				.type())))
+		if (!follows(lastToken.type(), t.type()))
 			throw new ParseException(String.format("Syntax Error: token <%s> followed by <%s>",
 					lastToken.symbol(), t.symbol()), lastToken.getIndex(), t.getIndex());
 	}
@@ -90,41 +120,74 @@ public class SyntaxChecker {
 	 *             - If there is a mismatch, such as ( ( ) ]
 	 */
 	private void checkGroupers(Token t) throws ParseException {
-		if (t.isOpenGroup())
-			openGroupers.push((OpenGroup) t);
-		if (t.isCloseGroup()) {
+		if (t.type().opens())
+			openGroupers.push(t);
+		if (t.type().closes()) {
 			if (openGroupers.isEmpty())
 				throw new ParseException(
 						String.format("Unmatched closing grouper <%s>", t.symbol()), t.getIndex());
-			OpenGroup match = openGroupers.pop();
-			if (!match.equals(grammar.openGroup((CloseGroup) t)))
+			Token match = openGroupers.pop();
+			if (!simpleGroupers && !grammar.closes(match, t))
 				throw new ParseException(String.format(
 						"Syntax Error: Mismatched groupers: <%s> <%s>", match.symbol(),
 						t.symbol()), match.getIndex(), t.getIndex());
 		}
+		if (t.type() == TokenType.Separator)
+			if (openGroupers.isEmpty()
+					|| !grammar.separates(openGroupers.peek(), t))
+				throw new ParseException(String.format(
+						"Syntax Error: Separator <%s> outside of a call", t.symbol()), t.getIndex());
+	}
+
+	/**
+	 * @return The last token checked
+	 */
+	public Token lastToken() {
+		return lastToken;
+	}
+
+	/**
+	 * @return Whether a token of type second may directly follow one of type
+	 *         first
+	 */
+	static boolean follows(TokenType first, TokenType second) {
+		return acceptableTokenPairs[first.ordinal()][second.ordinal()];
 	}
 
 	/**
 	 * Set up pairs of acceptable consecutive tokens
 	 */
-	private void buildAcceptableTokenPairs() {
-		this.acceptableTokenPairs = new HashSet<Pair<TokenType, TokenType>>();
-		canGoToBeginExpression(TokenType.Start);
-		canGoToBeginExpression(TokenType.BinaryOperation);
-		canGoToBeginExpression(TokenType.UnaryOperation);
-		canGoToBeginExpression(TokenType.OpenGroup);
-		canGoToEndExpression(TokenType.CloseGroup);
-		canGoToEndExpression(TokenType.Identifier);
+	private static boolean[][] buildAcceptableTokenPairs() {
+		int types = TokenType.values().length;
+		boolean[][] pairs = new boolean[types][types];
+		canGoToBeginExpression(pairs, TokenType.Start);
+		canGoToBeginExpression(pairs, TokenType.BinaryOperation);
+		canGoToBeginExpression(pairs, TokenType.UnaryOperation);
+		canGoToBeginExpression(pairs, TokenType.OpenGroup);
+		canGoToBeginExpression(pairs, TokenType.CallOpen);
+		canGoToBeginExpression(pairs, TokenType.Separator);
+		canGoToBeginExpression(pairs, TokenType.TernaryOpen);
+		canGoToBeginExpression(pairs, TokenType.TernaryOperation);
+		canGoToEndExpression(pairs, TokenType.CloseGroup);
+		canGoToEndExpression(pairs, TokenType.Identifier);
+		canGoToEndExpression(pairs, TokenType.PostfixOperation);
+		// Empty argument lists
+		accept(pairs, TokenType.CallOpen, TokenType.CloseGroup);
+		return pairs;
+	}
+
+	private static void accept(boolean[][] pairs, TokenType first, TokenType second) {
+		pairs[first.ordinal()][second.ordinal()] = true;
 	}
 
 	/**
 	 * Call this if t can be followed by a Beginning Expressions (Identifier,
 	 * UnaryOperation, or OpenGroup)
 	 */
-	private void canGoToBeginExpression(TokenType t) {
-		acceptableTokenPairs.add(new Pair<TokenType, TokenType>(t, TokenType.Identifier));
-		acceptableTokenPairs.add(new Pair<TokenType, TokenType>(t, TokenType.OpenGroup));
-		acceptableTokenPairs.add(new Pair<TokenType, TokenType>(t, TokenType.UnaryOperation));
+	private static void canGoToBeginExpression(boolean[][] pairs, TokenType t) {
+		accept(pairs, t, TokenType.Identifier);
+		accept(pairs, t, TokenType.OpenGroup);
+		accept(pairs, t, TokenType.UnaryOperation);
 	}
 
 	/**
@@ -132,10 +195,15 @@ public class SyntaxChecker {
 	 * Operation,
 	 * 
 	 */
-	private void canGoToEndExpression(TokenType t) {
-		acceptableTokenPairs.add(new Pair<TokenType, TokenType>(t, TokenType.End));
-		acceptableTokenPairs.add(new Pair<TokenType, TokenType>(t, TokenType.CloseGroup));
-		acceptableTokenPairs.add(new Pair<TokenType, TokenType>(t, TokenType.BinaryOperation));
+	private static void canGoToEndExpression(boolean[][] pairs, TokenType t) {
+		accept(pairs, t, TokenType.End);
+		accept(pairs, t, TokenType.CloseGroup);
+		accept(pairs, t, TokenType.BinaryOperation);
+		accept(pairs, t, TokenType.PostfixOperation);
+		accept(pairs, t, TokenType.CallOpen);
+		accept(pairs, t, TokenType.Separator);
+		accept(pairs, t, TokenType.TernaryOpen);
+		accept(pairs, t, TokenType.TernaryOperation);
 	}
 
 }
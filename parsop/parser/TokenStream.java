@@ -0,0 +1,98 @@
+package parsop.parser;
+
+import java.util.NoSuchElementException;
+
+import parsop.grammar.tokens.Operation;
+import parsop.grammar.tokens.Token;
+
+/**
+ * The tokens of one parse, pulled from the Tokenizer as the parser asks for
+ * them and followed by END.
+ *
+ * Only the next token is held here. Once taken, a token is kept only if the
+ * parser pushes it on a stack of the ParseContext, so a parse holds no list
+ * of its tokens; the Tokenizer keeps two ints for each token, where it starts
+ * and ends in the input, for error reports and arena offsets. Tokens are
+ * numbered by Token.getIndex(), which is also their position in the stream.
+ *
+ * @author aozdemir
+ *
+ */
+class TokenStream {
+
+	private Tokenizer tokenizer;
+	private Token next;
+	private int nextIndex;
+	private boolean ended;
+
+	// Time spent scanning, taken only while timed
+	boolean timed;
+	long nanos;
+
+	/**
+	 * Starts on the input the tokenizer was reset to
+	 */
+	void reset(Tokenizer tokenizer) {
+		this.tokenizer = tokenizer;
+		this.next = null;
+		this.nextIndex = 0;
+		this.ended = false;
+		this.timed = false;
+		this.nanos = 0;
+	}
+
+	Token peek() {
+		if (next == null)
+			pull();
+		return next;
+	}
+
+	boolean hasNext() {
+		return next != null || !ended;
+	}
+
+	/**
+	 * @return The index of the next token, which is the number taken
+	 */
+	int index() {
+		return nextIndex;
+	}
+
+	Token next() {
+		Token t = peek();
+		next = null;
+		nextIndex++;
+		return t;
+	}
+
+	/**
+	 * Scans the next token, or END after the last one
+	 */
+	private void pull() {
+		if (ended)
+			throw new NoSuchElementException("No tokens after END");
+		long start = timed ? System.nanoTime() : 0;
+		if (tokenizer.hasNext())
+			next = tokenizer.next();
+		else {
+			// Numbered after the last token, so errors at the end mark no input
+			next = Operation.END.cloneWithIndex(tokenizer.count());
+			ended = true;
+		}
+		if (timed)
+			nanos += System.nanoTime() - start;
+	}
+
+	/**
+	 * @return The token scanned but not yet taken, and "..." if there may be
+	 *         more
+	 */
+	public String toString() {
+		StringBuffer result = new StringBuffer();
+		if (next != null)
+			result.append("  ").append(next);
+		if (!ended)
+			result.append("  ...");
+		return result.toString();
+	}
+}
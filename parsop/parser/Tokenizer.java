@@ -2,84 +2,277 @@ package parsop.parser;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 
+import parsop.grammar.CharSymbols;
+import parsop.grammar.FastPath;
 import parsop.grammar.Grammar;
+import parsop.grammar.SymbolTable;
+import parsop.grammar.SymbolTrie;
+import parsop.grammar.lexer.DFA;
 import parsop.grammar.tokens.Identifier;
+import parsop.grammar.tokens.Operation;
 import parsop.grammar.tokens.Token;
+import parsop.util.IntStack;
 
+/**
+ * Splits input into the tokens of a grammar, on demand: after reset(), each
+ * next() scans just far enough to produce one more token, so a parser can
+ * reduce the start of the input before the end of it has been read, and no
+ * list of tokens is built unless one is asked for with tokenize().
+ * 
+ * Tokens are numbered from 0 in the order they are scanned, and where each
+ * one starts and ends in the input is kept in two int arrays, for error
+ * reports and for the offsets of an ASTArena. These grow with every token
+ * scanned until the next reset().
+ * 
+ * The FastPaths of the grammar's profile pick simpler ways to scan when the
+ * grammar allows, such as looking symbols up by their single character.
+ * 
+ * @author aozdemir
+ *
+ */
 public class Tokenizer {
 	
 	private Grammar grammar;
-	private List<List<Integer>> tokenIndexToInputIndex;
+	private SymbolTable symbols;
+	private boolean fastPaths;
+	private CharSymbols charSymbols;
+	private boolean tracking;
+
+	// State of the current input
+	private String input;
+	private int position;
+	private boolean operandExpected;
+	private Token peeked;
+	private IntStack starts;
+	private IntStack ends;
 	
 	public Tokenizer(Grammar grammar) {
 		this.grammar = grammar;
+		this.fastPaths = true;
+		this.starts = new IntStack();
+		this.ends = new IntStack();
+		reset("");
 	}
-	
-	public void refresh(String input) {
-		tokenIndexToInputIndex = new ArrayList<List<Integer>>(input.length());
+
+	/**
+	 * Interns the names of identifiers in symbols, so that each Identifier
+	 * carries its id and shares its string with every other occurrence.
+	 * Numeric literals are not interned.
+	 * 
+	 * @param symbols
+	 *            - null to stop interning, which is the default
+	 */
+	public void setSymbolTable(SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	/**
+	 * Chooses whether the FastPaths of the grammar's profile are used. They
+	 * are by default, and give the same tokens as the general way. It takes
+	 * effect at the next reset().
+	 */
+	public void setFastPaths(boolean fastPaths) {
+		this.fastPaths = fastPaths;
+	}
+
+	/**
+	 * Starts on the input, forgetting the tokens of the last one
+	 */
+	public void reset(String input) {
+		reset(input, true);
+	}
+
+	/**
+	 * Starts on a piece of input which follows earlier tokens, such as the
+	 * rest of a line being typed
+	 *
+	 * @param operandExpected
+	 *            - Whether the token before the input expects an operand,
+	 *            which resolves symbols with a prefix and an infix meaning
+	 */
+	public void reset(String input, boolean operandExpected) {
+		this.input = input;
+		this.position = 0;
+		this.operandExpected = operandExpected;
+		this.peeked = null;
+		this.charSymbols = fastPaths ? grammar.charSymbols() : null;
+		this.tracking = !fastPaths || !grammar.profile().uses(FastPath.NoOperandTracking);
+		starts.clear();
+		ends.clear();
+	}
+
+	/**
+	 * @return Whether any token is left in the input
+	 */
+	public boolean hasNext() {
+		if (peeked != null)
+			return true;
+		while (position < input.length() && Character.isWhitespace(input.charAt(position)))
+			position++;
+		return position < input.length();
+	}
+
+	/**
+	 * @return The next token, without taking it
+	 * @throws NoSuchElementException
+	 *             - if the input is used up
+	 */
+	public Token peek() {
+		if (peeked == null) {
+			if (!hasNext())
+				throw new NoSuchElementException("No tokens left in the input");
+			if (grammar.hasTokenClasses())
+				peeked = scan();
+			else if (charSymbols != null)
+				peeked = splitByChar();
+			else
+				peeked = split();
+		}
+		return peeked;
+	}
+
+	/**
+	 * @return The next token
+	 * @throws NoSuchElementException
+	 *             - if the input is used up
+	 */
+	public Token next() {
+		Token t = peek();
+		peeked = null;
+		return t;
+	}
+
+	/**
+	 * @return The number of tokens scanned from the current input, including
+	 *         one peeked at
+	 */
+	public int count() {
+		return starts.size();
+	}
+
+	/**
+	 * @return Where the token starts in the input
+	 */
+	public int inputStart(int tokenIndex) {
+		return starts.get(tokenIndex);
+	}
+
+	/**
+	 * @return Where the token ends in the input, exclusive
+	 */
+	public int inputEnd(int tokenIndex) {
+		return ends.get(tokenIndex);
 	}
 	
 	public List<Integer> inputIndices(int tokenIndex) {
-		List<Integer> list = tokenIndexToInputIndex.get(tokenIndex);
+		List<Integer> list = new ArrayList<Integer>(ends.get(tokenIndex) - starts.get(tokenIndex));
+		for (int j = starts.get(tokenIndex); j < ends.get(tokenIndex); j++)
+			list.add(j);
 		return list;
 	}
 	
 	public List<Token> tokenize(String input) {
-		refresh(input);
-		List<Token> tokens = toTokens(input);
-		mapTokensToInput(input, tokens);
-		return tokens;
+		return tokenize(input, true);
 	}
 
-	private List<Token> toTokens(String input) {
-		String[] splitInput = split(input);
+	/**
+	 * Tokenizes a piece of input which follows earlier tokens all at once
+	 *
+	 * @see #reset(String, boolean)
+	 */
+	public List<Token> tokenize(String input, boolean operandExpected) {
+		reset(input, operandExpected);
 		List<Token> tokens = new ArrayList<Token>();
-		int i = 0;
-		for (String symbol : splitInput) {
-			if (!symbol.equals("")) {
-				tokens.add(this.toToken(symbol).cloneWithIndex(i));
-				i++;
-			}
-		}
+		while (hasNext())
+			tokens.add(next());
 		return tokens;
 	}
-	
-	private Token toToken(String symbol) {
-		if (this.grammar.isSpecialSymbol(symbol)) {
-			return this.grammar.getToken(symbol);
+
+	/**
+	 * Scans one token with the grammar's DFA, taking the longest match.
+	 * Symbols with two meanings are resolved by whether the previous token
+	 * expects an operand.
+	 * A character which starts no match becomes an Invalid token, which the
+	 * SyntaxChecker rejects.
+	 */
+	private Token scan() {
+		long match = grammar.lexer().match(input, position);
+		int end;
+		Token t;
+		if (match < 0) {
+			end = position + 1;
+			t = new Operation(input.substring(position, end), 0).cloneWithIndex(count());
+		} else {
+			end = DFA.end(match);
+			t = grammar.lexerToken(DFA.rule(match), input, position, end, count(),
+					operandExpected, symbols);
+			track(t);
 		}
-		else
-			return new Identifier(symbol);
-	}
-
-	private void mapTokensToInput(String input, List<Token> tokens) throws Error {
-		int lastTokenStart = -1;
-		for (int i = 0; i < tokens.size(); i++) {
-			Token t = tokens.get(i);
-			lastTokenStart = input.indexOf(t.symbol(), lastTokenStart + 1);
-			if (lastTokenStart < 0)
-				throw new Error("Problem with tokenizer token -> ouput mapping");
-			List<Integer> inputIndices = new ArrayList<Integer>(t.symbol().length());
-			for (int j = lastTokenStart; j < lastTokenStart + t.symbol().length(); j++)
-				inputIndices.add(j);
-			lastTokenStart += t.symbol().length() - 1;
-			tokenIndexToInputIndex.add(inputIndices);
+		return taken(t, end);
+	}
+
+	/**
+	 * Scans one token by longest match against the grammar's symbols. Any run
+	 * of input between whitespace and symbols is an Identifier.
+	 */
+	private Token split() {
+		SymbolTrie trie = grammar.symbolTrie();
+		Token symbol = trie.longestMatch(input, position, operandExpected);
+		if (symbol != null) {
+			track(symbol);
+			return taken(symbol.cloneWithIndex(count()), position + symbol.symbol().length());
 		}
+		int end = position + 1;
+		while (end < input.length() && !Character.isWhitespace(input.charAt(end))
+				&& trie.longestMatch(input, end, false) == null)
+			end++;
+		operandExpected = false;
+		return taken(identifier(input, position, end, count()), end);
 	}
 
-	private String[] split(String input) {
-		String[] splitInput = insertWhitespace(input).split("\\s+");
-		return splitInput;
+	/**
+	 * Scans one token as split() does, looking symbols up by their single
+	 * character
+	 */
+	private Token splitByChar() {
+		CharSymbols table = charSymbols;
+		Token symbol = table.get(input.charAt(position), operandExpected);
+		if (symbol != null) {
+			track(symbol);
+			return taken(symbol.cloneWithIndex(count()), position + 1);
+		}
+		int end = position + 1;
+		char c;
+		while (end < input.length() && !Character.isWhitespace(c = input.charAt(end))
+				&& !table.contains(c))
+			end++;
+		operandExpected = false;
+		return taken(identifier(input, position, end, count()), end);
 	}
 
-	private String insertWhitespace(String input) {
-		String output = input;
-		for (String s : this.grammar.specialSymbols())
-			output = output.replace(s, String.format(" %s ", s));
-		return output;
+	/**
+	 * Notes whether the token expects an operand, unless no symbol of the
+	 * grammar depends on it
+	 */
+	private void track(Token t) {
+		if (tracking)
+			operandExpected = t.type().expectsOperand();
+	}
+
+	private Identifier identifier(String input, int start, int end, int index) {
+		if (symbols == null)
+			return new Identifier(input.substring(start, end), null, index);
+		int id = symbols.intern(input, start, end);
+		return new Identifier(symbols.name(id), null, index, id);
+	}
+
+	private Token taken(Token t, int end) {
+		starts.push(position);
+		ends.push(end);
+		position = end;
+		return t;
 	}
-	
-	
 
 }
@@ -0,0 +1,42 @@
+package parsop.plan;
+
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Computes the value of one step of a Plan from the values of its operands.
+ *
+ * The operands are passed as positions in the array of values so that a step
+ * allocates nothing: operand k of the step is values[operands[from + k]], for
+ * k below count.
+ *
+ * @author aozdemir
+ *
+ */
+@FunctionalInterface
+public interface Operator {
+
+	double apply(double[] values, int[] operands, int from, int count);
+
+	public static Operator unary(DoubleUnaryOperator f) {
+		return (values, operands, from, count) -> f.applyAsDouble(values[operands[from]]);
+	}
+
+	public static Operator binary(DoubleBinaryOperator f) {
+		return (values, operands, from, count) -> f.applyAsDouble(values[operands[from]],
+				values[operands[from + 1]]);
+	}
+
+	/**
+	 * @return An operator combining any number of operands from the left, as
+	 *         for a call with several arguments
+	 */
+	public static Operator fold(DoubleBinaryOperator f) {
+		return (values, operands, from, count) -> {
+			double result = values[operands[from]];
+			for (int k = 1; k < count; k++)
+				result = f.applyAsDouble(result, values[operands[from + k]]);
+			return result;
+		};
+	}
+}
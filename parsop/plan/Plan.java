@@ -0,0 +1,159 @@
+package parsop.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import parsop.grammar.tokens.Token;
+
+/**
+ * A straight-line program computing the values of many expressions at once,
+ * made by a Planner. Each step computes one distinct subexpression from steps
+ * before it, so evaluating the plan computes every shared subexpression once.
+ *
+ * A step is a constant (a NumericLiteral), a variable (any other
+ * identifier), or an operation whose Operator is given with bind(). The
+ * values of the variables are passed in an array indexed by their slot, in
+ * the order of variables().
+ *
+ * A plan may be shared between threads once every operator is bound, as long
+ * as each thread evaluates into its own array of values.
+ *
+ * @author aozdemir
+ *
+ */
+public class Plan {
+
+	static final byte CONSTANT = 0;
+	static final byte VARIABLE = 1;
+	static final byte OPERATION = 2;
+
+	Token[] tokens;
+	byte[] kinds;
+	/**
+	 * The value of each CONSTANT step
+	 */
+	double[] constants;
+	/**
+	 * The slot of each VARIABLE step
+	 */
+	int[] slots;
+	/**
+	 * The operands of step i are operands[from[i]] to operands[from[i] +
+	 * count[i] - 1]
+	 */
+	int[] from;
+	int[] count;
+	int[] operands;
+	Operator[] operators;
+	int[] roots;
+	List<String> variables;
+
+	Plan() {
+	}
+
+	/**
+	 * Gives the operator for every step of the operation. Tokens are compared
+	 * with equals(), so a call binds whatever its number of arguments.
+	 */
+	public void bind(Token operation, Operator operator) {
+		for (int i = 0; i < tokens.length; i++)
+			if (kinds[i] == OPERATION && tokens[i].equals(operation))
+				operators[i] = operator;
+	}
+
+	/**
+	 * @return The operations which have no operator yet
+	 */
+	public List<Token> unbound() {
+		List<Token> result = new ArrayList<Token>();
+		for (int i = 0; i < tokens.length; i++)
+			if (kinds[i] == OPERATION && operators[i] == null && !result.contains(tokens[i]))
+				result.add(tokens[i]);
+		return result;
+	}
+
+	/**
+	 * Computes every step for one record
+	 *
+	 * @param variables
+	 *            - The value of each variable, by slot
+	 * @param values
+	 *            - Receives the value of each step, and must hold size()
+	 * @throws IllegalStateException
+	 *             - if an operation has no operator
+	 */
+	public void evaluate(double[] variables, double[] values) {
+		for (int i = 0; i < kinds.length; i++)
+			switch (kinds[i]) {
+			case CONSTANT:
+				values[i] = constants[i];
+				break;
+			case VARIABLE:
+				values[i] = variables[slots[i]];
+				break;
+			default:
+				Operator operator = operators[i];
+				if (operator == null)
+					throw new IllegalStateException("No operator bound for " + tokens[i]);
+				values[i] = operator.apply(values, operands, from[i], count[i]);
+			}
+	}
+
+	/**
+	 * @return The value of the expression added as number expression to the
+	 *         Planner, from the values of the last evaluate()
+	 */
+	public double result(double[] values, int expression) {
+		return values[roots[expression]];
+	}
+
+	/**
+	 * @return The number of steps
+	 */
+	public int size() {
+		return kinds.length;
+	}
+
+	/**
+	 * @return The number of expressions
+	 */
+	public int expressions() {
+		return roots.length;
+	}
+
+	/**
+	 * @return The step computing an expression
+	 */
+	public int root(int expression) {
+		return roots[expression];
+	}
+
+	/**
+	 * @return The names of the variables, by slot
+	 */
+	public List<String> variables() {
+		return Collections.unmodifiableList(variables);
+	}
+
+	/**
+	 * @return The slot of the variable, or -1 if no expression uses it
+	 */
+	public int slot(String variable) {
+		return variables.indexOf(variable);
+	}
+
+	/**
+	 * @return The steps, one per line, like "5 = 2* 3 4"
+	 */
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		for (int i = 0; i < kinds.length; i++) {
+			result.append(i).append(" = ").append(tokens[i]);
+			for (int k = 0; k < count[i]; k++)
+				result.append(' ').append(operands[from[i] + k]);
+			result.append('\n');
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,216 @@
+package parsop.plan;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.GrammarException;
+import parsop.grammar.tokens.Token;
+import parsop.parser.AST;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+
+/**
+ * Plans a file of rules, one expression per line, with and without sharing,
+ * and reports how many steps sharing saves and how much faster the shared plan
+ * evaluates random records.
+ *
+ * The operations are given arithmetic meanings by their symbols (+, -, *, /,
+ * %, ^ or **, comparisons, and, not), calls sum their arguments, a ternary
+ * picks by whether its condition is non-zero, and any other operation adds
+ * half its second operand to its first. Both plans are checked to agree on
+ * every record.
+ *
+ * @author aozdemir
+ *
+ */
+public class PlanBenchmark {
+
+	private Plan shared;
+	private Plan unshared;
+	private long treeNodes;
+
+	/**
+	 * @param associative
+	 *            - Names of operations to declare associative, such as "2+"
+	 * @param commutative
+	 *            - Names of operations to declare commutative
+	 */
+	public PlanBenchmark(Grammar grammar, List<String> rules, List<String> associative,
+			List<String> commutative) throws ParseException {
+		Parser parser = new Parser(() -> grammar, false);
+		Planner sharing = new Planner(grammar);
+		Planner separate = new Planner(grammar);
+		separate.setSharing(false);
+		for (Planner planner : new Planner[] { sharing, separate }) {
+			for (String name : associative)
+				planner.setAssociative(named(grammar, name));
+			for (String name : commutative)
+				planner.setCommutative(named(grammar, name));
+		}
+		for (String rule : rules) {
+			AST tree = parser.parse(rule);
+			sharing.add(tree);
+			separate.add(tree);
+		}
+		this.treeNodes = sharing.treeNodes();
+		this.shared = sharing.plan();
+		this.unshared = separate.plan();
+		bindArithmetic(shared);
+		bindArithmetic(unshared);
+	}
+
+	private static Token named(Grammar grammar, String name) {
+		Token t = grammar.tokenNamed(name);
+		if (t == null)
+			throw new IllegalArgumentException("No token named " + name + " in the grammar");
+		return t;
+	}
+
+	static void bindArithmetic(Plan plan) {
+		for (Token t : plan.unbound())
+			plan.bind(t, arithmetic(t));
+	}
+
+	private static Operator arithmetic(Token t) {
+		switch (t.type()) {
+		case UnaryOperation:
+			if (t.symbol().equals("-"))
+				return Operator.unary(a -> -a);
+			if (t.symbol().equals("+"))
+				return Operator.unary(a -> a);
+			return Operator.unary(a -> a == 0 ? 1 : 0);
+		case PostfixOperation:
+			return Operator.unary(a -> a * a);
+		case CallOpen:
+			return Operator.fold((a, b) -> a + b);
+		case TernaryOperation:
+			return (values, operands, from, count) -> values[operands[from]] != 0
+					? values[operands[from + 1]] : values[operands[from + 2]];
+		default:
+			switch (t.symbol()) {
+			case "+":
+				return Operator.binary((a, b) -> a + b);
+			case "-":
+				return Operator.binary((a, b) -> a - b);
+			case "*":
+				return Operator.binary((a, b) -> a * b);
+			case "/":
+				return Operator.binary((a, b) -> a / b);
+			case "%":
+				return Operator.binary((a, b) -> a % b);
+			case "^":
+			case "**":
+				return Operator.binary(Math::pow);
+			case "<":
+				return Operator.binary((a, b) -> a < b ? 1 : 0);
+			case "<=":
+				return Operator.binary((a, b) -> a <= b ? 1 : 0);
+			case "==":
+				return Operator.binary((a, b) -> a == b ? 1 : 0);
+			case "&&":
+			case "and":
+				return Operator.binary((a, b) -> a != 0 && b != 0 ? 1 : 0);
+			default:
+				return Operator.binary((a, b) -> a + b / 2);
+			}
+		}
+	}
+
+	/**
+	 * Evaluates both plans on the same random records
+	 */
+	public String run(int records, int rounds) {
+		Random random = new Random(42);
+		double[][] inputs = new double[records][];
+		for (int r = 0; r < records; r++) {
+			inputs[r] = new double[Math.max(shared.variables().size(), 1)];
+			for (int v = 0; v < inputs[r].length; v++)
+				inputs[r][v] = random.nextInt(20) - 5 + random.nextDouble();
+		}
+		// The plans may number the variables differently
+		int[] toShared = slots(unshared, shared);
+		double[][] unsharedInputs = new double[records][];
+		for (int r = 0; r < records; r++) {
+			unsharedInputs[r] = new double[Math.max(toShared.length, 1)];
+			for (int v = 0; v < toShared.length; v++)
+				unsharedInputs[r][v] = inputs[r][toShared[v]];
+		}
+		double[] sharedValues = new double[shared.size()];
+		double[] unsharedValues = new double[unshared.size()];
+		for (int r = 0; r < records; r++) {
+			shared.evaluate(inputs[r], sharedValues);
+			unshared.evaluate(unsharedInputs[r], unsharedValues);
+			for (int e = 0; e < shared.expressions(); e++)
+				if (Double.doubleToLongBits(shared.result(sharedValues, e)) != Double
+						.doubleToLongBits(unshared.result(unsharedValues, e)))
+					throw new IllegalStateException(String.format(
+							"The plans disagree on expression %d of record %d", e, r));
+		}
+
+		long sharedNanos = Long.MAX_VALUE;
+		long unsharedNanos = Long.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			for (int r = 0; r < records; r++)
+				unshared.evaluate(unsharedInputs[r], unsharedValues);
+			unsharedNanos = Math.min(unsharedNanos, System.nanoTime() - start);
+			start = System.nanoTime();
+			for (int r = 0; r < records; r++)
+				shared.evaluate(inputs[r], sharedValues);
+			sharedNanos = Math.min(sharedNanos, System.nanoTime() - start);
+		}
+		return String.format("%d expressions, %d tree nodes\n"
+				+ "unshared: %8d steps  %8.2f us/record\n"
+				+ "shared  : %8d steps  %8.2f us/record\n"
+				+ "%.1f%% fewer steps, %.2fx faster", shared.expressions(), treeNodes, unshared
+				.size(), unsharedNanos / 1e3 / records, shared.size(), sharedNanos / 1e3 / records,
+				100.0 * (unshared.size() - shared.size()) / unshared.size(), (double) unsharedNanos
+						/ sharedNanos);
+	}
+
+	/**
+	 * @return For each slot of from, the slot of the same variable in to
+	 */
+	private static int[] slots(Plan from, Plan to) {
+		int[] result = new int[from.variables().size()];
+		for (int v = 0; v < result.length; v++)
+			result[v] = to.slot(from.variables().get(v));
+		return result;
+	}
+
+	/**
+	 * Usage: [-a names] [-c names] grammar rules [records]
+	 */
+	public static void main(String[] args) throws IOException, GrammarException,
+			ParseException {
+		List<String> associative = new ArrayList<String>();
+		List<String> commutative = new ArrayList<String>();
+		int i = 0;
+		for (; i + 1 < args.length && args[i].startsWith("-"); i += 2)
+			if (args[i].equals("-a"))
+				associative.addAll(List.of(args[i + 1].split(",")));
+			else if (args[i].equals("-c"))
+				commutative.addAll(List.of(args[i + 1].split(",")));
+			else
+				break;
+		if (args.length - i < 2) {
+			System.err.println("Usage: bench plan [-a associative,operations] [-c commutative,operations]"
+					+ " path_to_grammar_spec rules_file [records]");
+			System.exit(2);
+		}
+		Grammar grammar = Grammar.fromFile(args[i]);
+		List<String> rules = new ArrayList<String>();
+		for (String line : Files.readAllLines(Paths.get(args[i + 1]), StandardCharsets.UTF_8))
+			if (!line.trim().isEmpty())
+				rules.add(line);
+		int records = args.length > i + 2 ? Integer.parseInt(args[i + 2]) : 10000;
+		System.out.println(new PlanBenchmark(grammar, rules, associative, commutative).run(
+				records, 5));
+	}
+}
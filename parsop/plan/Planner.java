@@ -0,0 +1,329 @@
+package parsop.plan;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.tokens.NumericLiteral;
+import parsop.grammar.tokens.Token;
+import parsop.grammar.tokens.TokenType;
+import parsop.parser.AST;
+import parsop.util.IntStack;
+
+/**
+ * Merges many expressions of one Grammar into a DAG in which each distinct
+ * subexpression appears once, and turns it into a Plan which computes each of
+ * them once per record.
+ *
+ * Expressions are brought to a canonical form as they are added, so that
+ * different ways of writing a subexpression meet:
+ *
+ *    1. Groups are removed, since the shape of the tree already holds the
+ *       precedence they gave.
+ *    2. A chain of an operation declared associative with setAssociative()
+ *       is rebuilt nested the way the grammar associates it, so a + (b + c)
+ *       becomes (a + b) + c when + is left associative, and shares a + b with
+ *       the other expressions.
+ *    3. The operands of an operation declared commutative with
+ *       setCommutative() are put in a fixed order, so b * a meets a * b. A
+ *       chain of an operation which is both is sorted as a whole. The order
+ *       is by a hash of the structure of each operand, so that it is the
+ *       same whether or not nodes are shared.
+ *
+ * The grammar only says how operations group when parsed, not whether they
+ * are associative or commutative as mathematics, so those are declared by the
+ * caller and nothing is assumed.
+ *
+ * Since chains are rebuilt as each of their operations is added, a chain of n
+ * is rebuilt n times, which takes time quadratic in n.
+ *
+ * Each node is then looked up by its token and operand nodes, and made only if
+ * it is new. With setSharing(false) every node is made anew, which gives the
+ * same canonical trees, unmerged, to compare against.
+ *
+ * @author aozdemir
+ *
+ */
+public class Planner {
+
+	/**
+	 * A token and its operand nodes, as a key of the DAG
+	 */
+	private static class Key {
+		final Token token;
+		final int[] operands;
+
+		Key(Token token, int[] operands) {
+			this.token = token;
+			this.operands = operands;
+		}
+
+		@Override
+		public int hashCode() {
+			return token.hashCode() * 31 + Arrays.hashCode(operands);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).token.equals(token)
+					&& Arrays.equals(((Key) o).operands, operands);
+		}
+	}
+
+	private Grammar grammar;
+	private boolean sharing;
+	private Set<Token> associative;
+	private Set<Token> commutative;
+
+	private List<Token> tokens;
+	private List<int[]> operands;
+	private long[] hashes;
+	private Map<Key, Integer> nodes;
+	private IntStack roots;
+	private long treeNodes;
+
+	public Planner(Grammar grammar) {
+		this.grammar = grammar;
+		this.sharing = true;
+		this.associative = new HashSet<Token>();
+		this.commutative = new HashSet<Token>();
+		this.tokens = new ArrayList<Token>();
+		this.operands = new ArrayList<int[]>();
+		this.hashes = new long[64];
+		this.nodes = new HashMap<Key, Integer>();
+		this.roots = new IntStack();
+	}
+
+	/**
+	 * Chooses whether equal subexpressions are merged, which they are by
+	 * default. Set it before adding expressions.
+	 */
+	public void setSharing(boolean sharing) {
+		this.sharing = sharing;
+	}
+
+	/**
+	 * Declares that (a op b) op c always equals a op (b op c)
+	 *
+	 * @throws IllegalArgumentException
+	 *             - if op is not a binary operation of the grammar
+	 */
+	public void setAssociative(Token op) {
+		checkBinary(op);
+		associative.add(op);
+	}
+
+	/**
+	 * Declares that a op b always equals b op a
+	 *
+	 * @throws IllegalArgumentException
+	 *             - if op is not a binary operation of the grammar
+	 */
+	public void setCommutative(Token op) {
+		checkBinary(op);
+		commutative.add(op);
+	}
+
+	private void checkBinary(Token op) {
+		if (op.type() != TokenType.BinaryOperation || grammar.precedence(op) < 0)
+			throw new IllegalArgumentException(op + " is not a binary operation of the grammar");
+	}
+
+	/**
+	 * Adds an expression, with an explicit stack so that deep trees do not
+	 * overflow the call stack
+	 *
+	 * @return The number of the expression, for Plan.result()
+	 */
+	public int add(AST tree) {
+		AST[] stack = new AST[16];
+		int[] next = new int[16];
+		IntStack done = new IntStack();
+		int top = 0;
+		stack[0] = tree;
+		while (top >= 0) {
+			AST node = stack[top];
+			List<AST> children = node.getOperands();
+			if (next[top] < children.size()) {
+				AST child = children.get(next[top]++);
+				if (++top == stack.length) {
+					stack = Arrays.copyOf(stack, top * 2);
+					next = Arrays.copyOf(next, top * 2);
+				}
+				stack[top] = child;
+				next[top] = 0;
+				continue;
+			}
+			int[] ids = new int[children.size()];
+			for (int k = ids.length - 1; k >= 0; k--)
+				ids[k] = done.pop();
+			done.push(canonical(node.getNode(), ids));
+			treeNodes++;
+			top--;
+		}
+		roots.push(done.pop());
+		return roots.size() - 1;
+	}
+
+	private int canonical(Token t, int[] ids) {
+		if (t.type() == TokenType.OpenGroup)
+			return ids[0];
+		if (associative.contains(t)) {
+			IntStack chain = new IntStack();
+			flatten(t, ids, chain);
+			int[] links = chain.toArray();
+			if (commutative.contains(t))
+				sort(links);
+			if (grammar.isRightAssociative(t)) {
+				int result = links[links.length - 1];
+				for (int i = links.length - 2; i >= 0; i--)
+					result = node(t, new int[] { links[i], result });
+				return result;
+			}
+			int result = links[0];
+			for (int i = 1; i < links.length; i++)
+				result = node(t, new int[] { result, links[i] });
+			return result;
+		}
+		if (commutative.contains(t))
+			sort(ids);
+		return node(t, ids);
+	}
+
+	/**
+	 * Orders nodes by the hash of their structure, then by number
+	 */
+	private void sort(int[] ids) {
+		for (int i = 1; i < ids.length; i++)
+			for (int j = i; j > 0 && before(ids[j], ids[j - 1]); j--) {
+				int swap = ids[j];
+				ids[j] = ids[j - 1];
+				ids[j - 1] = swap;
+			}
+	}
+
+	private boolean before(int a, int b) {
+		return hashes[a] != hashes[b] ? hashes[a] < hashes[b] : a < b;
+	}
+
+	/**
+	 * Collects the operands of a chain of t, left to right
+	 */
+	private void flatten(Token t, int[] ids, IntStack chain) {
+		IntStack pending = new IntStack();
+		for (int k = ids.length - 1; k >= 0; k--)
+			pending.push(ids[k]);
+		while (!pending.isEmpty()) {
+			int id = pending.pop();
+			if (!tokens.get(id).equals(t)) {
+				chain.push(id);
+				continue;
+			}
+			int[] links = operands.get(id);
+			for (int k = links.length - 1; k >= 0; k--)
+				pending.push(links[k]);
+		}
+	}
+
+	private int node(Token t, int[] ids) {
+		Key key = new Key(t, ids);
+		if (sharing) {
+			Integer id = nodes.get(key);
+			if (id != null)
+				return id;
+			nodes.put(key, tokens.size());
+		}
+		int id = tokens.size();
+		long hash = t.hashCode();
+		for (int operand : ids)
+			hash = hash * 1000003 + hashes[operand];
+		if (id == hashes.length)
+			hashes = Arrays.copyOf(hashes, id * 2);
+		hashes[id] = hash * 0x9E3779B97F4A7C15L;
+		tokens.add(t);
+		operands.add(ids);
+		return id;
+	}
+
+	/**
+	 * @return The number of nodes of the expressions as added, before they
+	 *         were made canonical and merged
+	 */
+	public long treeNodes() {
+		return treeNodes;
+	}
+
+	/**
+	 * @return The plan for the expressions added so far, with the nodes no
+	 *         expression uses any more left out
+	 */
+	public Plan plan() {
+		int n = tokens.size();
+		boolean[] used = new boolean[n];
+		for (int i = 0; i < roots.size(); i++)
+			used[roots.get(i)] = true;
+		// Operands are always made before their node
+		int steps = 0;
+		int links = 0;
+		for (int i = n - 1; i >= 0; i--)
+			if (used[i]) {
+				steps++;
+				for (int operand : operands.get(i)) {
+					used[operand] = true;
+					links++;
+				}
+			}
+
+		Plan plan = new Plan();
+		plan.tokens = new Token[steps];
+		plan.kinds = new byte[steps];
+		plan.constants = new double[steps];
+		plan.slots = new int[steps];
+		plan.from = new int[steps];
+		plan.count = new int[steps];
+		plan.operands = new int[links];
+		plan.operators = new Operator[steps];
+		Map<String, Integer> slots = new LinkedHashMap<String, Integer>();
+		int[] step = new int[n];
+		int s = 0;
+		int link = 0;
+		for (int i = 0; i < n; i++) {
+			if (!used[i])
+				continue;
+			step[i] = s;
+			Token t = tokens.get(i);
+			int[] ids = operands.get(i);
+			plan.tokens[s] = t;
+			plan.from[s] = link;
+			plan.count[s] = ids.length;
+			for (int id : ids)
+				plan.operands[link++] = step[id];
+			if (ids.length > 0)
+				plan.kinds[s] = Plan.OPERATION;
+			else if (t instanceof NumericLiteral) {
+				plan.kinds[s] = Plan.CONSTANT;
+				plan.constants[s] = ((NumericLiteral) t).doubleValue();
+			} else {
+				plan.kinds[s] = Plan.VARIABLE;
+				Integer slot = slots.get(t.symbol());
+				if (slot == null) {
+					slot = slots.size();
+					slots.put(t.symbol(), slot);
+				}
+				plan.slots[s] = slot;
+			}
+			s++;
+		}
+		plan.roots = new int[roots.size()];
+		for (int i = 0; i < roots.size(); i++)
+			plan.roots[i] = step[roots.get(i)];
+		plan.variables = new ArrayList<String>(slots.keySet());
+		return plan;
+	}
+}
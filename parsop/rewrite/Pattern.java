@@ -0,0 +1,188 @@
+package parsop.rewrite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import parsop.grammar.tokens.Token;
+import parsop.parser.AST;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+
+/**
+ * A tree of grammar tokens and named variables, which matches ASTs of the
+ * same shape. A variable matches any subtree; a variable used twice must
+ * match equal subtrees.
+ * 
+ * @author aozdemir
+ *
+ */
+public class Pattern {
+
+	Token token;
+	String variable;
+	List<Pattern> operands;
+	boolean anyOperands;
+
+	private Pattern(Token token, String variable, List<Pattern> operands) {
+		this.token = token;
+		this.variable = variable;
+		this.operands = operands;
+		this.anyOperands = false;
+	}
+
+	public static Pattern variable(String name) {
+		return new Pattern(null, name, new ArrayList<Pattern>());
+	}
+
+	public static Pattern node(Token token, Pattern... operands) {
+		return new Pattern(token, null, Arrays.asList(operands));
+	}
+
+	/**
+	 * @return A pattern matching any tree with the token at its root, whatever
+	 *         its operands. It binds no variables.
+	 */
+	public static Pattern rooted(Token token) {
+		Pattern pattern = new Pattern(token, null, new ArrayList<Pattern>());
+		pattern.anyOperands = true;
+		return pattern;
+	}
+
+	/**
+	 * Parses the pattern with the grammar of the parser. Identifiers named in
+	 * variables become variables, and all other tokens must match exactly.
+	 */
+	public static Pattern parse(Parser parser, String expression, String... variables)
+			throws ParseException {
+		return fromAST(parser.parse(expression), new HashSet<String>(Arrays.asList(variables)));
+	}
+
+	public static Pattern fromAST(AST tree, Set<String> variables) {
+		Token t = tree.getNode();
+		if (t.isIdentifier() && variables.contains(t.symbol()))
+			return variable(t.symbol());
+		List<Pattern> operands = new ArrayList<Pattern>(tree.getOperands().size());
+		for (AST operand : tree.getOperands())
+			operands.add(fromAST(operand, variables));
+		return new Pattern(t, null, operands);
+	}
+
+	public boolean isVariable() {
+		return variable != null;
+	}
+
+	/**
+	 * @return The token at the root, or null for a variable
+	 */
+	public Token root() {
+		return token;
+	}
+
+	/**
+	 * @return The patterns for the operands of the root, which are empty for
+	 *         variables and for patterns that match any operands
+	 */
+	public List<Pattern> operands() {
+		return operands;
+	}
+
+	/**
+	 * @return Whether this pattern has no variables, and so matches only
+	 *         trees equal to toAST()
+	 */
+	public boolean isGround() {
+		if (isVariable() || anyOperands)
+			return false;
+		for (Pattern operand : operands)
+			if (!operand.isGround())
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return The only tree a ground pattern matches
+	 */
+	public AST toAST() {
+		return instantiate(new HashMap<String, AST>());
+	}
+
+	/**
+	 * Matches the tree, adding the subtrees bound to variables to bindings
+	 * 
+	 * @return Whether the tree matches. If not, bindings may hold partial
+	 *         results.
+	 */
+	public boolean match(AST tree, Map<String, AST> bindings) {
+		if (isVariable()) {
+			AST bound = bindings.get(variable);
+			if (bound == null) {
+				bindings.put(variable, tree);
+				return true;
+			}
+			return bound.equals(tree);
+		}
+		if (!token.equals(tree.getNode()))
+			return false;
+		if (anyOperands)
+			return true;
+		if (operands.size() != tree.getOperands().size())
+			return false;
+		for (int i = 0; i < operands.size(); i++)
+			if (!operands.get(i).match(tree.getOperands().get(i), bindings))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Builds the tree this pattern describes, substituting the bound subtrees
+	 * for variables. Bound subtrees are shared, not copied.
+	 */
+	public AST instantiate(Map<String, AST> bindings) {
+		if (isVariable()) {
+			AST bound = bindings.get(variable);
+			if (bound == null)
+				throw new IllegalArgumentException("Unbound variable " + variable);
+			return bound;
+		}
+		if (anyOperands)
+			throw new IllegalArgumentException("Cannot instantiate " + this);
+		List<AST> children = new ArrayList<AST>(operands.size());
+		for (Pattern operand : operands)
+			children.add(operand.instantiate(bindings));
+		return new AST(token, children);
+	}
+
+	/**
+	 * @return The names of the variables in this pattern
+	 */
+	public Set<String> variables() {
+		Set<String> names = new HashSet<String>();
+		collectVariables(names);
+		return names;
+	}
+
+	private void collectVariables(Set<String> names) {
+		if (isVariable())
+			names.add(variable);
+		for (Pattern operand : operands)
+			operand.collectVariables(names);
+	}
+
+	public String toString() {
+		if (isVariable())
+			return variable;
+		StringBuffer result = new StringBuffer("{");
+		result.append(token);
+		if (anyOperands)
+			result.append(", ...");
+		for (Pattern operand : operands)
+			result.append(", ").append(operand);
+		result.append('}');
+		return result.toString();
+	}
+}
@@ -0,0 +1,28 @@
+package parsop.rewrite;
+
+import java.util.Map;
+
+import parsop.parser.AST;
+
+/**
+ * Computes the tree which replaces a match of a rule's pattern
+ */
+@FunctionalInterface
+public interface Replacement {
+
+	/**
+	 * @param matched
+	 *            The tree which matched the pattern
+	 * @param bindings
+	 *            The subtrees bound to the pattern's variables
+	 * @return The replacement, or null if the rule does not apply after all
+	 */
+	public AST replace(AST matched, Map<String, AST> bindings);
+
+	/**
+	 * @return A replacement which instantiates the template with the bindings
+	 */
+	public static Replacement template(Pattern template) {
+		return (matched, bindings) -> template.instantiate(bindings);
+	}
+}
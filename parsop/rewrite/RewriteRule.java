@@ -0,0 +1,61 @@
+package parsop.rewrite;
+
+import java.util.Map;
+
+import parsop.parser.AST;
+
+/**
+ * A named pattern and what to replace its matches with
+ * 
+ * @author aozdemir
+ *
+ */
+public class RewriteRule {
+
+	String name;
+	Pattern pattern;
+	Replacement replacement;
+
+	public RewriteRule(String name, Pattern pattern, Replacement replacement) {
+		this.name = name;
+		this.pattern = pattern;
+		this.replacement = replacement;
+	}
+
+	/**
+	 * Constructs a rule which replaces matches of pattern by the template.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the template uses a variable which the pattern does not
+	 *             bind
+	 */
+	public RewriteRule(String name, Pattern pattern, Pattern template) {
+		this(name, pattern, Replacement.template(template));
+		if (!pattern.variables().containsAll(template.variables()))
+			throw new IllegalArgumentException(String.format(
+					"Rule %s uses variables %s but binds only %s", name, template.variables(),
+					pattern.variables()));
+	}
+
+	/**
+	 * @return The replacement for the tree, or null if the rule does not apply
+	 */
+	public AST apply(AST tree, Map<String, AST> bindings) {
+		bindings.clear();
+		if (!pattern.match(tree, bindings))
+			return null;
+		return replacement.replace(tree, bindings);
+	}
+
+	public String name() {
+		return name;
+	}
+
+	public Pattern pattern() {
+		return pattern;
+	}
+
+	public String toString() {
+		return name + ": " + pattern;
+	}
+}
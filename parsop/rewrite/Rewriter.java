@@ -0,0 +1,205 @@
+package parsop.rewrite;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import parsop.grammar.tokens.Token;
+import parsop.parser.AST;
+
+/**
+ * Rewrites ASTs with a set of rules until none applies.
+ *
+ * Rules are indexed by the token at the root of their pattern, so at each node
+ * only the rules for that node's token are tried, followed by the rules whose
+ * pattern is a bare variable. The first rule which applies wins.
+ *
+ * Trees are rewritten bottom-up: the operands of a node are brought to normal
+ * form first, then rules are tried at the node, and the result of a rule is
+ * normalized again. The work is done with an explicit stack, so deep trees do
+ * not overflow the call stack.
+ *
+ * Each subtree which has been normalized is remembered by identity, together
+ * with its normal form. Replacements usually reuse the subtrees bound to
+ * their variables, so those are not matched again; and rewriting a tree that
+ * shares subtrees with one rewritten before only visits the new parts. The
+ * memory lasts until clear() is called, and keeps the trees it remembers
+ * alive.
+ *
+ * @author aozdemir
+ *
+ */
+public class Rewriter {
+
+	/**
+	 * The number of rules which may apply at one node before the rules are
+	 * considered not to terminate
+	 */
+	public static final int DEFAULT_STEP_LIMIT = 10000;
+
+	private Map<Token, List<RewriteRule>> byRoot;
+	private List<RewriteRule> anyRoot;
+	private Map<AST, AST> normalForms;
+	private Map<String, AST> bindings;
+	private int stepLimit;
+	private int applications;
+
+	public Rewriter(List<RewriteRule> rules) {
+		this.byRoot = new HashMap<Token, List<RewriteRule>>();
+		this.anyRoot = new ArrayList<RewriteRule>();
+		this.normalForms = new IdentityHashMap<AST, AST>();
+		this.bindings = new HashMap<String, AST>();
+		this.stepLimit = DEFAULT_STEP_LIMIT;
+		for (RewriteRule rule : rules)
+			add(rule);
+	}
+
+	public Rewriter(RewriteRule... rules) {
+		this(Arrays.asList(rules));
+	}
+
+	/**
+	 * Adds a rule, which is tried after the rules added before it. Trees
+	 * normalized before are forgotten.
+	 */
+	public void add(RewriteRule rule) {
+		Token root = rule.pattern().root();
+		if (root == null)
+			anyRoot.add(rule);
+		else
+			byRoot.computeIfAbsent(root, k -> new ArrayList<RewriteRule>()).add(rule);
+		clear();
+	}
+
+	/**
+	 * Forgets the trees normalized so far
+	 */
+	public void clear() {
+		normalForms.clear();
+	}
+
+	public void setStepLimit(int stepLimit) {
+		this.stepLimit = stepLimit;
+	}
+
+	/**
+	 * @return The number of times a rule has applied since this rewriter was
+	 *         created
+	 */
+	public int applications() {
+		return applications;
+	}
+
+	/**
+	 * A node whose operands are being normalized. Every tree that the node
+	 * has been rewritten into is recorded, so that all of them can be mapped
+	 * to the final normal form.
+	 */
+	private static class Frame {
+		AST tree;
+		int next;
+		List<AST> operands;
+		boolean changed;
+		List<AST> aliases;
+		int steps;
+
+		Frame(AST tree) {
+			reset(tree);
+		}
+
+		void reset(AST tree) {
+			this.tree = tree;
+			this.next = 0;
+			this.operands = new ArrayList<AST>(tree.getOperands().size());
+			this.changed = false;
+		}
+
+		void add(AST operand, AST normal) {
+			operands.add(normal);
+			changed |= operand != normal;
+		}
+
+		void alias(AST tree) {
+			if (aliases == null)
+				aliases = new ArrayList<AST>(2);
+			aliases.add(tree);
+		}
+	}
+
+	/**
+	 * @return The normal form of the tree. Subtrees which no rule changes are
+	 *         shared with the input.
+	 * @throws IllegalStateException
+	 *             if the rules keep applying at one node beyond the step
+	 *             limit
+	 */
+	public AST rewrite(AST tree) {
+		List<Frame> stack = new ArrayList<Frame>();
+		stack.add(new Frame(tree));
+		AST result = null;
+		while (!stack.isEmpty()) {
+			Frame frame = stack.get(stack.size() - 1);
+			AST known = normalForms.get(frame.tree);
+			if (known == null && frame.next < frame.tree.getOperands().size()) {
+				AST operand = frame.tree.getOperands().get(frame.next++);
+				AST normal = normalForms.get(operand);
+				if (normal == null)
+					stack.add(new Frame(operand));
+				else
+					frame.add(operand, normal);
+				continue;
+			}
+			if (known == null) {
+				AST rebuilt = frame.changed ? new AST(frame.tree.getNode(), frame.operands)
+						: frame.tree;
+				AST replaced = applyRules(rebuilt);
+				if (replaced != null) {
+					if (++frame.steps > stepLimit)
+						throw new IllegalStateException("Rewrite rules do not terminate at "
+								+ rebuilt);
+					frame.alias(frame.tree);
+					if (rebuilt != frame.tree)
+						frame.alias(rebuilt);
+					frame.reset(replaced);
+					continue;
+				}
+				known = rebuilt;
+				normalForms.put(frame.tree, known);
+			}
+			normalForms.put(known, known);
+			if (frame.aliases != null)
+				for (AST alias : frame.aliases)
+					normalForms.put(alias, known);
+
+			stack.remove(stack.size() - 1);
+			if (stack.isEmpty()) {
+				result = known;
+			} else {
+				Frame parent = stack.get(stack.size() - 1);
+				parent.add(parent.tree.getOperands().get(parent.operands.size()), known);
+			}
+		}
+		return result;
+	}
+
+	private AST applyRules(AST tree) {
+		AST replaced = applyRules(tree, byRoot.getOrDefault(tree.getNode(),
+				Collections.<RewriteRule> emptyList()));
+		return replaced != null ? replaced : applyRules(tree, anyRoot);
+	}
+
+	private AST applyRules(AST tree, List<RewriteRule> rules) {
+		for (RewriteRule rule : rules) {
+			AST replaced = rule.apply(tree, bindings);
+			if (replaced != null && replaced != tree) {
+				applications++;
+				return replaced;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,128 @@
+package parsop.rewrite;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import parsop.grammar.Grammar;
+import parsop.grammar.tokens.NumericLiteral;
+import parsop.grammar.tokens.Token;
+import parsop.parser.AST;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+
+/**
+ * Builders for common algebraic rules
+ * 
+ * @author aozdemir
+ *
+ */
+public class Rules {
+
+	/**
+	 * Parses both sides of a rule with the parser's grammar. For example,
+	 * rule(parser, "x + 0", "x", "x") removes additions of zero.
+	 */
+	public static RewriteRule rule(Parser parser, String pattern, String template,
+			String... variables) throws ParseException {
+		return new RewriteRule(pattern + " -> " + template,
+				Pattern.parse(parser, pattern, variables),
+				Pattern.parse(parser, template, variables));
+	}
+
+	/**
+	 * @return A rule which replaces the operation on two numeric literals by
+	 *         its value. Integers are combined with integer, and are left alone
+	 *         if it throws an ArithmeticException (for example, on overflow or
+	 *         division by zero). Any other pair is combined with real.
+	 */
+	public static RewriteRule fold(Token operation, LongBinaryOperator integer,
+			DoubleBinaryOperator real) {
+		Pattern pattern = Pattern.node(operation, Pattern.variable("a"), Pattern.variable("b"));
+		return new RewriteRule("fold " + operation, pattern, (matched, bindings) -> {
+			Token a = bindings.get("a").getNode();
+			Token b = bindings.get("b").getNode();
+			if (!(a instanceof NumericLiteral && b instanceof NumericLiteral))
+				return null;
+			NumericLiteral x = (NumericLiteral) a;
+			NumericLiteral y = (NumericLiteral) b;
+			NumericLiteral value;
+			if (x.isIntegral() && y.isIntegral()) {
+				long result;
+				try {
+					result = integer.applyAsLong(x.longValue(), y.longValue());
+				} catch (ArithmeticException e) {
+					return null;
+				}
+				value = new NumericLiteral(Long.toString(result), x.tokenClass(), result,
+						x.getIndex());
+			} else {
+				double result = real.applyAsDouble(x.doubleValue(), y.doubleValue());
+				if (Double.isNaN(result) || Double.isInfinite(result))
+					return null;
+				value = new NumericLiteral(Double.toString(result), x.tokenClass(), result,
+						x.getIndex());
+			}
+			return Trees.leaf(value);
+		});
+	}
+
+	/**
+	 * Looks the operation up by name in the grammar, as in fold("2+", ...)
+	 */
+	public static RewriteRule fold(Grammar grammar, String operation, LongBinaryOperator integer,
+			DoubleBinaryOperator real) {
+		return fold(named(grammar, operation), integer, real);
+	}
+
+	/**
+	 * @return A rule which merges operands of an associative operation that
+	 *         are themselves that operation, so that a chain like (a + b) + c
+	 *         becomes a single node with operands a, b and c. Since rewriting
+	 *         is bottom-up, a chain of n operations is spliced n times, which
+	 *         takes time quadratic in n.
+	 */
+	public static RewriteRule flatten(Token operation) {
+		return new RewriteRule("flatten " + operation, Pattern.rooted(operation),
+				(matched, bindings) -> {
+					List<AST> operands = matched.getOperands();
+					boolean nested = false;
+					for (AST operand : operands)
+						nested |= operand.getNode().equals(operation);
+					if (!nested)
+						return null;
+					List<AST> flat = new ArrayList<AST>(operands.size() + 2);
+					for (AST operand : operands)
+						if (operand.getNode().equals(operation))
+							flat.addAll(operand.getOperands());
+						else
+							flat.add(operand);
+					return new AST(matched.getNode(), flat);
+				});
+	}
+
+	public static RewriteRule flatten(Grammar grammar, String operation) {
+		return flatten(named(grammar, operation));
+	}
+
+	/**
+	 * @return A rule which removes groups, leaving their contents. Precedence
+	 *         is already encoded in the shape of the tree.
+	 */
+	public static RewriteRule ungroup(Token open) {
+		return new RewriteRule("ungroup " + open, Pattern.node(open, Pattern.variable("x")),
+				Pattern.variable("x"));
+	}
+
+	public static RewriteRule ungroup(Grammar grammar, String open) {
+		return ungroup(named(grammar, open));
+	}
+
+	private static Token named(Grammar grammar, String name) {
+		Token t = grammar.tokenNamed(name);
+		if (t == null)
+			throw new IllegalArgumentException("No token named " + name + " in the grammar");
+		return t;
+	}
+}
@@ -0,0 +1,16 @@
+package parsop.rewrite;
+
+import java.util.ArrayList;
+
+import parsop.grammar.tokens.Token;
+import parsop.parser.AST;
+
+/**
+ * Helpers for building ASTs
+ */
+class Trees {
+
+	static AST leaf(Token t) {
+		return new AST(t, new ArrayList<AST>());
+	}
+}
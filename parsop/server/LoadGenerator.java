@@ -0,0 +1,141 @@
+package parsop.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends parse requests to a ParseServer from several connections at once, and
+ * reports the latency of the requests at each level of concurrency.
+ *
+ * Each connection is driven by its own thread, which sends one request at a
+ * time, so the concurrency is the number of requests in flight.
+ *
+ * @author aozdemir
+ *
+ */
+public class LoadGenerator {
+
+	private SocketAddress address;
+	private int grammar;
+	private List<String> expressions;
+
+	public LoadGenerator(SocketAddress address, int grammar, List<String> expressions) {
+		this.address = address;
+		this.grammar = grammar;
+		this.expressions = expressions;
+	}
+
+	/**
+	 * The latencies of one run, in nanoseconds
+	 */
+	public static class Result {
+		int concurrency;
+		long[] latencies;
+		long elapsed;
+		int errors;
+
+		public long percentile(double p) {
+			if (latencies.length == 0)
+				return 0;
+			int index = (int) Math.ceil(p / 100 * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(index, latencies.length - 1))];
+		}
+
+		public double throughput() {
+			return latencies.length * 1e9 / elapsed;
+		}
+
+		public String toString() {
+			return String.format("%11d %10d %10.1f %10.1f %10.1f %12.0f %8d", concurrency,
+					latencies.length, percentile(50) / 1e3, percentile(99) / 1e3,
+					percentile(100) / 1e3, throughput(), errors);
+		}
+
+		public static String header() {
+			return String.format("%11s %10s %10s %10s %10s %12s %8s", "concurrency", "requests",
+					"p50 us", "p99 us", "max us", "requests/s", "errors");
+		}
+	}
+
+	/**
+	 * Sends the requests over the given number of connections. Expressions
+	 * are taken in turn, starting again from the first when they run out.
+	 */
+	public Result run(int concurrency, int requests) throws IOException, InterruptedException {
+		long[] latencies = new long[requests];
+		AtomicInteger next = new AtomicInteger();
+		AtomicInteger errors = new AtomicInteger();
+		List<ParseClient> clients = new ArrayList<ParseClient>();
+		for (int c = 0; c < concurrency; c++)
+			clients.add(new ParseClient(address));
+		List<Thread> threads = new ArrayList<Thread>();
+		for (ParseClient client : clients)
+			threads.add(new Thread(() -> {
+				int i;
+				while ((i = next.getAndIncrement()) < requests) {
+					String expression = expressions.get(i % expressions.size());
+					long start = System.nanoTime();
+					try {
+						if (!client.parse(grammar, expression).isOK())
+							errors.incrementAndGet();
+					} catch (IOException e) {
+						errors.incrementAndGet();
+					}
+					latencies[i] = System.nanoTime() - start;
+				}
+			}));
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		Result result = new Result();
+		result.elapsed = System.nanoTime() - start;
+		for (ParseClient client : clients)
+			client.close();
+		Arrays.sort(latencies);
+		result.concurrency = concurrency;
+		result.latencies = latencies;
+		result.errors = errors.get();
+		return result;
+	}
+
+	/**
+	 * Usage: address grammar_id expressions_file requests concurrency...
+	 *
+	 * Each line of the file is an expression. A warm-up run at the highest
+	 * concurrency precedes the measured runs.
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 5) {
+			System.err.println("Usage: load port_or_socket_path grammar_id expressions_file "
+					+ "requests concurrency...");
+			System.exit(2);
+		}
+		List<String> expressions = new ArrayList<String>();
+		for (String line : Files.readAllLines(Paths.get(args[2])))
+			if (!line.trim().isEmpty())
+				expressions.add(line);
+		if (expressions.isEmpty()) {
+			System.err.println("No expressions in " + args[2]);
+			System.exit(2);
+		}
+		LoadGenerator generator = new LoadGenerator(Protocol.address(args[0]),
+				Integer.parseInt(args[1]), expressions);
+		int requests = Integer.parseInt(args[3]);
+		int[] levels = new int[args.length - 4];
+		for (int i = 0; i < levels.length; i++)
+			levels[i] = Integer.parseInt(args[i + 4]);
+
+		generator.run(Arrays.stream(levels).max().getAsInt(), requests);
+		System.out.println(Result.header());
+		for (int concurrency : levels)
+			System.out.println(generator.run(concurrency, requests));
+	}
+}
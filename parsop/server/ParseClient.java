@@ -0,0 +1,97 @@
+package parsop.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import parsop.grammar.Grammar;
+import parsop.parser.AST;
+import parsop.parser.BinaryASTReader;
+
+/**
+ * A connection to a ParseServer. Not safe for use by several threads at once.
+ *
+ * @author aozdemir
+ *
+ */
+public class ParseClient implements Closeable {
+
+	private SocketChannel channel;
+	private DataInputStream in;
+	private DataOutputStream out;
+
+	/**
+	 * A response from the server
+	 */
+	public static class Response {
+		byte status;
+		byte[] body;
+
+		Response(byte status, byte[] body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		public byte status() {
+			return status;
+		}
+
+		public boolean isOK() {
+			return status == Protocol.OK;
+		}
+
+		/**
+		 * @return A reader over the AST, if the parse succeeded
+		 */
+		public BinaryASTReader reader() {
+			return new BinaryASTReader(body);
+		}
+
+		/**
+		 * Rebuilds the AST, if the parse succeeded
+		 */
+		public AST ast(Grammar grammar) {
+			return reader().toAST(grammar);
+		}
+
+		/**
+		 * @return The error report or message, if the parse failed
+		 */
+		public String text() {
+			return new String(body, StandardCharsets.UTF_8);
+		}
+	}
+
+	public ParseClient(SocketAddress address) throws IOException {
+		this.channel = SocketChannel.open(Protocol.family(address));
+		this.channel.connect(address);
+		this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+		this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+	}
+
+	/**
+	 * Sends one request and waits for its response
+	 */
+	public Response parse(int grammar, String expression) throws IOException {
+		Protocol.writeRequest(out, grammar, expression.getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		byte[] frame = Protocol.readFrame(in);
+		if (frame == null || frame.length == 0)
+			throw new EOFException("The server closed the connection");
+		return new Response(frame[0], Arrays.copyOfRange(frame, 1, frame.length));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
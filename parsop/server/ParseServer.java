@@ -0,0 +1,176 @@
+package parsop.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import parsop.grammar.GrammarException;
+import parsop.grammar.GrammarRegistry;
+import parsop.parser.AST;
+import parsop.parser.BinaryASTWriter;
+import parsop.parser.ParseException;
+import parsop.parser.Parser;
+
+/**
+ * A long-running process that parses for other processes, so that they pay
+ * for starting a JVM and loading grammars only once.
+ *
+ * Grammars are loaded into a GrammarRegistry, so they are reloaded when their
+ * files change, and requests name them by their registry id. Each connection
+ * is served by its own thread, which keeps one Parser per grammar for the
+ * life of the connection. Threads are virtual where the JVM has them, and
+ * otherwise come from a cached pool.
+ *
+ * See Protocol for the format of requests and responses.
+ *
+ * @author aozdemir
+ *
+ */
+public class ParseServer implements Closeable {
+
+	private GrammarRegistry registry;
+	private ServerSocketChannel channel;
+	private ExecutorService connections;
+
+	public ParseServer(GrammarRegistry registry, SocketAddress address) throws IOException {
+		this.registry = registry;
+		if (address instanceof UnixDomainSocketAddress)
+			Files.deleteIfExists(((UnixDomainSocketAddress) address).getPath());
+		this.channel = ServerSocketChannel.open(Protocol.family(address));
+		this.channel.bind(address);
+		this.connections = perTaskExecutor();
+	}
+
+	/**
+	 * @return The address the server listens on, with the actual port if it
+	 *         was bound to port 0
+	 */
+	public SocketAddress address() throws IOException {
+		return channel.getLocalAddress();
+	}
+
+	/**
+	 * Accepts connections until the server is closed
+	 */
+	public void serve() throws IOException {
+		try {
+			while (true) {
+				SocketChannel connection = channel.accept();
+				connections.execute(() -> handle(connection));
+			}
+		} catch (ClosedChannelException e) {
+			// Closed
+		}
+	}
+
+	private void handle(SocketChannel connection) {
+		Parser[] parsers = new Parser[registry.size()];
+		BinaryASTWriter writer = new BinaryASTWriter();
+		try (SocketChannel c = connection) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels
+					.newInputStream(c)));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels
+					.newOutputStream(c)));
+			byte[] request;
+			while ((request = Protocol.readFrame(in)) != null) {
+				int id = request.length < 2 ? -1 : ByteBuffer.wrap(request).getShort() & 0xffff;
+				if (id < 0)
+					respond(out, Protocol.BAD_REQUEST, "Requests need a grammar id");
+				else if (id >= registry.size())
+					respond(out, Protocol.BAD_REQUEST, "No grammar with id " + id);
+				else {
+					if (id >= parsers.length)
+						parsers = Arrays.copyOf(parsers, registry.size());
+					if (parsers[id] == null) {
+						parsers[id] = new Parser(registry.source(id), false);
+						parsers[id].setPrintErrors(false);
+					}
+					String expression = new String(request, 2, request.length - 2,
+							StandardCharsets.UTF_8);
+					try {
+						AST tree = parsers[id].parse(expression);
+						Protocol.writeResponse(out, Protocol.OK, writer.encode(tree));
+					} catch (ParseException e) {
+						respond(out, Protocol.PARSE_ERROR, e.report());
+					} catch (RuntimeException e) {
+						respond(out, Protocol.PARSE_ERROR, "Internal error: " + e);
+					}
+				}
+				// Answer at once unless more requests are already waiting
+				if (in.available() == 0)
+					out.flush();
+			}
+			out.flush();
+		} catch (IOException e) {
+			// The client went away, or sent a malformed frame
+		}
+	}
+
+	private static void respond(DataOutputStream out, byte status, String message)
+			throws IOException {
+		Protocol.writeResponse(out, status, message.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return An executor which starts a virtual thread per task, if this JVM
+	 *         has them, and otherwise a cached pool of daemon threads
+	 */
+	static ExecutorService perTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "parse-connection");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		connections.shutdownNow();
+	}
+
+	/**
+	 * Usage: address grammar... where address is a port on localhost or the
+	 * path of a Unix domain socket. Grammars get ids in the order given.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: server port_or_socket_path path_to_grammar_spec...");
+			System.exit(2);
+		}
+		GrammarRegistry registry = new GrammarRegistry();
+		for (int i = 1; i < args.length; i++)
+			try {
+				registry.register(args[i]);
+				System.out.println(registry.id(args[i]) + "\t" + args[i]);
+			} catch (GrammarException e) {
+				System.err.println("Could not load " + args[i]);
+				e.printStackTrace();
+				System.exit(1);
+			}
+		try (ParseServer server = new ParseServer(registry, Protocol.address(args[0]))) {
+			System.out.println("Listening on " + server.address());
+			server.serve();
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package parsop.server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Paths;
+
+/**
+ * The framing used between ParseServer and ParseClient.
+ *
+ * Every message is a frame: a 4 byte big-endian length, followed by that many
+ * bytes.
+ *
+ *    request  : 2 byte grammar id, then the expression in UTF-8
+ *    response : 1 byte status, then
+ *                 OK          : the AST, as written by BinaryASTWriter
+ *                 PARSE_ERROR : the error report in UTF-8
+ *                 BAD_REQUEST : a message in UTF-8
+ *
+ * A connection carries any number of requests, each answered in order.
+ *
+ * @author aozdemir
+ *
+ */
+public class Protocol {
+
+	public static final byte OK = 0;
+	public static final byte PARSE_ERROR = 1;
+	public static final byte BAD_REQUEST = 2;
+
+	/**
+	 * Frames longer than this are refused, and the connection closed
+	 */
+	public static final int MAX_FRAME = 16 << 20;
+
+	/**
+	 * @return The frame's bytes, or null if the stream ended between frames
+	 */
+	static byte[] readFrame(DataInputStream in) throws IOException {
+		int length;
+		try {
+			length = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (length < 0 || length > MAX_FRAME)
+			throw new IOException("Bad frame length " + length);
+		byte[] frame = new byte[length];
+		in.readFully(frame);
+		return frame;
+	}
+
+	static void writeRequest(DataOutputStream out, int grammar, byte[] expression)
+			throws IOException {
+		out.writeInt(2 + expression.length);
+		out.writeShort(grammar);
+		out.write(expression);
+	}
+
+	static void writeResponse(DataOutputStream out, byte status, byte[] body) throws IOException {
+		out.writeInt(1 + body.length);
+		out.writeByte(status);
+		out.write(body);
+	}
+
+	/**
+	 * Parses an address given on the command line: a port number for TCP on
+	 * the loopback interface, or a path for a Unix domain socket.
+	 */
+	public static SocketAddress address(String spec) {
+		if (spec.matches("\\d+"))
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec));
+		return UnixDomainSocketAddress.of(Paths.get(spec));
+	}
+
+	static StandardProtocolFamily family(SocketAddress address) {
+		return address instanceof UnixDomainSocketAddress ? StandardProtocolFamily.UNIX
+				: StandardProtocolFamily.INET;
+	}
+}
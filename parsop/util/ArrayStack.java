@@ -0,0 +1,64 @@
+package parsop.util;
+
+import java.util.Arrays;
+
+/**
+ * An unsynchronized, growable stack of references, like IntStack. Clearing
+ * it keeps its capacity but drops its references, so that what they referred
+ * to can be collected.
+ */
+public class ArrayStack<T> {
+
+	Object[] elements;
+	int size;
+
+	public ArrayStack() {
+		this(16);
+	}
+
+	public ArrayStack(int capacity) {
+		this.elements = new Object[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	public void push(T value) {
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, size * 2);
+		elements[size++] = value;
+	}
+
+	public T pop() {
+		T value = get(--size);
+		elements[size] = null;
+		return value;
+	}
+
+	public T peek() {
+		return get(size - 1);
+	}
+
+	/**
+	 * @return The element i places from the bottom
+	 */
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		return (T) elements[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		Arrays.fill(elements, 0, size, null);
+		size = 0;
+	}
+
+	public String toString() {
+		return Arrays.toString(Arrays.copyOf(elements, size));
+	}
+}
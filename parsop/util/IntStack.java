@@ -0,0 +1,74 @@
+package parsop.util;
+
+import java.util.Arrays;
+
+/**
+ * An unsynchronized, growable stack of ints. Clearing it keeps its capacity,
+ * so a stack reused across many uses stops allocating once it has grown to
+ * the largest size needed.
+ */
+public class IntStack {
+
+	int[] elements;
+	int size;
+
+	public IntStack() {
+		this(16);
+	}
+
+	public IntStack(int capacity) {
+		this.elements = new int[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+
+	public void push(int value) {
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, size * 2);
+		elements[size++] = value;
+	}
+
+	public int pop() {
+		return elements[--size];
+	}
+
+	public int peek() {
+		return elements[size - 1];
+	}
+
+	/**
+	 * @return The element i places from the bottom
+	 */
+	public int get(int i) {
+		return elements[i];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * @return The number of elements the stack can hold without growing
+	 */
+	public int capacity() {
+		return elements.length;
+	}
+
+	/**
+	 * @return The elements from the bottom up
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	public String toString() {
+		return Arrays.toString(Arrays.copyOf(elements, size));
+	}
+}